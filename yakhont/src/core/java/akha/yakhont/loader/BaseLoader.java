@@ -23,6 +23,7 @@ import akha.yakhont.Core.UriResolver;
 import akha.yakhont.Core.Utils;
 import akha.yakhont.CoreLogger;
 import akha.yakhont.CoreLogger.Level;
+import akha.yakhont.NetworkMonitor;
 import akha.yakhont.adapter.BaseCacheAdapter;
 import akha.yakhont.adapter.BaseCacheAdapter.ViewBinder;
 import akha.yakhont.adapter.BaseRecyclerViewAdapter.ViewHolderCreator;
@@ -32,6 +33,14 @@ import akha.yakhont.loader.BaseResponse;
 import akha.yakhont.loader.BaseResponse.Converter;
 import akha.yakhont.loader.BaseResponse.LoaderCallback;
 import akha.yakhont.loader.BaseResponse.Source;
+import akha.yakhont.loader.CancellationToken;
+import akha.yakhont.loader.CircuitBreaker;
+import akha.yakhont.loader.LoaderExecutor;
+import akha.yakhont.loader.LoaderExecutor.Priority;
+import akha.yakhont.loader.LoaderMetrics;
+import akha.yakhont.loader.LoaderMetrics.Stage;
+import akha.yakhont.loader.RetryPolicy;
+import akha.yakhont.loader.wrapper.BaseLoaderWrapper;
 import akha.yakhont.loader.wrapper.BaseLoaderWrapper.LoaderBuilder;
 import akha.yakhont.loader.wrapper.BaseLoaderWrapper.LoaderFactory;
 import akha.yakhont.loader.wrapper.BaseResponseLoaderWrapper.BaseResponseLoaderBuilder;
@@ -54,6 +63,7 @@ import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.Size;
 import android.support.annotation.StringRes;
+import android.support.annotation.WorkerThread;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.RecyclerView.ViewHolder;
 import android.view.View;
@@ -65,8 +75,9 @@ import com.google.gson.reflect.TypeToken;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Type;
 import java.util.Collection;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Provider;
@@ -120,6 +131,8 @@ public abstract class BaseLoader<C, R, E, D> extends Loader<BaseResponse<R, E, D
 
     private                 ProgressWrapper         mProgress;
 
+    private                 Priority                mPriority;
+
     /**
      * Initialises a newly created {@code BaseLoader} object.
      *
@@ -279,16 +292,79 @@ public abstract class BaseLoader<C, R, E, D> extends Loader<BaseResponse<R, E, D
         return this;
     }
 
+    /**
+     * Returns the timeout (in seconds).
+     *
+     * @return  The timeout (or -1 if not set)
+     */
+    @SuppressWarnings("WeakerAccess")
+    public int getTimeout() {
+        return mTimeout;
+    }
+
+    /**
+     * Sets the priority of the network request (see {@link LoaderExecutor}).
+     *
+     * @param priority
+     *        The priority (or null for default one)
+     *
+     * @return  This {@code BaseLoader} object
+     */
+    @SuppressWarnings({"UnusedReturnValue", "unused"})
+    public BaseLoader<C, R, E, D> setPriority(final Priority priority) {
+        mPriority = priority;
+        return this;
+    }
+
+    /**
+     * Returns the priority of the network request.
+     *
+     * @return  The priority
+     */
+    @NonNull
+    @SuppressWarnings("WeakerAccess")
+    public Priority getPriority() {
+        return mPriority != null ? mPriority: getDefaultPriority();
+    }
+
+    /**
+     * Returns the default priority of the network request (used if no priority was set explicitly).
+     *
+     * @return  The default priority
+     */
+    @NonNull
+    @SuppressWarnings("WeakerAccess")
+    protected Priority getDefaultPriority() {
+        return Core.isVisible() ? Priority.NORMAL: Priority.BACKGROUND;
+    }
+
     ////////////////////////////////////////////////////////////////////////////////////////////////
 
     private final AtomicBoolean     mWaitForResponse    = new AtomicBoolean();
     private final Object            mWaitLock           = new Object();
 
+    private       CancellationToken mCancellationToken;
+    private volatile Future<?>      mRequest;
+    private       boolean           mReloadOnStart;
+
+    private       int               mRetry;
+    private volatile ScheduledFuture<?>
+                                    mRetryTask;
+    private volatile RetryPolicy    mRetryPolicy;
+    private volatile Object         mEndpoint;
+
+    private volatile long           mRequestStarted;
+
+    private static volatile LoaderMetrics
+                                    sLoaderMetrics;
+
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     private boolean isWaiting() {
         synchronized (mWaitLock) {
             if (!mWaitForResponse.get()) return false;
             mWaitForResponse.set(false);
+
+            mCancellationToken = null;
         }
         return true;
     }
@@ -309,10 +385,33 @@ public abstract class BaseLoader<C, R, E, D> extends Loader<BaseResponse<R, E, D
 
         doProgressSafe(true);
 
-        Utils.runInBackground(true, new Runnable() {
+        if (shareRequest()) {
+            CoreLogger.log(addLoaderInfo("joined the request already in progress"));
+            return;
+        }
+
+        final CancellationToken token = new CancellationToken();
+        synchronized (mWaitLock) {
+            mCancellationToken = token;
+            mRetry             = 0;
+        }
+
+        executeRequest(token);
+    }
+
+    private void executeRequest(@NonNull final CancellationToken token) {
+        mRequest = LoaderExecutor.getInstance().execute(getPriority(), new Runnable() {
             @Override
             public void run() {
+                if (token.isCancelled()) {
+                    CoreLogger.log(addLoaderInfo("request cancelled before start"));
+                    return;
+                }
+                token.bind();
                 try {
+                    beforeRequest();
+                    mRequestStarted = startStage();
+
                     CoreLogger.log(addLoaderInfo("makeRequest"));
                     makeRequest(mCallback);
                 }
@@ -320,10 +419,93 @@ public abstract class BaseLoader<C, R, E, D> extends Loader<BaseResponse<R, E, D
                     CoreLogger.log(addLoaderInfo("makeRequest failed"), exception);
                     callbackHelper(false, wrapException(exception));
                 }
+                finally {
+                    afterRequest();
+                    CancellationToken.unbind();
+                }
             }
         });
     }
 
+    /**
+     * Called in the background thread right before the network request (e.g. to bind some thread-local data).
+     */
+    @WorkerThread
+    @SuppressWarnings("WeakerAccess")
+    protected void beforeRequest() {
+    }
+
+    /**
+     * Called in the background thread right after the network request was made (or failed to make).
+     */
+    @WorkerThread
+    @SuppressWarnings("WeakerAccess")
+    protected void afterRequest() {
+    }
+
+    /**
+     * Cancels the network request in progress (if any): the request is removed from the executor queue
+     * (if not started yet) and the network call (if any) is cancelled. The response (if any) will be ignored.
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected void cancelRequest() {
+        cancelRequest(false);
+    }
+
+    private boolean cancelRequest(final boolean timeout) {
+        final CancellationToken token;
+        synchronized (mWaitLock) {
+            // timeout: the response could be already handled
+            if (timeout && !mWaitForResponse.get()) return false;
+            mWaitForResponse.set(false);
+
+            token = mCancellationToken;
+            mCancellationToken = null;
+        }
+        if (token == null || !onCancelRequest()) return true;
+
+        CoreLogger.log(addLoaderInfo(timeout ? "timeout, about to cancel request": "about to cancel request"));
+
+        final Future<?> request = mRequest;
+        if (request != null) request.cancel(false);
+
+        LoaderExecutor.getInstance().cancel(mRetryTask);
+
+        token.cancel();
+        return true;
+    }
+
+    /**
+     * Cancels the network request in progress (if any) and hides the loading progress;
+     * please refer to {@link #cancelRequest} for more info.
+     */
+    @MainThread
+    @SuppressWarnings("WeakerAccess")
+    public void cancelLoading() {
+        cancelRequest();
+        doProgressSafe(false);
+    }
+
+    /**
+     * Called before cancelling the network request (see {@link #cancelRequest}).
+     *
+     * @return  {@code true} to cancel the network call, {@code false} to just ignore the response
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected boolean onCancelRequest() {
+        return true;
+    }
+
+    /**
+     * Called before making the network request; allows to share the identical request which is already in progress.
+     *
+     * @return  {@code true} if the request in progress was shared (so no new request should be made), {@code false} otherwise
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected boolean shareRequest() {
+        return false;
+    }
+
     @SuppressWarnings("unchecked")
     private BaseResponse<R, E, D> wrapException(@NonNull final Exception exception) {
         try {
@@ -345,6 +527,214 @@ public abstract class BaseLoader<C, R, E, D> extends Loader<BaseResponse<R, E, D
      *        The results of loading
      */
     public void callbackHelper(final boolean success, @NonNull final BaseResponse<R, E, D> baseResponse) {
+        callbackHelper(success, baseResponse, true);
+    }
+
+    /**
+     * Subject to call from the callback (see {@link #setCallback(Object) setCallback()}).
+     *
+     * @param success
+     *        {@code true} if data loading completed successfully, {@code false} otherwise
+     *
+     * @param baseResponse
+     *        The results of loading
+     *
+     * @param idempotent
+     *        {@code true} if the request is idempotent (so it could be retried), {@code false} otherwise
+     */
+    public void callbackHelper(final boolean success, @NonNull final BaseResponse<R, E, D> baseResponse,
+                               final boolean idempotent) {
+        // the NETWORK stage is per attempt, so the start time is consumed by the attempt's response
+        final long started = mRequestStarted;
+        mRequestStarted = 0;
+
+        final boolean waiting;
+        synchronized (mWaitLock) {
+            waiting = mWaitForResponse.get();
+        }
+        if (!waiting) {
+            // timed out or cancelled, so the late response says nothing about the network and the endpoint
+            CoreLogger.logWarning(addLoaderInfo("the response is not awaited anymore"));
+            handleCallback(success, baseResponse);
+            return;
+        }
+
+        endStage(Stage.NETWORK, started, baseResponse.getPayloadSize(), -1, success);
+        // cache hits (including 304 Not Modified) say nothing about the network quality; the time is taken
+        // from the HTTP client, so queueing, retries backoff, parsing etc. are not counted
+        if (success && baseResponse.isFromNetwork() && baseResponse.getNetworkTime() > 0)
+            NetworkMonitor.onRequest(TimeUnit.MILLISECONDS.toNanos(baseResponse.getNetworkTime()),
+                    baseResponse.getPayloadSize());
+
+        final boolean failed = !success && getRetryPolicy().isRetryable(baseResponse);
+
+        final CircuitBreaker circuitBreaker = CircuitBreaker.get(getEndpoint());
+        if (circuitBreaker != null) {
+            if (success)
+                circuitBreaker.onSuccess();
+            else if (failed)
+                circuitBreaker.onFailure();
+        }
+
+        if (failed && idempotent && retry(circuitBreaker)) return;
+
+        handleCallback(success, baseResponse);
+    }
+
+    private boolean retry(final CircuitBreaker circuitBreaker) {
+        final CancellationToken token;
+        final long delay;
+
+        synchronized (mWaitLock) {
+            token = mCancellationToken;
+            if (!mWaitForResponse.get() || token == null || token.isCancelled()) return false;
+
+            // the endpoint is known to be failing - don't hammer it
+            if (circuitBreaker != null && !circuitBreaker.allowRequest()) return false;
+
+            delay = getRetryPolicy().getDelay(mRetry);
+            if (delay < 0) return false;
+
+            mRetry++;
+        }
+        CoreLogger.logWarning(addLoaderInfo("about to retry request, delay " + delay + " ms"));
+
+        // the timeout is per attempt (the backoff delay is not counted)
+        restartTimer(delay);
+
+        mRetryTask = LoaderExecutor.getInstance().schedule(delay, new Runnable() {
+            @Override
+            public void run() {
+                mRequestStarted = 0;        // the new attempt (the backoff delay is not counted)
+                executeRequest(token);
+            }
+        });
+        return mRetryTask != null;
+    }
+
+    /**
+     * Sets the retry policy for the network requests.
+     *
+     * @param retryPolicy
+     *        The retry policy (or null for default one)
+     *
+     * @return  This {@code BaseLoader} object
+     *
+     * @see RetryPolicy#setDefault
+     */
+    @SuppressWarnings({"UnusedReturnValue", "unused"})
+    public BaseLoader<C, R, E, D> setRetryPolicy(final RetryPolicy retryPolicy) {
+        mRetryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * Returns the retry policy for the network requests.
+     *
+     * @return  The retry policy
+     */
+    @NonNull
+    @SuppressWarnings("WeakerAccess")
+    public RetryPolicy getRetryPolicy() {
+        final RetryPolicy retryPolicy = mRetryPolicy;
+        return retryPolicy != null ? retryPolicy: RetryPolicy.getDefault();
+    }
+
+    /**
+     * Sets the endpoint of the network requests (for the {@link CircuitBreaker}), e.g. the server host name.
+     * Called by the loader wrappers as soon as the request URL becomes known.
+     *
+     * @param endpoint
+     *        The endpoint (null values are ignored)
+     *
+     * @return  This {@code BaseLoader} object
+     */
+    @SuppressWarnings({"UnusedReturnValue", "WeakerAccess"})
+    public BaseLoader<C, R, E, D> setEndpoint(final Object endpoint) {
+        if (endpoint != null) mEndpoint = endpoint;
+        return this;
+    }
+
+    /**
+     * Returns the endpoint of the network requests (for the {@link CircuitBreaker}).
+     *
+     * @return  The endpoint (or null for no circuit breaker)
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected Object getEndpoint() {
+        return mEndpoint;
+    }
+
+    /**
+     * Returns the name of the cache table (for the {@link LoaderMetrics}).
+     *
+     * @return  The table name (or null)
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected String getTableName() {
+        return null;
+    }
+
+    /**
+     * Registers the listener to collect the data loading metrics (for all loaders).
+     *
+     * @param loaderMetrics
+     *        The LoaderMetrics (or null to stop collecting metrics)
+     *
+     * @see LoaderMetricsAggregator
+     */
+    @SuppressWarnings("unused")
+    public static void setLoaderMetrics(final LoaderMetrics loaderMetrics) {
+        sLoaderMetrics = loaderMetrics;
+    }
+
+    /**
+     * Returns the listener which collects the data loading metrics.
+     *
+     * @return  The LoaderMetrics (or null)
+     */
+    @SuppressWarnings("unused")
+    public static LoaderMetrics getLoaderMetrics() {
+        return sLoaderMetrics;
+    }
+
+    /** @exclude */ @SuppressWarnings("JavaDoc")
+    public static long startStage() {
+        // the monotonic clock; 0 means there's nothing to measure
+        return sLoaderMetrics == null ? 0: System.nanoTime();
+    }
+
+    /** @exclude */ @SuppressWarnings("JavaDoc")
+    public static void endStage(final int loaderId, final String tableName, @NonNull final Stage stage,
+                                final long started, final long size, final int rows, final boolean success) {
+        final LoaderMetrics loaderMetrics = sLoaderMetrics;
+        if (loaderMetrics == null || started == 0) return;
+
+        try {
+            loaderMetrics.onStage(loaderId, tableName, stage, System.nanoTime() - started, size, rows, success);
+        }
+        catch (Exception e) {
+            CoreLogger.log("loader metrics failed, stage " + stage, e);
+        }
+    }
+
+    /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
+    protected void endStage(@NonNull final Stage stage, final long started,
+                            final long size, final int rows, final boolean success) {
+        endStage(getId(), getTableName(), stage, started, size, rows, success);
+    }
+
+    /**
+     * Handles the results of loading; called from {@link #callbackHelper callbackHelper()}.
+     *
+     * @param success
+     *        {@code true} if data loading completed successfully, {@code false} otherwise
+     *
+     * @param baseResponse
+     *        The results of loading
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected void handleCallback(final boolean success, @NonNull final BaseResponse<R, E, D> baseResponse) {
         Utils.postToMainLoop(new Runnable() {
             @Override
             public void run() {
@@ -481,13 +871,37 @@ public abstract class BaseLoader<C, R, E, D> extends Loader<BaseResponse<R, E, D
         }
     }
 
-    private Timer               mTimer;
+    private ScheduledFuture<?>  mTimer;
     private final Object        mTimerLock       = new Object();
 
+    /**
+     * Hides the progress (if any) but keeps waiting for the response, so the timeout is still in effect
+     * (e.g. if the cached data are already displayed).
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected void hideProgress() {
+        try {
+            if (!mSilent) doProgress(false);
+        }
+        catch (Exception e) {
+            CoreLogger.log(addLoaderInfo("hideProgress failed"), e);
+        }
+    }
+
     private void doProgressTimer(final boolean show) {
+        doProgressTimer(show, 0);
+    }
+
+    private void restartTimer(final long delay) {
+        synchronized (mTimerLock) {
+            if (mTimer != null) doProgressTimer(true, delay);
+        }
+    }
+
+    private void doProgressTimer(final boolean show, final long delay) {
         synchronized (mTimerLock) {
             if (mTimer != null) {
-                mTimer.cancel();
+                LoaderExecutor.getInstance().cancel(mTimer);
                 mTimer = null;
             }
             if (!show) return;
@@ -499,16 +913,17 @@ public abstract class BaseLoader<C, R, E, D> extends Loader<BaseResponse<R, E, D
 
             // stop show loading progress after TIMEOUT_CONNECTION_TIMER seconds of connection timeout
             // (normally should never happen)
-            final int timeout = (mTimeout + Core.TIMEOUT_CONNECTION_TIMER) * 1000;
+            // (on slow networks the timeout is extended)
+            final long timeout = (NetworkMonitor.getTimeout(mTimeout) + Core.TIMEOUT_CONNECTION_TIMER) * 1000L;
 
-            mTimer = new Timer(addLoaderInfo("timer for loading progress"));
-            mTimer.schedule(new TimerTask() {
+            mTimer = LoaderExecutor.getInstance().schedule(timeout + delay, new Runnable() {
                 @Override
                 public void run() {
                     CoreLogger.log(Level.ERROR, addLoaderInfo("timer forced to stop display loading progress"), false);
                     doProgressSafe(false);
 
-                    if (!isWaiting()) return;
+                    // stop the request in progress and the pending retry (if any)
+                    if (!cancelRequest(true)) return;
                     CoreLogger.log(addLoaderInfo("timer proceed"));
 
                     Utils.postToMainLoop(new Runnable() {
@@ -518,7 +933,7 @@ public abstract class BaseLoader<C, R, E, D> extends Loader<BaseResponse<R, E, D
                         }
                     });
                 }
-            }, timeout);
+            });
         }
     }
 
@@ -647,7 +1062,10 @@ public abstract class BaseLoader<C, R, E, D> extends Loader<BaseResponse<R, E, D
                 if (mResult != null)    // If we currently have a result available, deliver it immediately.
                     deliverResult(mResult);
 
-                if (isReload() || mResult == null)
+                final boolean reload = mReloadOnStart;
+                mReloadOnStart = false;
+
+                if (isReload() || mResult == null || reload)
                     forceLoad();
             }
         });
@@ -661,6 +1079,18 @@ public abstract class BaseLoader<C, R, E, D> extends Loader<BaseResponse<R, E, D
     protected void onStopLoading() {
         super.onStopLoading();
         cancelLoadHelper();
+
+        // abandoned screen: stop the network call (if any); the data will be reloaded on start
+        final boolean waiting;
+        synchronized (mWaitLock) {
+            waiting = mWaitForResponse.get();
+        }
+        cancelRequest();
+
+        if (waiting) {
+            mReloadOnStart = true;
+            doProgressSafe(false);
+        }
     }
 
     @SuppressLint("ObsoleteSdkInt")
@@ -689,6 +1119,12 @@ public abstract class BaseLoader<C, R, E, D> extends Loader<BaseResponse<R, E, D
         super.onReset();
 
         onStopLoading();
+        mReloadOnStart = false;
+
+        // the response (if any) is not needed anymore
+        synchronized (mWaitLock) {
+            mWaitForResponse.set(false);
+        }
 
         releaseResources(mResult);
         mResult = null;
@@ -831,6 +1267,11 @@ public abstract class BaseLoader<C, R, E, D> extends Loader<BaseResponse<R, E, D
         /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
         protected ValuesCacheAdapterWrapper<R, E, D>    mAdapterWrapper;
 
+        /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
+        protected Paginator<R, E, D>                    mPaginator;
+        /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
+        protected boolean                               mProgressive;
+
         /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
         protected ViewBinder                            mViewBinder;
         /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
@@ -911,6 +1352,51 @@ public abstract class BaseLoader<C, R, E, D> extends Loader<BaseResponse<R, E, D
             return this;
         }
 
+        /**
+         * Sets the paginator component (turns on the pagination mode).
+         *
+         * @param paginator
+         *        The paginator component
+         *
+         * @return  This {@code CoreLoadBuilder} object to allow for chaining of calls to set methods
+         *
+         * @see Paginator
+         */
+        @NonNull
+        @SuppressWarnings("unused")
+        public CoreLoadBuilder<R, E, D> setPaginator(final Paginator<R, E, D> paginator) {
+            mPaginator = paginator;
+            return this;
+        }
+
+        /**
+         * Returns the paginator component (if any).
+         *
+         * @return  The paginator component (or null)
+         */
+        @SuppressWarnings("unused")
+        public Paginator<R, E, D> getPaginator() {
+            return mPaginator;
+        }
+
+        /**
+         * Sets the "progressive" mode: the cached data (if any) are displayed immediately,
+         * and then updated with the data loaded from the network.
+         *
+         * @param progressive
+         *        {@code true} to turn on the "progressive" mode, {@code false} otherwise
+         *
+         * @return  This {@code CoreLoadBuilder} object to allow for chaining of calls to set methods
+         *
+         * @see CacheLoader#setProgressive
+         */
+        @NonNull
+        @SuppressWarnings("unused")
+        public CoreLoadBuilder<R, E, D> setProgressive(final boolean progressive) {
+            mProgressive = progressive;
+            return this;
+        }
+
         /**
          * Sets the view binder component.
          *
@@ -1065,7 +1551,11 @@ public abstract class BaseLoader<C, R, E, D> extends Loader<BaseResponse<R, E, D
                 return null;
             }
 
-            coreLoad.addLoader(mAdapterWrapper, mRx, mLoaderBuilder);
+            final BaseLoaderWrapper loaderWrapper = coreLoad.addLoader(mAdapterWrapper, mRx, mLoaderBuilder);
+            if (mProgressive && loaderWrapper != null) loaderWrapper.setProgressive(true);
+
+            if (mPaginator != null && loaderWrapper != null)
+                mPaginator.attach(coreLoad, loaderWrapper.getLoaderId(), mAdapterWrapper);
 
             return coreLoad;
         }
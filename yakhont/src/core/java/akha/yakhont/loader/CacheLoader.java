@@ -16,13 +16,20 @@
 
 package akha.yakhont.loader;
 
+import akha.yakhont.BaseCacheProvider;
+import akha.yakhont.Core;
 import akha.yakhont.Core.UriResolver;
 import akha.yakhont.Core.Utils;
 import akha.yakhont.CoreLogger;
+import akha.yakhont.NetworkMonitor;
 import akha.yakhont.adapter.BaseCacheAdapter.BaseCursorAdapter;
 import akha.yakhont.loader.BaseResponse;
 import akha.yakhont.loader.BaseResponse.Converter;
 import akha.yakhont.loader.BaseResponse.Source;
+import akha.yakhont.loader.CacheValidators;
+import akha.yakhont.loader.CircuitBreaker;
+import akha.yakhont.loader.LoaderExecutor.Priority;
+import akha.yakhont.loader.LoaderMetrics.Stage;
 
 import android.annotation.TargetApi;
 import android.app.Fragment;
@@ -36,12 +43,16 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 //import android.provider.BaseColumns;
 import android.support.annotation.CallSuper;
 import android.support.annotation.NonNull;
 
 import java.lang.ref.WeakReference;
 //import java.util.LinkedHashSet;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -83,6 +94,20 @@ public abstract class CacheLoader<C, R, E, D> extends BaseLoader<C, R, E, D> {
 
     private   final     Converter<D>                  mConverter;
 
+    private   final     AtomicBoolean                 mShared                   = new AtomicBoolean();
+    private   final     AtomicBoolean                 mPrefetch                 = new AtomicBoolean();
+
+    private   final     AtomicBoolean                 mProgressive              = new AtomicBoolean();
+    private   final     AtomicBoolean                 mProgressivePending       = new AtomicBoolean();
+
+    private volatile    long                          mQueryStarted;
+
+    @SuppressWarnings("rawtypes")
+    private static final Map<Object, InFlightRequest> sInFlightRequests         = Utils.newMap();
+
+    // the endpoints of the cache tables, so new loaders know them before their first request
+    private static final Map<Uri, Object>             sEndpoints                = Utils.newMap();
+
     /**
      * Initialises a newly created {@code CacheLoader} object.
      *
@@ -169,6 +194,36 @@ public abstract class CacheLoader<C, R, E, D> extends BaseLoader<C, R, E, D> {
         return mForceCache.getAndSet(forceCache);
     }
 
+    /**
+     * Sets the "progressive" flag. If set to {@code true} the cached data (if any) are delivered
+     * immediately on start (with the {@link Source#CACHE CACHE} source), and then the data loaded from
+     * the network are delivered (so adapters are updated twice). Not applicable for merge and prefetch.
+     * <br>The default value is {@code false}.
+     *
+     * @param progressive
+     *        The value to set
+     *
+     * @return  The previous value
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public boolean setProgressive(final boolean progressive) {
+        CoreLogger.log(addLoaderInfo("" + progressive));
+
+        return mProgressive.getAndSet(progressive);
+    }
+
+    /**
+     * Returns the "progressive" flag.
+     *
+     * @return  The "progressive" flag
+     *
+     * @see #setProgressive
+     */
+    @SuppressWarnings("unused")
+    public boolean isProgressive() {
+        return mProgressive.get();
+    }
+
     /**
      * Sets the "merge" flag. If set to {@code true} the loaded data will be merged with already existing.
      * <br>The default value is {@code false}.
@@ -185,19 +240,250 @@ public abstract class CacheLoader<C, R, E, D> extends BaseLoader<C, R, E, D> {
         return mMerge.getAndSet(merge);
     }
 
+    /**
+     * Please refer to the base method description.
+     */
+    @NonNull
+    @Override
+    protected Priority getDefaultPriority() {
+        if (mPrefetch.get()) return Priority.PREFETCH;
+
+        final Fragment fragment = mFragment.get();
+        if (fragment == null) return super.getDefaultPriority();
+
+        return fragment.isVisible() && Core.isInForeground() ? Priority.VISIBLE: Priority.BACKGROUND;
+    }
+
     /**
      * Please refer to the base method description.
      */
     @CallSuper
     @Override
     protected void makeRequest() {
-        if (mForceCache.get() || !Utils.isConnected()) {
-            CoreLogger.log(addLoaderInfo("request forced to cache, forceCache " + mForceCache.get()));
+        if (!mPrefetch.get()) PrefetchScheduler.cancel();
+
+        final CircuitBreaker circuitBreaker = CircuitBreaker.get(getEndpoint());
+        final boolean failing = !mForceCache.get() && Utils.isConnected() &&
+                circuitBreaker != null && !circuitBreaker.allowRequest();
+
+        if (mForceCache.get() || !Utils.isConnected() || failing) {
+            CoreLogger.log(addLoaderInfo("request forced to cache, forceCache " + mForceCache.get() +
+                    (failing ? ", circuit breaker " + circuitBreaker: "")));
 
             onFailure(new BaseResponse<R, E, D>(Source.CACHE));
+            return;
+        }
+
+        // on poor links the cached data (if any) are delivered first
+        final boolean poor        = NetworkMonitor.isPoor();
+        final boolean progressive = (mProgressive.get() || poor) && !mMerge.get() && !mPrefetch.get();
+        mProgressivePending.set(progressive);
+
+        super.makeRequest();
+
+        if (progressive) {
+            CoreLogger.log(addLoaderInfo("progressive mode" + (poor ? " (poor network)": "") +
+                    ", about to load from cache"));
+            loadFromCache(null, true);
+        }
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    protected void beforeRequest() {
+        // merged data (e.g. the next page) has nothing to do with the validators of the cached data
+        if (!CacheValidators.isEnabled() || mMerge.get()) return;
+
+        final CacheValidators validators = BaseCacheProvider.getValidators(getContext().getContentResolver(), mUri);
+        if (validators == null) return;
+
+        CoreLogger.log(addLoaderInfo("conditional request, " + validators));
+        validators.bind();
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    protected void afterRequest() {
+        CacheValidators.unbind();
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    public BaseLoader<C, R, E, D> setEndpoint(final Object endpoint) {
+        if (endpoint != null) sEndpoints.put(mUri, endpoint);
+        return super.setEndpoint(endpoint);
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    protected Object getEndpoint() {
+        final Object endpoint = super.getEndpoint();
+        return endpoint != null ? endpoint: sEndpoints.get(mUri);
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    protected String getTableName() {
+        return Utils.getLoaderTableName(mUri);
+    }
+
+    /**
+     * Returns the key to identify the network request; identical concurrent requests (i.e. with equal keys
+     * and the same table) share one network call and one conversion and store. By default returns null
+     * (which means no sharing).
+     *
+     * @return  The request key (or null)
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected Object getRequestKey() {
+        return null;
+    }
+
+    /**
+     * Loads data from the network and stores it in cache, without delivering results
+     * (so the loader should not be registered with the {@code LoaderManager}).
+     * Please refer to {@link PrefetchScheduler} for more info.
+     *
+     * @return  {@code true} if the prefetch was started, {@code false} otherwise
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public boolean prefetch() {
+        if (mForceCache.get() || !Utils.isConnected()) {
+            CoreLogger.logWarning(addLoaderInfo("prefetch skipped, forceCache " + mForceCache.get()));
+            return false;
+        }
+        CoreLogger.log(addLoaderInfo("prefetch"));
+
+        mPrefetch.set(true);
+        makeRequest();
+
+        return true;
+    }
+
+    // the prefetch loaders are never reused, so the thread is not needed anymore (queued tasks are still executed)
+    void shutdownExecutor() {
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Checks whether this loader was started via {@link #prefetch} or not.
+     *
+     * @return  {@code true} if the loader is in prefetch mode, {@code false} otherwise
+     */
+    public boolean isPrefetch() {
+        return mPrefetch.get();
+    }
+
+    private Object getInFlightKey() {
+        // prefetch could be cancelled at any moment, so it's not a good candidate for sharing
+        if (mPrefetch.get()) return null;
+
+        final Object key = getRequestKey();
+        return key == null ? null: Arrays.asList(key, mUri, mMerge.get());
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected boolean shareRequest() {
+        final Object key = getInFlightKey();
+        if (key == null) return false;
+
+        synchronized (sInFlightRequests) {
+            final InFlightRequest request = sInFlightRequests.get(key);
+            if (request != null && request.mLeader != this && !request.isStale()) {
+                request.mFollowers.add(this);
+                return true;
+            }
+            final InFlightRequest newRequest = new InFlightRequest(this);
+
+            // the followers of the replaced (e.g. stale) request wait for the new one
+            if (request != null) {
+                newRequest.mFollowers.addAll(request.mFollowers);
+                newRequest.mFollowers.remove(this);
+
+                if (!newRequest.mFollowers.isEmpty())
+                    CoreLogger.log(addLoaderInfo("followers re-attached: " + newRequest.mFollowers.size()));
+            }
+            sInFlightRequests.put(key, newRequest);
+            return false;
         }
-        else
-            super.makeRequest();
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    protected boolean onCancelRequest() {
+        final Object key = getInFlightKey();
+        if (key == null) return true;
+
+        synchronized (sInFlightRequests) {
+            final InFlightRequest request = sInFlightRequests.get(key);
+            if (request == null || request.mLeader != this) return true;
+
+            // other loaders are waiting for the response, so keep the network call
+            if (!request.mFollowers.isEmpty()) return false;
+
+            sInFlightRequests.remove(key);
+            return true;
+        }
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void handleCallback(final boolean success, @NonNull final BaseResponse<R, E, D> baseResponse) {
+        InFlightRequest<C, R, E, D> request = null;
+
+        final Object key = getInFlightKey();
+        if (key != null)
+            synchronized (sInFlightRequests) {
+                request = sInFlightRequests.get(key);
+                if (request != null && request.mLeader == this)
+                    sInFlightRequests.remove(key);
+                else
+                    request = null;
+            }
+
+        super.handleCallback(success, baseResponse);
+
+        if (request == null || request.mFollowers.isEmpty()) return;
+        final InFlightRequest<C, R, E, D> requestFinal = request;
+
+        // after the leader's onSuccess(), so the converted values are available
+        Utils.postToMainLoop(new Runnable() {
+            @Override
+            public void run() {
+                for (final CacheLoader<C, R, E, D> follower: requestFinal.mFollowers) {
+                    CoreLogger.log(follower.addLoaderInfo("shared request completed"));
+
+                    final BaseResponse<R, E, D> response = new BaseResponse<>(baseResponse.getResult(),
+                            baseResponse.getResponse(), baseResponse.getCursor(), baseResponse.getError(),
+                            baseResponse.getSource(), baseResponse.getThrowable());
+                    response.setContentValues(baseResponse.getValues());
+                    response.setCacheValidators(baseResponse.getCacheValidators());
+                    response.setPayloadSize(baseResponse.getPayloadSize());
+
+                    follower.mShared.set(true);
+                    follower.handleCallback(success, response);
+                }
+            }
+        });
     }
 
     /**
@@ -206,9 +492,37 @@ public abstract class CacheLoader<C, R, E, D> extends BaseLoader<C, R, E, D> {
     @CallSuper
     @Override
     protected void onSuccess(@NonNull final BaseResponse<R, E, D> baseResponse) {
+        mProgressivePending.set(false);
+
+        if (baseResponse.getSource() == Source.CACHE) {
+            onNotModified();
+            return;
+        }
         storeResult(baseResponse);
 
+        if (mPrefetch.get()) {
+            CoreLogger.log(addLoaderInfo("prefetch completed"));
+            PrefetchScheduler.onCompleted(this);
+            return;
+        }
         super.onSuccess(baseResponse);
+
+        PrefetchScheduler.schedule();
+    }
+
+    // the server responded "304 Not Modified", so the cached data are still valid
+    private void onNotModified() {
+        mShared.set(false);
+
+        if (mPrefetch.get()) {
+            CoreLogger.log(addLoaderInfo("prefetch completed, not modified"));
+            PrefetchScheduler.onCompleted(this);
+            return;
+        }
+        CoreLogger.log(addLoaderInfo("not modified, about to load from cache"));
+        loadFromCache(null, false);
+
+        PrefetchScheduler.schedule();
     }
 
     private void storeResult(@NonNull final BaseResponse<R, E, D> baseResponse) {
@@ -219,34 +533,51 @@ public abstract class CacheLoader<C, R, E, D> extends BaseLoader<C, R, E, D> {
                 return;
         }
 
+        if (mShared.getAndSet(false) && baseResponse.getValues() != null) {
+            CoreLogger.log(addLoaderInfo("already stored by the shared request"));
+            return;
+        }
+
         final D result = baseResponse.getResult();
 
         CoreLogger.logWarning(addLoaderInfo("about to store in cache"));
 
+        final long started = startStage();
         final ContentValues[] values = mConverter.get(result);
+        endStage(Stage.CONVERSION, started, -1, values == null ? 0: values.length, true);
+
         baseResponse.setContentValues(values);
 
+        final CacheValidators validators = baseResponse.getCacheValidators();
+
         mExecutor.execute(new Runnable() {
             @Override
             public void run() {
+                final long started = startStage();
+                final int  rows    = values == null ? 0: values.length;
                 try {
-                    storeResult(values);
+                    storeResult(values, validators);
+                    endStage(Stage.STORE, started, -1, rows, true);
                 }
                 catch (Exception e) {
                     CoreLogger.log(addLoaderInfo("can not store result"), e);
+                    endStage(Stage.STORE, started, -1, rows, false);
                 }
             }
         });
     }
 
-    private void storeResult(final ContentValues[] values) {
+    private void storeResult(final ContentValues[] values, final CacheValidators validators) {
         final ContentResolver contentResolver = getContext().getContentResolver();
+        final boolean merge = mMerge.get();
 
-        if (!mMerge.get()) contentResolver.delete(mUri, null, null);
+        if (!merge) contentResolver.delete(mUri, null, null);
 
-        if (values == null || values.length == 0) return;
+        if (values != null && values.length > 0) contentResolver.bulkInsert(mUri, values);
 
-        contentResolver.bulkInsert(mUri, values);
+        // the validators (if any) are stored after the data, so they never refer to incomplete cache
+        if (!merge && validators != null && CacheValidators.isEnabled())
+            BaseCacheProvider.setValidators(contentResolver, mUri, validators);
     }
 
     /**
@@ -255,8 +586,19 @@ public abstract class CacheLoader<C, R, E, D> extends BaseLoader<C, R, E, D> {
     @CallSuper
     @Override
     protected void onFailure(@NonNull final BaseResponse<R, E, D> baseResponse) {
+        mProgressivePending.set(false);
+
+        if (mPrefetch.get()) {
+            CoreLogger.logWarning(addLoaderInfo("prefetch failed"));
+            PrefetchScheduler.onCompleted(this);
+            return;
+        }
         CoreLogger.log(addLoaderInfo("about to load from cache"));
 
+        loadFromCache(baseResponse.getError(), false);
+    }
+
+    private void loadFromCache(final E error, final boolean progressive) {
         final Fragment fragment = mFragment.get();
         if (fragment == null) {
             CoreLogger.logError("fragment == null");
@@ -264,18 +606,22 @@ public abstract class CacheLoader<C, R, E, D> extends BaseLoader<C, R, E, D> {
         }
 
         final LoaderManager loaderManager = fragment.getLoaderManager();
-        if (loaderManager == null)
+        if (loaderManager == null) {
             CoreLogger.logError("loaderManager == null");
-        else
-            loaderManager.restartLoader(-mLoaderId, null, new CursorLoaderWrapper(baseResponse.getError()));
+            return;
+        }
+        mQueryStarted = startStage();
+        loaderManager.restartLoader(-mLoaderId, null, new CursorLoaderWrapper(error, progressive));
     }
 
     private class CursorLoaderWrapper implements LoaderManager.LoaderCallbacks<Cursor> {
 
         private final E         mError;
+        private final boolean   mEarlyDelivery;
 
-        private CursorLoaderWrapper(final E error) {
-            mError = error;
+        private CursorLoaderWrapper(final E error, final boolean earlyDelivery) {
+            mError          = error;
+            mEarlyDelivery  = earlyDelivery;
         }
 
         /**
@@ -293,7 +639,27 @@ public abstract class CacheLoader<C, R, E, D> extends BaseLoader<C, R, E, D> {
         public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
             CoreLogger.log(addLoaderInfo("from cache"));
 
-            deliver(new BaseResponse<R, E, D>(mConverter.get(cursor), null, cursor, mError, Source.CACHE, null));
+            // the cursor could be reloaded on content change, so only the first load is measured
+            final long queryStarted = mQueryStarted;
+            mQueryStarted = 0;
+
+            final int rows = cursor == null ? -1: cursor.getCount();
+            endStage(Stage.QUERY, queryStarted, -1, rows, cursor != null);
+
+            if (mEarlyDelivery) {
+                // the network response is already handled, or there's nothing to display yet
+                if (!mProgressivePending.getAndSet(false) || rows <= 0) {
+                    CoreLogger.log(addLoaderInfo("progressive cache delivery skipped, rows " + rows));
+                    return;
+                }
+                hideProgress();
+            }
+
+            final long started = startStage();
+            final D data = mConverter.get(cursor);
+            endStage(Stage.CONVERSION, started, -1, rows, true);
+
+            deliver(new BaseResponse<R, E, D>(data, null, cursor, mError, Source.CACHE, null));
         }
 
         /**
@@ -306,4 +672,24 @@ public abstract class CacheLoader<C, R, E, D> extends BaseLoader<C, R, E, D> {
             if (mAdapter != null) mAdapter.swapCursor(null);
         }
     }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static class InFlightRequest<C, R, E, D> {
+
+        private final CacheLoader<C, R, E, D>               mLeader;
+        private final Set<CacheLoader<C, R, E, D>>          mFollowers          = Utils.newSet();
+        private final long                                  mStarted            = SystemClock.elapsedRealtime();
+
+        private InFlightRequest(@NonNull final CacheLoader<C, R, E, D> leader) {
+            mLeader = leader;
+        }
+
+        // the leader which didn't get any response (e.g. because of Rx unsubscribing) should not block others forever
+        private boolean isStale() {
+            final int timeout = mLeader.getTimeout();
+            return timeout >= 0 && SystemClock.elapsedRealtime() - mStarted >
+                    (timeout + Core.TIMEOUT_CONNECTION_TIMER) * 1000L;
+        }
+    }
 }
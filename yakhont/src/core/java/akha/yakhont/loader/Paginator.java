@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.loader;
+
+import akha.yakhont.Core.Utils;
+import akha.yakhont.CoreLogger;
+import akha.yakhont.adapter.BaseCacheAdapter.PagingListener;
+import akha.yakhont.adapter.ValuesCacheAdapterWrapper;
+import akha.yakhont.loader.BaseResponse;
+import akha.yakhont.loader.BaseResponse.Source;
+import akha.yakhont.loader.wrapper.BaseResponseLoaderWrapper.CoreLoad;
+
+import android.content.ContentValues;
+import android.support.annotation.IntRange;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The incremental pagination support for the {@link BaseLoader.CoreLoadBuilder CoreLoadBuilder}.
+ * The first page replaces the cached data, the next ones are appended (page by page) to both the cache
+ * and the adapter. The next page loading is triggered automatically when the list is scrolled close
+ * to its end; the data end is detected via the page size (or via the {@link PageKeyResolver}).
+ * The loaded pages are kept in the adapter (append-only, so the list never jumps on scrolling).
+ * For example:
+ *
+ * <p><pre style="background-color: silver; border: thin solid black;">
+ * import akha.yakhont.loader.Paginator;
+ * import akha.yakhont.technology.retrofit.Retrofit2LoaderWrapper.Retrofit2CoreLoadBuilder;
+ *
+ * public class MyFragment extends Fragment {
+ *
+ *     &#064;Override
+ *     public void onActivityCreated(Bundle savedInstanceState) {
+ *         super.onActivityCreated(savedInstanceState);
+ *         ...
+ *
+ *         final Paginator&lt;Response&lt;MyData[]&gt;, Throwable, MyData[]&gt; paginator = new Paginator&lt;&gt;(20);
+ *
+ *         CoreLoad coreLoad = new Retrofit2CoreLoadBuilder&lt;MyData[], Retrofit2Api&gt;(
+ *                 this, MyData[].class, getRetrofitApi()) {
+ *
+ *                     &#064;Override
+ *                     public void makeRequest(&#064;NonNull Callback&lt;MyData[]&gt; callback) {
+ *                         getApi().data((Integer) paginator.getPageKey(), 20).enqueue(callback);
+ *                     }
+ *                 }
+ *             .setPaginator(paginator)
+ *             .create();
+ *
+ *         coreLoad.startLoading();
+ *     }
+ * }
+ * </pre>
+ *
+ * @param <R>
+ *        The type of network response
+ *
+ * @param <E>
+ *        The type of error (if any)
+ *
+ * @param <D>
+ *        The type of data
+ *
+ * @author akha
+ */
+public class Paginator<R, E, D> implements PagingListener<R, E, D> {
+
+    /** The default number of items (before the list end) which triggers the next page loading (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final int                            PREFETCH_DISTANCE_DEFAULT   = 5;
+
+    /** The first page key used by default (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final int                            FIRST_PAGE_DEFAULT          = 1;
+
+    private        final int                            mPageSize;
+    private              int                            mPrefetchDistance           = PREFETCH_DISTANCE_DEFAULT;
+
+    private              PageKeyResolver<R, E, D>       mPageKeyResolver;
+
+    private              CoreLoad                       mCoreLoad;
+    private              int                            mLoaderId;
+
+    private        final AtomicInteger                  mPages                      = new AtomicInteger();
+    private        final AtomicBoolean                  mLoading                    = new AtomicBoolean();
+    private volatile     Object                         mPageKey;
+    private volatile     Object                         mNextPageKey;
+    private volatile     boolean                        mEnd;
+
+    /**
+     * The API to calculate page keys (e.g. page numbers, offsets or server-side cursors).
+     *
+     * @param <R>
+     *        The type of network response
+     *
+     * @param <E>
+     *        The type of error (if any)
+     *
+     * @param <D>
+     *        The type of data
+     */
+    public interface PageKeyResolver<R, E, D> {
+
+        /**
+         * Returns the key of the first page.
+         *
+         * @return  The first page key
+         */
+        Object getFirstPageKey();
+
+        /**
+         * Returns the key of the page which follows the given one.
+         *
+         * @param pageKey
+         *        The key of the loaded page
+         *
+         * @param page
+         *        The loaded page
+         *
+         * @return  The next page key, or null if there are no more data
+         */
+        Object getNextPageKey(Object pageKey, BaseResponse<R, E, D> page);
+    }
+
+    /**
+     * Initialises a newly created {@code Paginator} object. Pages are numbered sequentially,
+     * starting from {@link #FIRST_PAGE_DEFAULT}.
+     *
+     * @param pageSize
+     *        The number of items per page; the page with less items means the data end
+     */
+    public Paginator(@IntRange(from = 1) final int pageSize) {
+        mPageSize   = pageSize;
+
+        mPageKeyResolver = new PageKeyResolver<R, E, D>() {
+            @Override
+            public Object getFirstPageKey() {
+                return FIRST_PAGE_DEFAULT;
+            }
+
+            @Override
+            public Object getNextPageKey(final Object pageKey, final BaseResponse<R, E, D> page) {
+                return pageKey instanceof Integer ? (Integer) pageKey + 1: null;
+            }
+        };
+        mPageKey = mPageKeyResolver.getFirstPageKey();
+    }
+
+    /**
+     * Sets the page keys resolver.
+     *
+     * @param pageKeyResolver
+     *        The PageKeyResolver
+     *
+     * @return  This {@code Paginator} object to allow for chaining of calls to set methods
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Paginator<R, E, D> setPageKeyResolver(@NonNull final PageKeyResolver<R, E, D> pageKeyResolver) {
+        mPageKeyResolver = pageKeyResolver;
+        mPageKey         = pageKeyResolver.getFirstPageKey();
+        return this;
+    }
+
+    /**
+     * Sets the number of items (before the list end) which triggers the next page loading.
+     *
+     * @param prefetchDistance
+     *        The prefetch distance
+     *
+     * @return  This {@code Paginator} object to allow for chaining of calls to set methods
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Paginator<R, E, D> setPrefetchDistance(@IntRange(from = 0) final int prefetchDistance) {
+        mPrefetchDistance = prefetchDistance;
+        return this;
+    }
+
+    /** @exclude */ @SuppressWarnings("JavaDoc")
+    @MainThread
+    public void attach(@NonNull final CoreLoad coreLoad, final int loaderId,
+                       @NonNull final ValuesCacheAdapterWrapper<R, E, D> adapterWrapper) {
+        mCoreLoad   = coreLoad;
+        mLoaderId   = loaderId;
+
+        adapterWrapper.getAdapter().setPagingListener(this);
+    }
+
+    /**
+     * Returns the key of the page to load; should be used in the {@link akha.yakhont.Core.Requester#makeRequest}.
+     *
+     * @return  The page key
+     */
+    public Object getPageKey() {
+        return mLoading.get() ? mPageKey: mPageKeyResolver.getFirstPageKey();
+    }
+
+    /**
+     * Checks whether all data were loaded or not.
+     *
+     * @return  {@code true} if there are no more pages to load, {@code false} otherwise
+     */
+    @SuppressWarnings("unused")
+    public boolean isEnd() {
+        return mEnd;
+    }
+
+    /**
+     * Returns the number of pages loaded (and kept in adapter).
+     *
+     * @return  The number of pages
+     */
+    @SuppressWarnings("unused")
+    public int getPagesCount() {
+        return mPages.get();
+    }
+
+    /**
+     * Loads the next page (if any). Normally called automatically on list scrolling.
+     *
+     * @return  {@code true} if loading was started, {@code false} otherwise
+     */
+    @MainThread
+    @SuppressWarnings("UnusedReturnValue")
+    public boolean loadNextPage() {
+        if (mCoreLoad == null) {
+            CoreLogger.logError("paginator is not attached to CoreLoad");
+            return false;
+        }
+        if (mEnd || mNextPageKey == null) return false;
+
+        if (!Utils.isConnected()) {
+            CoreLogger.logWarning("next page loading skipped: no network");
+            return false;
+        }
+        if (!mLoading.compareAndSet(false, true)) return false;
+
+        mPageKey = mNextPageKey;
+        CoreLogger.log("about to load page " + mPageKey);
+
+        if (mCoreLoad.startLoading(mLoaderId, false, true, true, false) != null) return true;
+
+        mLoading.set(false);
+        return false;
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    public void onBind(final int position, final int count) {
+        if (mEnd || mLoading.get() || position < count - 1 - mPrefetchDistance) return;
+
+        Utils.postToMainLoop(new Runnable() {
+            @Override
+            public void run() {
+                loadNextPage();
+            }
+        });
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    public void onUpdate(final BaseResponse<R, E, D> data, final boolean isMerge) {
+        final boolean loading = mLoading.getAndSet(false);
+        if (data == null || data.getSource() != Source.NETWORK) return;
+
+        if (!isMerge) {
+            mPages.set(0);
+            mPageKey = mPageKeyResolver.getFirstPageKey();
+        }
+        else if (!loading)
+            CoreLogger.logWarning("merged data was not requested by paginator, page " + mPageKey);
+
+        final ContentValues[] values = data.getValues();
+        final int size = values == null ? 0: values.length;
+
+        mNextPageKey = mPageKeyResolver.getNextPageKey(mPageKey, data);
+        mEnd         = size < mPageSize || mNextPageKey == null;
+
+        CoreLogger.log("page " + mPageKey + " loaded, items " + size + ", end " + mEnd);
+
+        mPages.incrementAndGet();
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.loader;
+
+import akha.yakhont.Core;
+import akha.yakhont.Core.Utils;
+import akha.yakhont.CoreLogger;
+import akha.yakhont.NetworkMonitor;
+import akha.yakhont.loader.LoaderExecutor;
+import akha.yakhont.loader.wrapper.BaseLoaderWrapper;
+import akha.yakhont.loader.wrapper.BaseLoaderWrapper.LoaderBuilder;
+import akha.yakhont.loader.wrapper.BaseLoaderWrapper.LoaderFactory;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.Loader;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Warms the cache tables of the loaders which are likely to be needed next (e.g. on the next screen).
+ * The prefetch runs when the application's main thread is idle and no other loaders are busy,
+ * on unmetered networks only, and with the lowest priority ({@link LoaderExecutor.Priority#PREFETCH}).
+ * As soon as a foreground loader starts, all prefetches in progress are cancelled. For example:
+ *
+ * <p><pre style="background-color: silver; border: thin solid black;">
+ * import akha.yakhont.loader.PrefetchScheduler;
+ * import akha.yakhont.technology.retrofit.Retrofit2LoaderWrapper.Retrofit2LoaderBuilder;
+ *
+ * public class MyFragment extends Fragment {
+ *
+ *     private Retrofit2LoaderBuilder&lt;MyNextData[], Retrofit2Api&gt; mPrefetchBuilder;
+ *
+ *     &#064;Override
+ *     public void onActivityCreated(Bundle savedInstanceState) {
+ *         super.onActivityCreated(savedInstanceState);
+ *         ...
+ *
+ *         mPrefetchBuilder = new Retrofit2LoaderBuilder&lt;&gt;(this, MyNextData[].class, getRetrofitApi(), null);
+ *         PrefetchScheduler.register(mPrefetchBuilder);
+ *     }
+ *
+ *     &#064;Override
+ *     public void onDestroy() {
+ *         PrefetchScheduler.unregister(mPrefetchBuilder);
+ *
+ *         super.onDestroy();
+ *     }
+ * }
+ * </pre>
+ *
+ * @author akha
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)                       //YakhontPreprocessor:removeInFlavor
+public class PrefetchScheduler {
+
+    /** The default minimal interval (in milliseconds) between prefetches of the same data (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final long                               MIN_INTERVAL_DEFAULT        = 5 * 60 * 1000;
+
+    private static final Set<LoaderBuilder>                 sBuilders                   = Utils.newSet();
+    private static final Map<LoaderBuilder, Long>           sLastPrefetch               = Utils.newWeakMap();
+    private static final Set<CacheLoader>                   sLoaders                    = Utils.newSet();
+
+    private static volatile long                            sMinInterval                = MIN_INTERVAL_DEFAULT;
+    private static volatile boolean                         sScheduled;
+
+    private PrefetchScheduler() {
+    }
+
+    /**
+     * Registers the loader builder for the prefetch; the {@link BaseLoaderWrapper} created by the builder
+     * should use {@link CacheLoader} (e.g. Retrofit-based builders do so).
+     *
+     * @param builder
+     *        The loader builder
+     *
+     * @return  {@code true} if registration was successful, {@code false} otherwise
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public static boolean register(final LoaderBuilder builder) {
+        if (builder == null) {
+            CoreLogger.logError("builder == null");
+            return false;
+        }
+        final boolean result = sBuilders.add(builder);
+        if (result) schedule();
+
+        return result;
+    }
+
+    /**
+     * Removes the loader builder that was previously registered with {@link #register register()}.
+     *
+     * @param builder
+     *        The loader builder
+     *
+     * @return  {@code true} if removing was successful, {@code false} otherwise
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public static boolean unregister(final LoaderBuilder builder) {
+        return builder != null && sBuilders.remove(builder);
+    }
+
+    /**
+     * Sets the minimal interval between prefetches of the same data.
+     *
+     * @param minInterval
+     *        The interval (in milliseconds)
+     */
+    @SuppressWarnings("unused")
+    public static void setMinInterval(final long minInterval) {
+        sMinInterval = minInterval;
+    }
+
+    /**
+     * Requests the prefetch of the registered loaders (it will be started when the application is idle).
+     * Called automatically after any loader (not in prefetch mode) successfully completes.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static void schedule() {
+        if (sScheduled || sBuilders.isEmpty()) return;
+        sScheduled = true;
+
+        Utils.postToMainLoop(new Runnable() {
+            @Override
+            public void run() {
+                Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+                    @Override
+                    public boolean queueIdle() {
+                        sScheduled = false;
+                        startPrefetch();
+                        return false;
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Cancels all prefetches in progress. Called automatically when some loader (not in prefetch mode) starts.
+     */
+    @MainThread
+    public static void cancel() {
+        if (sLoaders.isEmpty()) return;
+
+        for (final CacheLoader loader: sLoaders) {
+            CoreLogger.log("about to cancel prefetch " + loader);
+            loader.reset();
+            loader.shutdownExecutor();
+        }
+        sLoaders.clear();
+    }
+
+    static void onCompleted(@NonNull final CacheLoader loader) {
+        sLoaders.remove(loader);
+        loader.shutdownExecutor();
+    }
+
+    @MainThread
+    private static void startPrefetch() {
+        if (!Core.isInForeground()) {
+            CoreLogger.log("prefetch skipped: not in foreground");
+            return;
+        }
+        final LoaderExecutor executor = LoaderExecutor.getInstance();
+        if (executor.getActiveCount() > 0 || executor.getQueueSize() > 0) {
+            CoreLogger.log("prefetch postponed: loaders are busy");
+            schedule();
+            return;
+        }
+        if (!isUnmetered()) {
+            CoreLogger.log("prefetch skipped: network is metered or not available");
+            return;
+        }
+        if (NetworkMonitor.isPoor()) {
+            CoreLogger.log("prefetch skipped: poor network");
+            return;
+        }
+
+        final long now = SystemClock.elapsedRealtime();
+        for (final LoaderBuilder builder: sBuilders) {
+            final Long lastPrefetch = sLastPrefetch.get(builder);
+            if (lastPrefetch != null && now - lastPrefetch < sMinInterval) continue;
+
+            final CacheLoader loader = getLoader(builder);
+            if (loader == null) continue;
+
+            sLastPrefetch.put(builder, now);
+            if (loader.prefetch())
+                sLoaders.add(loader);
+            else
+                loader.shutdownExecutor();
+        }
+    }
+
+    private static CacheLoader getLoader(@NonNull final LoaderBuilder builder) {
+        try {
+            final BaseLoaderWrapper loaderWrapper = builder.create();
+            final LoaderFactory loaderFactory = loaderWrapper == null ? null: loaderWrapper.geLoaderFactory();
+
+            final Loader loader = loaderFactory == null ? null: loaderFactory.getLoader(false);
+            if (loader instanceof CacheLoader) return (CacheLoader) loader;
+
+            CoreLogger.logError("prefetch is not supported for loader " + loader);
+        }
+        catch (Exception e) {
+            CoreLogger.log("prefetch failed for builder " + builder, e);
+        }
+        return null;
+    }
+
+    @SuppressLint("ObsoleteSdkInt")
+    @SuppressWarnings("deprecation")
+    private static boolean isUnmetered() {
+        if (!Utils.isConnected()) return false;
+
+        final Context context = Utils.getApplication();
+        if (context == null) return false;
+
+        final ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null) return false;
+
+        final NetworkInfo activeInfo = connectivityManager.getActiveNetworkInfo();
+        if (activeInfo == null || !activeInfo.isConnected()) return false;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            return !connectivityManager.isActiveNetworkMetered();
+
+        final int type = activeInfo.getType();
+        return type == ConnectivityManager.TYPE_WIFI || type == ConnectivityManager.TYPE_ETHERNET;
+    }
+}
@@ -24,6 +24,7 @@ import akha.yakhont.fragment.WorkerFragment;
 import akha.yakhont.loader.BaseLoader;
 import akha.yakhont.loader.BaseLoader.ProgressWrapper;
 import akha.yakhont.loader.CacheLoader;
+import akha.yakhont.loader.LoaderExecutor;
 import akha.yakhont.loader.wrapper.BaseResponseLoaderWrapper.CoreLoad;
 
 import android.annotation.TargetApi;
@@ -32,8 +33,10 @@ import android.app.LoaderManager;
 import android.content.Loader;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.annotation.CallSuper;
 import android.support.annotation.IdRes;
+import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.Size;
 import android.support.annotation.WorkerThread;
@@ -46,6 +49,9 @@ import java.util.Collection;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -73,6 +79,13 @@ public abstract class BaseLoaderWrapper<D> implements LoaderManager.LoaderCallba
 
     private static final String                             FORMAT_INFO                 = "id = %d";
 
+    /** The value to use with {@link #startSync(Collection, int, long, long) startSync()}: no timeout (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final long                               NO_TIMEOUT                  = -1;
+    /** The value to use with {@link #startSync(Collection, int, long, long) startSync()}: no parallelism limit (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final int                                PARALLELISM_UNLIMITED       = -1;
+
     private final WeakReference<Fragment>                   mFragment;
 
     private final int                                       mLoaderId;
@@ -81,13 +94,15 @@ public abstract class BaseLoaderWrapper<D> implements LoaderManager.LoaderCallba
     private SwipeRefreshWrapper                             mSwipeRefreshWrapper;
     private ProgressWrapper                                 mProgress;
 
-    private CountDownLatch                                  mCountDownLatch;
+    private volatile SyncTask                               mSyncTask;
     private D                                               mData;
     private final AtomicBoolean                             mLoading                    = new AtomicBoolean();
 
     private LoaderManager.LoaderCallbacks<D>                mLoaderCallbacks;
     private LoaderFactory<D>                                mLoaderFactory;
 
+    private boolean                                         mProgressive;
+
     /**
      * The API to create new {@code BaseLoaderWrapper} instances.
      *
@@ -198,6 +213,24 @@ public abstract class BaseLoaderWrapper<D> implements LoaderManager.LoaderCallba
         return mLoaderFactory;
     }
 
+    /**
+     * Sets the "progressive" mode: the cached data are delivered immediately, and then the data loaded from the network.
+     * Applicable to the {@link CacheLoader} instances only.
+     *
+     * @param progressive
+     *        {@code true} to turn on the "progressive" mode, {@code false} otherwise
+     *
+     * @return  This {@code BaseLoaderWrapper} object
+     *
+     * @see CacheLoader#setProgressive
+     */
+    @NonNull
+    @SuppressWarnings({"UnusedReturnValue", "WeakerAccess"})
+    public BaseLoaderWrapper<D> setProgressive(final boolean progressive) {
+        mProgressive                = progressive;
+        return this;
+    }
+
     /**
      * Sets loader callbacks.
      *
@@ -408,6 +441,8 @@ public abstract class BaseLoaderWrapper<D> implements LoaderManager.LoaderCallba
         }
 
         final Loader<D> loader = mLoaderFactory.getLoader(args.getBoolean(ARG_MERGE));
+        if (loader instanceof CacheLoader) ((CacheLoader) loader).setProgressive(mProgressive);
+
         if (!args.getBoolean(ARG_CONFIGURABLE)) return loader;
 
         if (loader instanceof ConfigurableLoader) {
@@ -443,7 +478,7 @@ public abstract class BaseLoaderWrapper<D> implements LoaderManager.LoaderCallba
         }
         mData = data;
 
-        handleSync();
+        handleSync(false);
         setRefreshing();
 
         if (mProgress != null) mProgress.doProgress(false, null);
@@ -462,7 +497,7 @@ public abstract class BaseLoaderWrapper<D> implements LoaderManager.LoaderCallba
 
         CoreLogger.logWarning("loader: " + loader);
 
-        handleSync();
+        handleSync(true);
         setRefreshing();
 
         if (mLoaderCallbacks != null) mLoaderCallbacks.onLoaderReset(loader);
@@ -482,9 +517,25 @@ public abstract class BaseLoaderWrapper<D> implements LoaderManager.LoaderCallba
         if (mSwipeRefreshWrapper != null) mSwipeRefreshWrapper.setRefreshing();
     }
 
-    private void handleSync() {
-        if (mCountDownLatch != null) mCountDownLatch.countDown();
-        mCountDownLatch = null;
+    private void handleSync(final boolean cancelled) {
+        final SyncTask syncTask = mSyncTask;
+        mSyncTask = null;
+
+        if (syncTask != null) syncTask.finish(cancelled ? SyncStatus.CANCELLED: SyncStatus.COMPLETED);
+    }
+
+    @MainThread
+    private void cancelSync() {
+        mLoading.set(false);
+
+        final Fragment fragment = getFragment();
+        final LoaderManager loaderManager = fragment == null ? null: fragment.getLoaderManager();
+        final Loader<D> loader = loaderManager == null ? null: loaderManager.<D>getLoader(mLoaderId);
+
+        if (loader instanceof BaseLoader)
+            ((BaseLoader) loader).cancelLoading();
+        else
+            CoreLogger.logWarning("can't cancel loader " + loader);
     }
 
     ////////////////////////////////////////////////////////////////////////////////////////////////
@@ -506,7 +557,8 @@ public abstract class BaseLoaderWrapper<D> implements LoaderManager.LoaderCallba
     @WorkerThread
     @SuppressWarnings({"unused", "UnusedReturnValue"})
     public D startSync(final boolean forceCache, final boolean noProgress, final boolean merge) {
-        startSync(Arrays.asList(new BaseLoaderWrapper[] {this}), false, forceCache, noProgress, merge);
+        startSync(Arrays.asList(new BaseLoaderWrapper[] {this}), false, forceCache, noProgress, merge,
+                1, NO_TIMEOUT, NO_TIMEOUT);
         return mData;
     }
 
@@ -519,7 +571,7 @@ public abstract class BaseLoaderWrapper<D> implements LoaderManager.LoaderCallba
     @WorkerThread
     @SuppressWarnings("unused")
     public static void startSync(@NonNull final Collection<BaseLoaderWrapper> loaders) {
-        startSync(loaders, true, false /* ignored */, false /* ignored */, false /* ignored */);
+        startSync(loaders, PARALLELISM_UNLIMITED, NO_TIMEOUT, NO_TIMEOUT);
     }
 
     /**
@@ -541,66 +593,306 @@ public abstract class BaseLoaderWrapper<D> implements LoaderManager.LoaderCallba
     @SuppressWarnings("unused")
     public static void startSync(@NonNull final Collection<BaseLoaderWrapper> loaders,
                                  final boolean forceCache, final boolean noProgress, final boolean merge) {
-        startSync(loaders, false, forceCache, noProgress, merge);
+        startSync(loaders, forceCache, noProgress, merge, PARALLELISM_UNLIMITED, NO_TIMEOUT, NO_TIMEOUT);
     }
 
+    /**
+     * Starts all loaders in the given collection concurrently and waits for their completion.
+     *
+     * @param loaders
+     *        The loaders collection
+     *
+     * @param parallelism
+     *        The maximum number of loaders running at the same time (or {@link #PARALLELISM_UNLIMITED})
+     *
+     * @param loaderTimeout
+     *        The timeout (in milliseconds) for every loader (or {@link #NO_TIMEOUT})
+     *
+     * @param timeout
+     *        The timeout (in milliseconds) for the whole batch (or {@link #NO_TIMEOUT});
+     *        the loaders not completed in time are cancelled
+     *
+     * @return  The results of loading (in the same order as loaders), including partial ones
+     */
+    @NonNull
     @WorkerThread
-    private static void startSync(@NonNull final Collection<BaseLoaderWrapper> loaders, final boolean configured,
-                                  final boolean forceCache, final boolean noProgress, final boolean merge) {
-        CoreLogger.log("configured: " + configured + ", forceCache: " + forceCache + ", noProgress: " + noProgress + ", merge: " + merge);
+    @SuppressWarnings({"unused", "UnusedReturnValue"})
+    public static Map<BaseLoaderWrapper, SyncResult> startSync(@NonNull final Collection<BaseLoaderWrapper> loaders,
+                                                              final int parallelism, final long loaderTimeout, final long timeout) {
+        return startSync(loaders, true, false /* ignored */, false /* ignored */, false /* ignored */,
+                parallelism, loaderTimeout, timeout);
+    }
 
-        if (!validateArguments(forceCache, noProgress, merge)) return;
+    /**
+     * Starts all loaders in the given collection concurrently and waits for their completion.
+     *
+     * @param loaders
+     *        The loaders collection
+     *
+     * @param forceCache
+     *        {@code true} to force loading data from cache, {@code false} otherwise
+     *
+     * @param noProgress
+     *        {@code true} to not display loading progress, {@code false} otherwise
+     *
+     * @param merge
+     *        {@code true} to merge the newly loaded data with already existing, {@code false} otherwise
+     *
+     * @param parallelism
+     *        The maximum number of loaders running at the same time (or {@link #PARALLELISM_UNLIMITED})
+     *
+     * @param loaderTimeout
+     *        The timeout (in milliseconds) for every loader (or {@link #NO_TIMEOUT})
+     *
+     * @param timeout
+     *        The timeout (in milliseconds) for the whole batch (or {@link #NO_TIMEOUT});
+     *        the loaders not completed in time are cancelled
+     *
+     * @return  The results of loading (in the same order as loaders), including partial ones
+     */
+    @NonNull
+    @WorkerThread
+    @SuppressWarnings("WeakerAccess")
+    public static Map<BaseLoaderWrapper, SyncResult> startSync(@NonNull final Collection<BaseLoaderWrapper> loaders,
+                                                              final boolean forceCache, final boolean noProgress, final boolean merge,
+                                                              final int parallelism, final long loaderTimeout, final long timeout) {
+        return startSync(loaders, false, forceCache, noProgress, merge, parallelism, loaderTimeout, timeout);
+    }
+
+    @NonNull
+    @WorkerThread
+    private static Map<BaseLoaderWrapper, SyncResult> startSync(@NonNull final Collection<BaseLoaderWrapper> loaders,
+                                                               final boolean configured,
+                                                               final boolean forceCache, final boolean noProgress, final boolean merge,
+                                                               final int parallelism, final long loaderTimeout, final long timeout) {
+        CoreLogger.log("configured: " + configured + ", forceCache: " + forceCache + ", noProgress: " + noProgress +
+                ", merge: " + merge + ", parallelism: " + parallelism + ", loaderTimeout: " + loaderTimeout + ", timeout: " + timeout);
+
+        final Map<BaseLoaderWrapper, SyncResult> results = Utils.newMap();
+
+        if (!validateArguments(forceCache, noProgress, merge)) return results;
 
         if (Utils.isCurrentThreadMain()) {
             CoreLogger.logError("not allowed to run from the main thread");
-            return;
+            return results;
         }
 
         //noinspection ConstantConditions
         if (loaders == null || loaders.size() == 0) {
             CoreLogger.logError("empty loaders list");
-            return;
+            return results;
         }
         CoreLogger.log("loaders list size: " + loaders.size());
 
+        final long           deadline       = timeout > 0 ? SystemClock.elapsedRealtime() + timeout: Long.MAX_VALUE;
         final CountDownLatch countDownLatch = new CountDownLatch(loaders.size());
+        final Semaphore      semaphore      = new Semaphore(parallelism > 0 ? parallelism: loaders.size());
 
-        for (final BaseLoaderWrapper loader: loaders)
-            loader.setCountDownLatch(countDownLatch);
+        final Collection<SyncTask> tasks = Utils.newList();
+        for (final BaseLoaderWrapper loader: loaders) {
+            final SyncTask task = new SyncTask(loader, semaphore, countDownLatch);
+            tasks.add(task);
 
-        Utils.runInBackground(new Runnable() {
-            @Override
-            public void run() {
-                for (final BaseLoaderWrapper loader : loaders)
-                    if (configured)
-                        loader.startConfigured();
-                    else
-                        loader.start(forceCache, noProgress, merge);
+            if (!acquire(semaphore, deadline)) {
+                task.finish(SyncStatus.NOT_STARTED);
+                continue;
             }
-        });
+            task.start(configured, forceCache, noProgress, merge, loaderTimeout);
+        }
 
-        await(countDownLatch);
+        await(countDownLatch, deadline);
 
-        for (final BaseLoaderWrapper loader: loaders)
-            loader.setCountDownLatch(null);
+        for (final SyncTask task: tasks) {
+            task.finish(SyncStatus.TIMEOUT);
+            results.put(task.mLoader, task.getResult());
+        }
 
         CoreLogger.log("completed");
+        return results;
     }
 
-    private static void await(final CountDownLatch countDownLatch) {
-        if (countDownLatch == null) return;
+    private static boolean acquire(@NonNull final Semaphore semaphore, final long deadline) {
         try {
-            countDownLatch.await();
+            if (deadline == Long.MAX_VALUE) {
+                semaphore.acquire();
+                return true;
+            }
+            return semaphore.tryAcquire(Math.max(0, deadline - SystemClock.elapsedRealtime()), TimeUnit.MILLISECONDS);
         }
         catch (InterruptedException e) {
             CoreLogger.log("interrupted", e);
+            return false;
         }
     }
 
-    @SuppressWarnings("UnusedReturnValue")
-    private BaseLoaderWrapper<D> setCountDownLatch(final CountDownLatch countDownLatch) {
-        mCountDownLatch = countDownLatch;
-        return this;
+    private static void await(@NonNull final CountDownLatch countDownLatch, final long deadline) {
+        try {
+            if (deadline == Long.MAX_VALUE)
+                countDownLatch.await();
+            else if (!countDownLatch.await(Math.max(0, deadline - SystemClock.elapsedRealtime()), TimeUnit.MILLISECONDS))
+                CoreLogger.logWarning("timeout, not completed loaders: " + countDownLatch.getCount());
+        }
+        catch (InterruptedException e) {
+            CoreLogger.log("interrupted", e);
+        }
+    }
+
+    /**
+     * The status of the loader started via {@link #startSync(Collection, boolean, boolean, boolean, int, long, long) startSync()}.
+     */
+    public enum SyncStatus {
+        /** The loading completed (please check the data for errors). */
+        COMPLETED,
+        /** The loader was reset before loading completion. */
+        CANCELLED,
+        /** The loading was not completed in time. */
+        TIMEOUT,
+        /** The loader was not started because of the batch timeout. */
+        NOT_STARTED
+    }
+
+    /**
+     * The result of the loader started via {@link #startSync(Collection, boolean, boolean, boolean, int, long, long) startSync()}.
+     */
+    public static class SyncResult {
+
+        private final SyncStatus                            mStatus;
+        private final Object                                mData;
+        private final long                                  mTime;
+
+        private SyncResult(@NonNull final SyncStatus status, final Object data, final long time) {
+            mStatus     = status;
+            mData       = data;
+            mTime       = time;
+        }
+
+        /**
+         * Returns the status of loading.
+         *
+         * @return  The status
+         */
+        @NonNull
+        public SyncStatus getStatus() {
+            return mStatus;
+        }
+
+        /**
+         * Returns the loaded data (if any).
+         *
+         * @return  The data (or null)
+         */
+        public Object getResult() {
+            return mData;
+        }
+
+        /**
+         * Returns the time (in milliseconds) the loader was running (or -1 if it was not started).
+         *
+         * @return  The loading time
+         */
+        public long getTime() {
+            return mTime;
+        }
+
+        /**
+         * Please refer to the base method description.
+         */
+        @Override
+        public String toString() {
+            return String.format(CoreLogger.getLocale(), "%s, %d ms", mStatus.name(), mTime);
+        }
+    }
+
+    private static class SyncTask {
+
+        private final BaseLoaderWrapper                     mLoader;
+        private final Semaphore                             mSemaphore;
+        private final CountDownLatch                        mCountDownLatch;
+
+        private final AtomicBoolean                         mFinished           = new AtomicBoolean();
+        private final AtomicBoolean                         mReleased           = new AtomicBoolean();
+        private       boolean                               mLaunched;
+        private       long                                  mStarted            = -1;
+        private       ScheduledFuture<?>                    mTimer;
+        private       SyncResult                            mResult;
+
+        private SyncTask(@NonNull final BaseLoaderWrapper loader, @NonNull final Semaphore semaphore,
+                         @NonNull final CountDownLatch countDownLatch) {
+            mLoader         = loader;
+            mSemaphore      = semaphore;
+            mCountDownLatch = countDownLatch;
+        }
+
+        private synchronized void start(final boolean configured,
+                                        final boolean forceCache, final boolean noProgress, final boolean merge,
+                                        final long timeout) {
+            mStarted = SystemClock.elapsedRealtime();
+            mLoader.mSyncTask = this;
+
+            if (timeout > 0)
+                mTimer = LoaderExecutor.getInstance().schedule(timeout, new Runnable() {
+                    @Override
+                    public void run() {
+                        CoreLogger.logWarning("loader timeout: " + mLoader);
+                        finish(SyncStatus.TIMEOUT);
+                    }
+                });
+
+            Utils.postToMainLoop(new Runnable() {
+                @Override
+                public void run() {
+                    if (mFinished.get()) {
+                        release();
+                        return;
+                    }
+                    mLaunched = true;
+                    if (configured)
+                        mLoader.startConfigured();
+                    else
+                        mLoader.start(forceCache, noProgress, merge);
+                }
+            });
+        }
+
+        private void finish(@NonNull final SyncStatus status) {
+            // the flag and the result are set under the same lock the result is read with
+            synchronized (this) {
+                if (!mFinished.compareAndSet(false, true)) return;
+
+                if (mTimer != null) LoaderExecutor.getInstance().cancel(mTimer);
+
+                final boolean started = mStarted >= 0;
+                if (mLoader.mSyncTask == this) mLoader.mSyncTask = null;
+
+                mResult = new SyncResult(status, status == SyncStatus.COMPLETED ? mLoader.mData: null,
+                        started ? SystemClock.elapsedRealtime() - mStarted: -1);
+                CoreLogger.log("loader " + mLoader + ": " + mResult);
+
+                // the permit is released only when the loader is really done, so the next one
+                // doesn't run concurrently with the cancelled one
+                if (started) {
+                    if (status == SyncStatus.TIMEOUT)
+                        Utils.postToMainLoop(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (mLaunched) mLoader.cancelSync();
+                                release();
+                            }
+                        });
+                    else
+                        release();
+                }
+            }
+            mCountDownLatch.countDown();
+        }
+
+        private void release() {
+            if (mReleased.compareAndSet(false, true)) mSemaphore.release();
+        }
+
+        private synchronized SyncResult getResult() {
+            return mResult;
+        }
     }
 
     /**
@@ -31,6 +31,7 @@ import akha.yakhont.loader.BaseResponse;
 import akha.yakhont.loader.BaseResponse.Converter;
 import akha.yakhont.loader.BaseResponse.LoaderCallback;
 import akha.yakhont.loader.CacheLoader;
+import akha.yakhont.loader.LoaderMetrics.Stage;
 import akha.yakhont.loader.BaseConverter;
 import akha.yakhont.technology.rx.BaseRx.LoaderRx;
 
@@ -38,8 +39,10 @@ import android.annotation.TargetApi;
 import android.app.Application;
 import android.app.Fragment;
 import android.app.LoaderManager;
+import android.content.ContentValues;
 import android.content.Context;
 import android.content.Loader;
+import android.database.Cursor;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.annotation.CallSuper;
@@ -344,10 +347,25 @@ public class BaseResponseLoaderWrapper<C, R, E, D> extends BaseLoaderWrapper<Bas
     }
 
     private void updateAdapter(final Loader<BaseResponse<R, E, D>> loader, final BaseResponse<R, E, D> data) {
-        if (mAdapter != null)
-            mAdapter.update(data, loader instanceof Mergeable && ((Mergeable) loader).isMerge());
-        else
+        if (mAdapter == null) {
             CoreLogger.logWarning("adapter == null, table name: " + mTableName);
+            return;
+        }
+        final long started = BaseLoader.startStage();
+
+        mAdapter.update(data, loader instanceof Mergeable && ((Mergeable) loader).isMerge());
+
+        BaseLoader.endStage(loader.getId(), mTableName, Stage.BIND, started, -1, getRows(data), true);
+    }
+
+    private static int getRows(final BaseResponse<?, ?, ?> data) {
+        if (data == null) return -1;
+
+        final ContentValues[] values = data.getValues();
+        if (values != null) return values.length;
+
+        final Cursor cursor = data.getCursor();
+        return cursor == null ? -1: cursor.getCount();
     }
 
     /**
@@ -397,6 +415,14 @@ public class BaseResponseLoaderWrapper<C, R, E, D> extends BaseLoaderWrapper<Bas
         protected void makeRequest(@NonNull final C callback) {
             mRequester.makeRequest(callback);
         }
+
+        /**
+         * Please refer to the base method description.
+         */
+        @Override
+        protected Object getRequestKey() {
+            return mRequester;
+        }
     }
 
     ////////////////////////////////////////////////////////////////////////////////////////////////
@@ -870,18 +896,43 @@ public class BaseResponseLoaderWrapper<C, R, E, D> extends BaseLoaderWrapper<Bas
         protected Requester<C> getRequester(@NonNull final RequesterHelper<C, T> requesterHelper) {
             requesterHelper.init();
 
-            return new Requester<C>() {
-                @Override
-                public void makeRequest(@NonNull final C callback) {
-                    try {
-                        requesterHelper.requestWrapper(callback);
-                    }
-                    catch (Throwable throwable) {
-                        CoreLogger.log("makeRequest failed", throwable);
-                        throw throwable instanceof RuntimeException ? (RuntimeException) throwable: new RuntimeException(throwable);
-                    }
+            return new DefaultRequester<>(requesterHelper);
+        }
+
+        // requesters which call the same method of the same API are equal (to share identical requests in progress)
+        private static class DefaultRequester<C, T> implements Requester<C> {
+
+            private final RequesterHelper<C, T>                                   mRequesterHelper;
+
+            private DefaultRequester(@NonNull final RequesterHelper<C, T> requesterHelper) {
+                mRequesterHelper = requesterHelper;
+            }
+
+            @Override
+            public void makeRequest(@NonNull final C callback) {
+                try {
+                    mRequesterHelper.requestWrapper(callback);
                 }
-            };
+                catch (Throwable throwable) {
+                    CoreLogger.log("makeRequest failed", throwable);
+                    throw throwable instanceof RuntimeException ? (RuntimeException) throwable: new RuntimeException(throwable);
+                }
+            }
+
+            @Override
+            public boolean equals(final Object object) {
+                if (this == object) return true;
+                if (!(object instanceof DefaultRequester)) return false;
+
+                final RequesterHelper helper = ((DefaultRequester) object).mRequesterHelper;
+                return mRequesterHelper.mMethod != null && mRequesterHelper.mMethod.equals(helper.mMethod) &&
+                        mRequesterHelper.mHandler != null && mRequesterHelper.mHandler == helper.mHandler;
+            }
+
+            @Override
+            public int hashCode() {
+                return mRequesterHelper.mMethod == null ? super.hashCode(): mRequesterHelper.mMethod.hashCode();
+            }
         }
     }
 
@@ -27,6 +27,8 @@ import akha.yakhont.loader.BaseLoader.CoreLoadExtendedBuilder;
 import akha.yakhont.loader.BaseResponse;
 import akha.yakhont.loader.BaseResponse.Converter;
 import akha.yakhont.loader.BaseResponse.Source;
+import akha.yakhont.loader.CacheValidators;
+import akha.yakhont.loader.RetryPolicy.HttpStatusException;
 import akha.yakhont.loader.wrapper.BaseResponseLoaderWrapper;
 import akha.yakhont.loader.wrapper.BaseResponseLoaderWrapper.BaseResponseLoaderExtendedWrapper;
 import akha.yakhont.technology.retrofit.Retrofit2;
@@ -158,9 +160,30 @@ public class Retrofit2LoaderWrapper<D> extends BaseResponseLoaderExtendedWrapper
 
     private void onSuccess(final Call<D> call, final Response<D> response,
                            final BaseLoader<Callback<D>, Response<D>, Throwable, D> loader) {
+        loader.setEndpoint(response.raw().request().url().host());
+
         if (response.isSuccessful()) {
+            final BaseResponse<Response<D>, Throwable, D> baseResponse = new BaseResponse<>(
+                    response.body(), response, null, null, Source.NETWORK, null);
+            baseResponse.setCacheValidators(CacheValidators.create(
+                    response.headers().get(CacheValidators.HEADER_ETAG),
+                    response.headers().get(CacheValidators.HEADER_LAST_MODIFIED)));
+
+            final ResponseBody body = response.raw().body();
+            if (body != null) baseResponse.setPayloadSize(body.contentLength());
+
+            final okhttp3.Response networkResponse = response.raw().networkResponse();
+            baseResponse.setFromNetwork(networkResponse != null && response.raw().cacheResponse() == null);
+            if (networkResponse != null) baseResponse.setNetworkTime(
+                    networkResponse.receivedResponseAtMillis() - networkResponse.sentRequestAtMillis());
+
+            loader.callbackHelper(true, baseResponse);
+            return;
+        }
+        if (response.code() == CacheValidators.HTTP_NOT_MODIFIED) {
+            CoreLogger.log("not modified: " + response.raw().request().url());
             loader.callbackHelper(true, new BaseResponse<Response<D>, Throwable, D>(
-                    response.body(), response, null, null, Source.NETWORK, null));
+                    null, response, null, null, Source.CACHE, null));
             return;
         }
 
@@ -168,14 +191,24 @@ public class Retrofit2LoaderWrapper<D> extends BaseResponseLoaderExtendedWrapper
         CoreLogger.logError("error " + errorBody);
         
         final int code = response.code();
-        onError(call, response, new Exception("error code " + code), loader);
+        onError(call, response, new HttpStatusException(code), loader);
     }
 
-    private void onError(@SuppressWarnings("UnusedParameters") final Call<D> call,
-                         final Response<D> response, final Throwable error,
+    private void onError(final Call<D> call, final Response<D> response, final Throwable error,
                          final BaseLoader<Callback<D>, Response<D>, Throwable, D> loader) {
+        if (call != null && call.isCanceled()) {
+            CoreLogger.log("call was cancelled: " + error);
+            return;
+        }
+        if (call != null) loader.setEndpoint(call.request().url().host());
+
         loader.callbackHelper(false, new BaseResponse<Response<D>, Throwable, D>(
-                null, response, null, error, Source.NETWORK, null));
+                null, response, null, error, Source.NETWORK, null), isIdempotent(call));
+    }
+
+    private static boolean isIdempotent(final Call<?> call) {
+        final String method = call == null ? null: call.request().method();
+        return method == null || !("POST".equalsIgnoreCase(method) || "PATCH".equalsIgnoreCase(method));
     }
 
     /** @exclude */ @SuppressWarnings("JavaDoc")
@@ -253,7 +286,7 @@ public class Retrofit2LoaderWrapper<D> extends BaseResponseLoaderExtendedWrapper
                         @SuppressWarnings("unchecked")
                         final Call<D> call = (Call<D>) result;
 
-                        call.enqueue(callback);
+                        mRetrofit.enqueue(call, mMethod, callback);     // batched, if enabled
                         return;
                     }
 
@@ -261,13 +294,15 @@ public class Retrofit2LoaderWrapper<D> extends BaseResponseLoaderExtendedWrapper
 
                     final CallbackRx<D> callbackRx = Retrofit2CoreLoadBuilder.getRxWrapper(callback);
 
-                    Object resultRx = Rx2.handle(result, callbackRx);
+                    // the call should be made on the loader thread (which has the loader's cancellation token and cache
+                    // validators bound), so the subscribeOn scheduler is not applied
+                    Object resultRx = Rx2.handle(result, callbackRx, mRx.getRx(), false);
                     if (resultRx != null) {
                         mRx.getRx().getRx2DisposableHandler().add(resultRx);
                         return;
                     }
 
-                    resultRx = Rx.handle(result, callbackRx);
+                    resultRx = Rx.handle(result, callbackRx, mRx.getRx(), false);
                     if (resultRx != null) {
                         mRx.getRx().getRxSubscriptionHandler().add(resultRx);
                         return;
@@ -19,12 +19,15 @@ package akha.yakhont.technology.retrofit;
 import akha.yakhont.Core;
 import akha.yakhont.Core.Requester;
 import akha.yakhont.Core.UriResolver;
+import akha.yakhont.CoreLogger;
 import akha.yakhont.CoreReflection;
 import akha.yakhont.loader.BaseLoader;
 import akha.yakhont.loader.BaseLoader.CoreLoadExtendedBuilder;
 import akha.yakhont.loader.BaseResponse;
 import akha.yakhont.loader.BaseResponse.Converter;
 import akha.yakhont.loader.BaseResponse.Source;
+import akha.yakhont.loader.CacheValidators;
+import akha.yakhont.loader.RetryPolicy.HttpStatusException;
 import akha.yakhont.loader.wrapper.BaseResponseLoaderWrapper;
 import akha.yakhont.loader.wrapper.BaseResponseLoaderWrapper.BaseResponseLoaderExtendedWrapper;
 import akha.yakhont.technology.retrofit.Retrofit;
@@ -33,6 +36,7 @@ import akha.yakhont.technology.retrofit.Retrofit.RetrofitAdapterWrapper;
 import android.annotation.TargetApi;
 import android.app.Fragment;
 import android.content.Context;
+import android.net.Uri;
 import android.os.Build;
 import android.support.annotation.IntRange;
 import android.support.annotation.LayoutRes;
@@ -47,6 +51,7 @@ import java.lang.reflect.Type;
 import retrofit.Callback;
 import retrofit.RetrofitError;
 import retrofit.YakhontRestAdapter.YakhontCallback;
+import retrofit.client.Header;
 import retrofit.client.Response;
 
 /**
@@ -60,6 +65,11 @@ import retrofit.client.Response;
 @TargetApi(Build.VERSION_CODES.HONEYCOMB)                       //YakhontPreprocessor:removeInFlavor
 public class RetrofitLoaderWrapper<D> extends BaseResponseLoaderExtendedWrapper<Callback<D>, Response, Exception, D> {
 
+    private static final String                     HEADER_SENT_MILLIS      = "OkHttp-Sent-Millis";
+    private static final String                     HEADER_RECEIVED_MILLIS  = "OkHttp-Received-Millis";
+
+    private volatile boolean                        mIdempotent             = true;
+
     /**
      * Initialises a newly created {@code RetrofitLoaderWrapper} object.
      *
@@ -162,14 +172,83 @@ public class RetrofitLoaderWrapper<D> extends BaseResponseLoaderExtendedWrapper<
                 });
     }
 
+    /**
+     * Sets whether the request is idempotent (so it could be retried) or not; by default it's {@code true}.
+     *
+     * @param idempotent
+     *        {@code false} for the POST and PATCH requests, {@code true} otherwise
+     *
+     * @return  This {@code RetrofitLoaderWrapper} object to allow for chaining of calls to set methods
+     */
+    @SuppressWarnings("WeakerAccess")
+    public RetrofitLoaderWrapper<D> setIdempotent(final boolean idempotent) {
+        mIdempotent = idempotent;
+        return this;
+    }
+
     private void onSuccess(final D result, final Response response, final BaseLoader<Callback<D>, Response, Exception, D> loader) {
-        loader.callbackHelper(true, new BaseResponse<Response, Exception, D>(
-                result, response, null, null, Source.NETWORK, null));
+        if (response != null) loader.setEndpoint(getHost(response.getUrl()));
+
+        final BaseResponse<Response, Exception, D> baseResponse = new BaseResponse<>(
+                result, response, null, null, Source.NETWORK, null);
+        baseResponse.setCacheValidators(CacheValidators.create(
+                getHeader(response, CacheValidators.HEADER_ETAG),
+                getHeader(response, CacheValidators.HEADER_LAST_MODIFIED)));
+
+        if (response != null && response.getBody() != null)
+            baseResponse.setPayloadSize(response.getBody().length());
+
+        // Retrofit 1 has no HTTP cache by default
+        baseResponse.setFromNetwork(response != null);
+        baseResponse.setNetworkTime(getNetworkTime(response));
+
+        loader.callbackHelper(true, baseResponse);
     }
 
     private void onError(final RetrofitError error, final BaseLoader<Callback<D>, Response, Exception, D> loader) {
+        if (error != null) loader.setEndpoint(getHost(error.getUrl()));
+
+        final Response response = error == null ? null: error.getResponse();
+        if (response != null && response.getStatus() == CacheValidators.HTTP_NOT_MODIFIED) {
+            CoreLogger.log("not modified: " + response.getUrl());
+            loader.callbackHelper(true, new BaseResponse<Response, Exception, D>(
+                    null, response, null, null, Source.CACHE, null));
+            return;
+        }
+        // HTTP errors are mapped to the status codes, so e.g. 5xx ones are treated as transient
+        Throwable throwable = error;
+        if (response != null) {
+            throwable = new HttpStatusException(response.getStatus());
+            throwable.initCause(error);
+        }
         loader.callbackHelper(false, new BaseResponse<Response, Exception, D>(
-                null, null, null, new RetrofitException(error), Source.NETWORK, error));
+                null, response, null, new RetrofitException(error), Source.NETWORK, throwable), mIdempotent);
+    }
+
+    // OkHttp 2 reports the request / response times via the synthetic headers
+    private static long getNetworkTime(final Response response) {
+        try {
+            final String sent     = getHeader(response, HEADER_SENT_MILLIS);
+            final String received = getHeader(response, HEADER_RECEIVED_MILLIS);
+
+            return sent == null || received == null ? -1: Long.parseLong(received) - Long.parseLong(sent);
+        }
+        catch (NumberFormatException exception) {
+            CoreLogger.log("can not get network time", exception);
+            return -1;
+        }
+    }
+
+    private static String getHost(final String url) {
+        return url == null ? null: Uri.parse(url).getHost();
+    }
+
+    private static String getHeader(final Response response, @NonNull final String name) {
+        if (response == null || response.getHeaders() == null) return null;
+
+        for (final Header header: response.getHeaders())
+            if (name.equalsIgnoreCase(header.getName())) return header.getValue();
+        return null;
     }
 
     /** @exclude */ @SuppressWarnings("JavaDoc")
@@ -209,6 +288,7 @@ public class RetrofitLoaderWrapper<D> extends BaseResponseLoaderExtendedWrapper<
     public static class RetrofitLoaderBuilder<D, T> extends BaseResponseLoaderExtendedBuilder<Callback<D>, Response, Exception, D, T> {
 
         private final Retrofit<T>                                                       mRetrofit;
+        private       boolean                                                           mIdempotent     = true;
 
         /**
          * Initialises a newly created {@code RetrofitLoaderBuilder} object.
@@ -235,8 +315,10 @@ public class RetrofitLoaderWrapper<D> extends BaseResponseLoaderExtendedWrapper<
             return getRequester(new RequesterHelper<Callback<D>, T>(mType) {
                 @Override
                 public void init() {
-                    mMethod  = mRetrofit.getYakhontRestAdapter().findMethod(mType);
-                    mHandler = mRetrofit.getYakhontRestAdapter().getHandler();
+                    mMethod     = mRetrofit.getYakhontRestAdapter().findMethod(mType);
+                    mHandler    = mRetrofit.getYakhontRestAdapter().getHandler();
+
+                    mIdempotent = mRetrofit.getYakhontRestAdapter().isIdempotent(mMethod);
                 }
 
                 @Override
@@ -256,8 +338,10 @@ public class RetrofitLoaderWrapper<D> extends BaseResponseLoaderExtendedWrapper<
         @NonNull
         @Override
         protected RetrofitLoaderWrapper<D> createLoaderWrapper() {
-            return new RetrofitLoaderWrapper<>(getContext(), getFragment(), mLoaderId, getRequester(),
-                    getTimeout(), getTableName(), mDescription, getConverter(), getUriResolver());
+            final RetrofitLoaderWrapper<D> wrapper = new RetrofitLoaderWrapper<>(getContext(), getFragment(),
+                    mLoaderId, getRequester(), getTimeout(), getTableName(), mDescription, getConverter(),
+                    getUriResolver());
+            return wrapper.setIdempotent(mIdempotent);
         }
     }
 
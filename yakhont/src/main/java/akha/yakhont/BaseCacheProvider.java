@@ -19,13 +19,19 @@ package akha.yakhont;
 import akha.yakhont.Core.Utils;
 import akha.yakhont.CoreLogger.Level;
 import akha.yakhont.loader.BaseResponse;
+import akha.yakhont.loader.CacheValidators;
 
 import android.annotation.SuppressLint;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
+import android.database.CursorWrapper;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
@@ -43,11 +49,16 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
  * The {@link ContentProvider} which does not use predefined database schema but creates tables
@@ -96,6 +107,34 @@ public class BaseCacheProvider extends ContentProvider {
                                                             " INTEGER PRIMARY KEY AUTOINCREMENT";
     private static final String         ALTER_TABLE       = "ALTER TABLE %s ADD COLUMN %s %s;";
 
+    /** The name of the URI query parameter to limit the number of rows returned by the query (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final String         QUERY_PARAMETER_LIMIT           = "limit";
+
+    /** The prefix of the internal tables names, such tables are never compressed (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final String         INTERNAL_TABLE_PREFIX           = "yakhont_";
+
+    /** The name of the table to keep the HTTP cache validators (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final String         VALIDATORS_TABLE                = "yakhont_validators";
+
+    private static final String         VALIDATORS_COLUMN_TABLE         = "table_name";
+    private static final String         VALIDATORS_COLUMN_ETAG          = "etag";
+    private static final String         VALIDATORS_COLUMN_LAST_MODIFIED = "last_modified";
+    private static final String         VALIDATORS_SELECTION            = VALIDATORS_COLUMN_TABLE + "=?";
+
+    /** The default size (in bytes) of the column value to compress (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final int            COMPRESSION_THRESHOLD_DEFAULT   = 4096;
+
+    private static final byte[]         COMPRESSION_MAGIC               = new byte[] {'Y', 'K', 'Z', 1};
+    private static final Charset        COMPRESSION_CHARSET             = Charset.forName("UTF-8");
+    private static final int            COMPRESSION_BUFFER_SIZE         = 4096;
+
+    private static volatile int         sCompressionThreshold           = -1;
+    private static final Set<String>    sCompressionColumns             = Utils.newSet();
+
     private final Matcher               mUriMatcher       = new Matcher();
 
     /** @exclude */
@@ -152,9 +191,10 @@ public class BaseCacheProvider extends ContentProvider {
         return insert(uri, values, false, null);
     }
 
-    private Uri insert(@NonNull final Uri uri, @NonNull final ContentValues values, final boolean silent,
+    private Uri insert(@NonNull final Uri uri, @NonNull final ContentValues valuesOriginal, final boolean silent,
                        final ContentValues[] bulkValues) {
         final String tableName = Utils.getLoaderTableName(uri);
+        final ContentValues values = bulkValues == null ? compress(tableName, valuesOriginal): valuesOriginal;
 
         final SQLiteDatabase db = mDbHelper.getWritableDatabase();
         long id = insert(db, tableName, values);
@@ -260,11 +300,15 @@ public class BaseCacheProvider extends ContentProvider {
      * Please refer to the base method description.
      */
     @Override
-    public int bulkInsert(@NonNull final Uri uri, @NonNull final ContentValues[] bulkValues) {
+    public int bulkInsert(@NonNull final Uri uri, @NonNull final ContentValues[] bulkValuesOriginal) {
         //noinspection ConstantConditions
-        if (bulkValues == null || bulkValues.length == 0) return 0;
+        if (bulkValuesOriginal == null || bulkValuesOriginal.length == 0) return 0;
 
         final String tableName = Utils.getLoaderTableName(uri);
+
+        final ContentValues[] bulkValues = new ContentValues[bulkValuesOriginal.length];
+        for (int i = 0; i < bulkValues.length; i++)
+            bulkValues[i] = compress(tableName, bulkValuesOriginal[i]);
         CoreLogger.log(String.format(getLocale(), "table %s, %d rows", tableName, bulkValues.length));
 
         switch (mUriMatcher.match(uri)) {
@@ -286,6 +330,36 @@ public class BaseCacheProvider extends ContentProvider {
         }
     }
 
+    /**
+     * Please refer to the base method description.
+     * Applies all the operations in one transaction.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull final ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final ContentProviderResult[][] results = new ContentProviderResult[1][];
+        try {
+            runTransaction(mDbHelper.getWritableDatabase(), new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        results[0] = BaseCacheProvider.super.applyBatch(operations);
+                    }
+                    catch (OperationApplicationException exception) {
+                        throw new RuntimeException(exception);
+                    }
+                }
+            });
+        }
+        catch (RuntimeException exception) {
+            if (exception.getCause() instanceof OperationApplicationException)
+                throw (OperationApplicationException) exception.getCause();
+            throw exception;
+        }
+        return results[0];
+    }
+
     /**
      * Please refer to the base method description.
      */
@@ -299,8 +373,13 @@ public class BaseCacheProvider extends ContentProvider {
                 selectionArgs   = getSelectionIdArgs(uri);
 
             case ALL:
+                // the validators table is created on demand
+                if (VALIDATORS_TABLE.equals(tableName) && !isTableExist(tableName))
+                    return BaseResponse.EMPTY_CURSOR;
                 try {
-                    return mDbHelper.getReadableDatabase().query(tableName, projection, selection, selectionArgs, null, null, sortOrder);
+                    final Cursor cursor = mDbHelper.getReadableDatabase().query(tableName, projection, selection,
+                            selectionArgs, null, null, sortOrder, uri.getQueryParameter(QUERY_PARAMETER_LIMIT));
+                    return tableName.startsWith(INTERNAL_TABLE_PREFIX) ? cursor: new DecompressingCursor(cursor);
                 }
                 catch (Exception e) {
                     CoreLogger.log(Level.WARNING, String.format("table %s, selection %s, selection args %s",
@@ -329,9 +408,13 @@ public class BaseCacheProvider extends ContentProvider {
                 selectionArgs   = getSelectionIdArgs(uri);
 
             case ALL:
+                final SQLiteDatabase db = mDbHelper.getWritableDatabase();
+                // the cache is empty now, so the data validators are not valid anymore
+                if (selection == null) deleteValidators(db, tableName);
+
                 // from docs: To remove all rows and get a count pass "1" as the whereClause.
                 if (selection == null) selection = "1";
-                final int rows = mDbHelper.getWritableDatabase().delete(tableName, selection, selectionArgs);
+                final int rows = db.delete(tableName, selection, selectionArgs);
 
                 CoreLogger.log(String.format(getLocale(), "table %s, %d rows", tableName, rows));
                 return rows;
@@ -592,6 +675,265 @@ public class BaseCacheProvider extends ContentProvider {
 
     ////////////////////////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Sets the compression parameters for the cached values. Text values which size exceeds the
+     * given threshold are stored as compressed (deflate) BLOBs; decompression is done transparently
+     * by the cursors returned from {@link #query query()}, so such values are still readable
+     * via {@link Cursor#getString Cursor.getString()} (and reported as {@link Cursor#FIELD_TYPE_STRING}).
+     * <br>The internal tables (see {@link #INTERNAL_TABLE_PREFIX}) are never compressed.
+     *
+     * @param threshold
+     *        The minimal size (in bytes, UTF-8 encoded) of the value to compress (or 0 to disable compression),
+     *        e.g. {@link #COMPRESSION_THRESHOLD_DEFAULT}
+     *
+     * @param columns
+     *        The names of columns to compress (or empty, means all columns)
+     */
+    @SuppressWarnings("unused")
+    public static void setCompression(final int threshold, final String... columns) {
+        sCompressionColumns.clear();
+        if (columns != null) sCompressionColumns.addAll(Arrays.asList(columns));
+
+        sCompressionThreshold = threshold > 0 ? threshold: -1;
+        CoreLogger.log("compression threshold " + threshold + ", columns " + sCompressionColumns);
+    }
+
+    private static boolean isCompressionEnabled(@NonNull final String columnName) {
+        return sCompressionThreshold > 0 &&
+                (sCompressionColumns.isEmpty() || sCompressionColumns.contains(columnName));
+    }
+
+    private ContentValues compress(@NonNull final String tableName, final ContentValues values) {
+        final int threshold = sCompressionThreshold;
+        if (values == null || threshold <= 0 || tableName.startsWith(INTERNAL_TABLE_PREFIX)) return values;
+
+        ContentValues result = null;
+        for (final String key: getKeySet(values)) {
+            if (!isCompressionEnabled(key)) continue;
+
+            // UTF-8 takes no more than 3 bytes per char, so short values are skipped without encoding
+            final Object value = values.get(key);
+            if (!(value instanceof String) || ((String) value).length() * 3L < threshold) continue;
+
+            final byte[] bytes = ((String) value).getBytes(COMPRESSION_CHARSET);
+            if (bytes.length < threshold) continue;
+
+            final byte[] data = compress(bytes);
+            if (data == null) continue;
+
+            if (result == null) result = new ContentValues(values);
+            result.put(key, data);
+        }
+        return result == null ? values: result;
+    }
+
+    /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
+    public static byte[] compress(@NonNull final String value) {
+        return compress(value.getBytes(COMPRESSION_CHARSET));
+    }
+
+    private static byte[] compress(@NonNull final byte[] data) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length / 2 + 16);
+            outputStream.write(COMPRESSION_MAGIC, 0, COMPRESSION_MAGIC.length);
+
+            final byte[] buffer = new byte[COMPRESSION_BUFFER_SIZE];
+            while (!deflater.finished())
+                outputStream.write(buffer, 0, deflater.deflate(buffer));
+
+            // not worth it
+            if (outputStream.size() >= data.length) return null;
+
+            return outputStream.toByteArray();
+        }
+        catch (Exception e) {
+            CoreLogger.log("compression failed", e);
+            return null;
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Checks whether the given BLOB was compressed by the {@code BaseCacheProvider} or not.
+     *
+     * @param data
+     *        The BLOB to check
+     *
+     * @return  {@code true} if data was compressed, {@code false} otherwise
+     */
+    public static boolean isCompressed(final byte[] data) {
+        if (data == null || data.length < COMPRESSION_MAGIC.length) return false;
+
+        for (int i = 0; i < COMPRESSION_MAGIC.length; i++)
+            if (data[i] != COMPRESSION_MAGIC[i]) return false;
+        return true;
+    }
+
+    /**
+     * Decompresses the BLOB compressed by the {@code BaseCacheProvider}.
+     *
+     * @param data
+     *        The compressed data
+     *
+     * @return  The original text value (or null if decompression failed)
+     */
+    public static String decompress(final byte[] data) {
+        if (!isCompressed(data)) {
+            CoreLogger.logError("data is not compressed");
+            return null;
+        }
+
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, COMPRESSION_MAGIC.length, data.length - COMPRESSION_MAGIC.length);
+
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length * 4);
+            final byte[] buffer = new byte[COMPRESSION_BUFFER_SIZE];
+            while (!inflater.finished()) {
+                final int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new DataFormatException("truncated data");
+                outputStream.write(buffer, 0, length);
+            }
+            return new String(outputStream.toByteArray(), COMPRESSION_CHARSET);
+        }
+        catch (Exception e) {
+            CoreLogger.log("decompression failed", e);
+            return null;
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * The cursor which decompresses the values compressed by the {@code BaseCacheProvider}.
+     */
+    private static class DecompressingCursor extends CursorWrapper {
+
+        private DecompressingCursor(@NonNull final Cursor cursor) {
+            super(cursor);
+        }
+
+        @SuppressLint("ObsoleteSdkInt")
+        private byte[] getCompressed(final int columnIndex) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB ||
+                    super.getType(columnIndex) != FIELD_TYPE_BLOB) return null;
+
+            final byte[] data = super.getBlob(columnIndex);
+            return isCompressed(data) ? data: null;
+        }
+
+        @Override
+        public int getType(int columnIndex) {
+            return getCompressed(columnIndex) == null ? super.getType(columnIndex): FIELD_TYPE_STRING;
+        }
+
+        @Override
+        public String getString(int columnIndex) {
+            final byte[] data = getCompressed(columnIndex);
+            return data == null ? super.getString(columnIndex): decompress(data);
+        }
+
+        @Override
+        public byte[] getBlob(int columnIndex) {
+            final byte[] data = getCompressed(columnIndex);
+            if (data == null) return super.getBlob(columnIndex);
+
+            final String value = decompress(data);
+            return value == null ? null: value.getBytes(COMPRESSION_CHARSET);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the HTTP cache validators (ETag and Last-Modified) of the data stored in the given cache table.
+     * Please note: validators are removed automatically when all data are removed from the table.
+     *
+     * @param contentResolver
+     *        The ContentResolver
+     *
+     * @param uri
+     *        The cache table URI
+     *
+     * @return  The CacheValidators (or null if not found)
+     */
+    public static CacheValidators getValidators(@NonNull final ContentResolver contentResolver,
+                                                @NonNull final Uri uri) {
+        final String tableName = Utils.getLoaderTableName(uri);
+        Cursor cursor = null;
+        try {
+            cursor = contentResolver.query(getValidatorsUri(uri), new String[] {
+                    VALIDATORS_COLUMN_ETAG, VALIDATORS_COLUMN_LAST_MODIFIED},
+                    VALIDATORS_SELECTION, new String[] {tableName}, null);
+
+            if (cursor == null || !cursor.moveToFirst()) return null;
+
+            final CacheValidators validators = new CacheValidators(cursor.getString(0), cursor.getString(1));
+            return validators.isEmpty() ? null: validators;
+        }
+        catch (Exception e) {
+            CoreLogger.log("failed to get validators for table " + tableName, e);
+            return null;
+        }
+        finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Stores the HTTP cache validators (ETag and Last-Modified) of the data stored in the given cache table.
+     *
+     * @param contentResolver
+     *        The ContentResolver
+     *
+     * @param uri
+     *        The cache table URI
+     *
+     * @param validators
+     *        The CacheValidators (or null to remove the stored ones)
+     */
+    public static void setValidators(@NonNull final ContentResolver contentResolver, @NonNull final Uri uri,
+                                     final CacheValidators validators) {
+        final String tableName = Utils.getLoaderTableName(uri);
+        final Uri validatorsUri = getValidatorsUri(uri);
+        try {
+            contentResolver.delete(validatorsUri, VALIDATORS_SELECTION, new String[] {tableName});
+            if (validators == null || validators.isEmpty()) return;
+
+            final ContentValues values = new ContentValues();
+            values.put(VALIDATORS_COLUMN_TABLE,         tableName);
+            values.put(VALIDATORS_COLUMN_ETAG,          validators.getETag());
+            values.put(VALIDATORS_COLUMN_LAST_MODIFIED, validators.getLastModified());
+
+            contentResolver.insert(validatorsUri, values);
+        }
+        catch (Exception e) {
+            CoreLogger.log("failed to set validators for table " + tableName, e);
+        }
+    }
+
+    private static Uri getValidatorsUri(@NonNull final Uri uri) {
+        return new Uri.Builder().scheme(uri.getScheme()).authority(uri.getAuthority())
+                .appendPath(VALIDATORS_TABLE).build();
+    }
+
+    private void deleteValidators(@NonNull final SQLiteDatabase db, @NonNull final String tableName) {
+        if (VALIDATORS_TABLE.equals(tableName) || !isTableExist(VALIDATORS_TABLE)) return;
+
+        final int rows = db.delete(VALIDATORS_TABLE, VALIDATORS_SELECTION, new String[] {tableName});
+        if (rows > 0) CoreLogger.log("validators removed for table " + tableName);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+
     /**
      * Called when database created.
      *
@@ -24,6 +24,7 @@ import akha.yakhont.callback.lifecycle.BaseActivityLifecycleProceed.BaseActivity
 import akha.yakhont.callback.lifecycle.BaseActivityLifecycleProceed.HideKeyboardCallbacks;
 import akha.yakhont.callback.lifecycle.BaseActivityLifecycleProceed.OrientationCallbacks;
 import akha.yakhont.callback.lifecycle.BaseActivityLifecycleProceed.ValidateActivityCallbacks;
+import akha.yakhont.loader.LoaderExecutor;
 import akha.yakhont.location.LocationCallbacks;
 import akha.yakhont.technology.Dagger2;
 
@@ -42,8 +43,6 @@ import android.content.pm.PackageManager;
 import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.graphics.Color;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Environment;
@@ -81,8 +80,6 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.WeakHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -138,8 +135,6 @@ public class Core {
     /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
     @IntRange(from = 0) public  static final int        TIMEOUT_CONNECTION_TIMER    =  3;
 
-    @IntRange(from = 0) private static final int        TIMEOUT_NETWORK_MONITOR     =  3;   // seconds
-
     // use my birthday as the offset... why not?
     private static final int                            REQUEST_CODES_OFFSET        = 19631201;
     private static final short                          REQUEST_CODES_OFFSET_SHORT  = 11263;
@@ -499,6 +494,14 @@ public class Core {
 
         register((BaseActivityCallbacks) new LocationCallbacks());
 
+        // delivers the network status changes which happened while the application was in background
+        register((BaseActivityCallbacks) new BaseActivityCallbacks() {
+            @Override
+            public void onActivityResumed(@NonNull final Activity activity) {
+                Init.notifyNetworkStatus();
+            }
+        }.setForceProceed(true));
+
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH && !sSupport) {
             application.registerActivityLifecycleCallbacks(new ActivityLifecycleProceed());
             application.registerComponentCallbacks        (new ApplicationCallbacks.ApplicationCallbacks2());
@@ -648,7 +651,9 @@ public class Core {
     private static class Init extends BaseListeners {
 
         private static final AtomicBoolean              sConnected                      = new AtomicBoolean(true);
+        private static final AtomicBoolean              sConnectedNotified              = new AtomicBoolean(true);
         private static boolean                          sRunNetworkMonitor;
+        private static int                              sLoaderThreadsNumber;
         private static String                           sBaseUri;
 
         private static void logging(@NonNull final Application application, final boolean fullInfo) {
@@ -674,28 +679,30 @@ public class Core {
         private static void allRemaining(@NonNull final Application application) {
             sBaseUri = String.format(BASE_URI, application.getPackageName());
 
+            LoaderExecutor.init(sLoaderThreadsNumber);
+
             if (!sRunNetworkMonitor) return;
 
-            new Timer("timer for network monitoring").scheduleAtFixedRate(new TimerTask() {
+            NetworkMonitor.start(application, new NetworkStatusListener() {
                 @Override
-                public void run() {
-                    if (!isVisible() || !isInForeground()) return;
+                public void onNetworkStatusChanged(final boolean isConnected) {
+                    if (sConnected.getAndSet(isConnected) == isConnected) return;
 
-                    boolean isConnected = false;
+                    CoreLogger.log((isConnected ? Level.INFO: Level.WARNING),
+                            "network is " + (isConnected ? "": "NOT ") + "available");
+                    notifyNetworkStatus();
+                }
+            });
+        }
 
-                    final ConnectivityManager connectivityManager =
-                            (ConnectivityManager) application.getSystemService(Context.CONNECTIVITY_SERVICE);
-                    final NetworkInfo activeInfo = connectivityManager.getActiveNetworkInfo();
+        // the listeners are notified only if the application is visible and in foreground
+        private static void notifyNetworkStatus() {
+            if (!isVisible() || !isInForeground()) return;
 
-                    if (activeInfo != null && activeInfo.isConnected()) isConnected = true;
+            final boolean isConnected = sConnected.get();
+            if (sConnectedNotified.getAndSet(isConnected) == isConnected) return;
 
-                    if (sConnected.getAndSet(isConnected) != isConnected) {
-                        CoreLogger.log((isConnected ? Level.INFO: Level.WARNING),
-                                "network is " + (isConnected ? "": "NOT ") + "available");
-                        onNetworkStatusChanged(isConnected);
-                    }
-                }
-            }, 0, TIMEOUT_NETWORK_MONITOR * 1000);
+            onNetworkStatusChanged(isConnected);
         }
 
         private static void onNetworkStatusChanged(final boolean isConnected) {
@@ -715,6 +722,18 @@ public class Core {
         Init.sRunNetworkMonitor = runNetworkMonitor;
     }
 
+    /**
+     * Sets the maximum number of threads for the loaders' network requests (should be called before
+     * {@link #init(Application, Boolean, Dagger2) init()}). Please refer to {@link LoaderExecutor} for more info.
+     *
+     * @param threadsNumber
+     *        The maximum number of threads (or 0 for default value)
+     */
+    @SuppressWarnings("unused")
+    public static void setLoaderThreadsNumber(@IntRange(from = 0) final int threadsNumber) {
+        Init.sLoaderThreadsNumber = threadsNumber;
+    }
+
     /** @exclude */ @SuppressWarnings("JavaDoc")
     public interface NetworkStatusListener {
         void onNetworkStatusChanged(boolean isConnected);
@@ -154,6 +154,19 @@ public class CoreLogger {
         return sFullInfo.get();
     }
 
+    /**
+     * Checks whether the message of the given level would be logged; allows to avoid the building of log messages
+     * in the performance critical code (note that all messages are passed to the {@link LoggerExtender}, if any).
+     *
+     * @param level
+     *        The log level
+     *
+     * @return  {@code true} if the message would be logged, {@code false} otherwise
+     */
+    public static boolean isLoggable(@NonNull final Level level) {
+        return sLoggerExtender != null || !isNotLog(level);
+    }
+
     /**
      * Sets the detailed logging flag.
      *
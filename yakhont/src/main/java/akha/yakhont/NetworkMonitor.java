@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont;
+
+import akha.yakhont.Core.NetworkStatusListener;
+
+import android.annotation.SuppressLint;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.telephony.TelephonyManager;
+
+/**
+ * The event-driven network monitor: tracks the connectivity changes (via system broadcasts, so there's
+ * no polling) and estimates the quality of the link - the bandwidth and latency classes - from the timings
+ * of the loaders' network requests (before the first estimation, the type of the mobile network is used).
+ * The loaders adapt to the estimated quality: e.g. on poor links the cached data are delivered first,
+ * the loading timeouts are extended and the prefetch is skipped.
+ *
+ * @author akha
+ */
+public class NetworkMonitor {
+
+    /**
+     * The classes of the network link quality.
+     */
+    public enum Quality {
+        /** The quality is not known yet. */
+        UNKNOWN,
+        /** The bandwidth is less than 150 kbps or the latency is more than 1500 ms. */
+        POOR,
+        /** The bandwidth is 150 - 550 kbps or the latency is 600 - 1500 ms. */
+        MODERATE,
+        /** The bandwidth is 550 - 2000 kbps or the latency is 200 - 600 ms. */
+        GOOD,
+        /** The bandwidth is more than 2000 kbps and the latency is less than 200 ms. */
+        EXCELLENT
+    }
+
+    private static final int                            BANDWIDTH_MODERATE          =  150;     // kbps
+    private static final int                            BANDWIDTH_GOOD              =  550;
+    private static final int                            BANDWIDTH_EXCELLENT         = 2000;
+
+    private static final int                            LATENCY_MODERATE            = 1500;     // ms
+    private static final int                            LATENCY_GOOD                =  600;
+    private static final int                            LATENCY_EXCELLENT           =  200;
+
+    // smaller responses (or responses of unknown size) are used to estimate the latency
+    private static final long                           BANDWIDTH_SAMPLE_MIN        = 16 * 1024;
+    private static final double                         SMOOTHING                   = 0.25;
+
+    private static final Object                         sLock                       = new Object();
+
+    private static       double                         sBandwidth                  = -1;
+    private static       double                         sLatency                    = -1;
+    private static       String                         sNetworkType;
+
+    private static volatile Quality                     sQuality                    = Quality.UNKNOWN;
+    private static volatile Quality                     sNetworkTypeQuality         = Quality.UNKNOWN;
+    private static volatile boolean                     sMetered;
+
+    private static       BroadcastReceiver              sReceiver;
+
+    private NetworkMonitor() {
+    }
+
+    /** @exclude */ @SuppressWarnings("JavaDoc")
+    public static void start(@NonNull final Context context, @NonNull final NetworkStatusListener listener) {
+        final Context appContext = context.getApplicationContext();
+        synchronized (sLock) {
+            if (sReceiver != null) return;
+
+            sReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(final Context context, final Intent intent) {
+                    listener.onNetworkStatusChanged(update(appContext));
+                }
+            };
+        }
+        // the broadcast is sticky, so the current state is delivered immediately
+        appContext.registerReceiver(sReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        CoreLogger.log("network monitor started");
+    }
+
+    /** @exclude */ @SuppressWarnings({"JavaDoc", "unused"})
+    public static void stop(@NonNull final Context context) {
+        final BroadcastReceiver receiver;
+        synchronized (sLock) {
+            receiver  = sReceiver;
+            sReceiver = null;
+        }
+        if (receiver == null) return;
+
+        try {
+            context.getApplicationContext().unregisterReceiver(receiver);
+        }
+        catch (Exception e) {
+            CoreLogger.log("unregisterReceiver failed", e);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static boolean update(@NonNull final Context context) {
+        final ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        final NetworkInfo activeInfo = connectivityManager == null ? null: connectivityManager.getActiveNetworkInfo();
+
+        final boolean isConnected = activeInfo != null && activeInfo.isConnected();
+        final String networkType = isConnected ? activeInfo.getType() + ":" + activeInfo.getSubtype(): null;
+
+        synchronized (sLock) {
+            if (networkType != null && !networkType.equals(sNetworkType)) {
+                // the estimations of the previous network are not relevant anymore
+                if (sNetworkType != null) CoreLogger.log("network type changed: " + networkType);
+                sBandwidth = -1;
+                sLatency   = -1;
+            }
+            sNetworkType = networkType;
+
+            sNetworkTypeQuality = isConnected ? getQuality(activeInfo): Quality.UNKNOWN;
+            sMetered            = isConnected && isMetered(connectivityManager, activeInfo);
+
+            updateQuality();
+        }
+        return isConnected;
+    }
+
+    @SuppressLint("InlinedApi")
+    private static Quality getQuality(@NonNull final NetworkInfo info) {
+        if (info.getType() != ConnectivityManager.TYPE_MOBILE) return Quality.UNKNOWN;
+
+        switch (info.getSubtype()) {
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+                return Quality.POOR;
+
+            case TelephonyManager.NETWORK_TYPE_UMTS:
+            case TelephonyManager.NETWORK_TYPE_EVDO_0:
+            case TelephonyManager.NETWORK_TYPE_EVDO_A:
+            case TelephonyManager.NETWORK_TYPE_EVDO_B:
+            case TelephonyManager.NETWORK_TYPE_EHRPD:
+            case TelephonyManager.NETWORK_TYPE_HSDPA:
+            case TelephonyManager.NETWORK_TYPE_HSUPA:
+            case TelephonyManager.NETWORK_TYPE_HSPA:
+                return Quality.MODERATE;
+
+            case TelephonyManager.NETWORK_TYPE_HSPAP:
+            case TelephonyManager.NETWORK_TYPE_LTE:
+                return Quality.GOOD;
+
+            default:
+                return Quality.UNKNOWN;
+        }
+    }
+
+    @SuppressLint("ObsoleteSdkInt")
+    private static boolean isMetered(@NonNull final ConnectivityManager connectivityManager,
+                                     @NonNull final NetworkInfo info) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            return connectivityManager.isActiveNetworkMetered();
+
+        final int type = info.getType();
+        return type != ConnectivityManager.TYPE_WIFI && type != ConnectivityManager.TYPE_ETHERNET;
+    }
+
+    /** @exclude */ @SuppressWarnings("JavaDoc")
+    public static void onRequest(final long duration, final long size) {
+        // unknown size (e.g. chunked response): can't say whether it's the latency or the bandwidth sample
+        if (duration <= 0 || size < 0) return;
+        final double millis = duration / 1000000d;
+
+        synchronized (sLock) {
+            if (size >= BANDWIDTH_SAMPLE_MIN)
+                sBandwidth = smooth(sBandwidth, size * 8 / millis);         // bits per ms == kbps
+            else
+                sLatency   = smooth(sLatency, millis);
+
+            updateQuality();
+        }
+    }
+
+    private static double smooth(final double current, final double sample) {
+        return current < 0 ? sample: current + SMOOTHING * (sample - current);
+    }
+
+    private static void updateQuality() {
+        Quality quality = Quality.UNKNOWN;
+
+        if (sBandwidth >= 0)
+            quality = sBandwidth < BANDWIDTH_MODERATE  ? Quality.POOR:
+                      sBandwidth < BANDWIDTH_GOOD      ? Quality.MODERATE:
+                      sBandwidth < BANDWIDTH_EXCELLENT ? Quality.GOOD: Quality.EXCELLENT;
+        if (sLatency >= 0) {
+            final Quality latencyQuality =
+                      sLatency > LATENCY_MODERATE      ? Quality.POOR:
+                      sLatency > LATENCY_GOOD          ? Quality.MODERATE:
+                      sLatency > LATENCY_EXCELLENT     ? Quality.GOOD: Quality.EXCELLENT;
+            if (quality == Quality.UNKNOWN || latencyQuality.ordinal() < quality.ordinal())
+                quality = latencyQuality;
+        }
+        if (quality == Quality.UNKNOWN) quality = sNetworkTypeQuality;
+
+        if (sQuality != quality)
+            CoreLogger.log(String.format(CoreLogger.getLocale(), "network quality %s, bandwidth %.0f kbps, " +
+                    "latency %.0f ms", quality.name(), sBandwidth, sLatency));
+        sQuality = quality;
+    }
+
+    /**
+     * Returns the estimated quality of the network link.
+     *
+     * @return  The quality
+     */
+    @NonNull
+    public static Quality getQuality() {
+        return sQuality;
+    }
+
+    /**
+     * Checks whether the quality of the network link is poor.
+     *
+     * @return  {@code true} if the network link is poor, {@code false} otherwise
+     */
+    public static boolean isPoor() {
+        return sQuality == Quality.POOR;
+    }
+
+    /**
+     * Returns the estimated bandwidth.
+     *
+     * @return  The bandwidth (in kbps), or -1 if not estimated yet
+     */
+    @SuppressWarnings("unused")
+    public static long getBandwidth() {
+        synchronized (sLock) {
+            return Math.round(sBandwidth);
+        }
+    }
+
+    /**
+     * Returns the estimated latency (the duration of the requests with small payloads).
+     *
+     * @return  The latency (in milliseconds), or -1 if not estimated yet
+     */
+    @SuppressWarnings("unused")
+    public static long getLatency() {
+        synchronized (sLock) {
+            return Math.round(sLatency);
+        }
+    }
+
+    /**
+     * Checks whether the active network is metered (e.g. mobile).
+     *
+     * @return  {@code true} if the network is metered, {@code false} otherwise
+     * (or if the network monitor was not started)
+     */
+    @SuppressWarnings("unused")
+    public static boolean isMetered() {
+        return sMetered;
+    }
+
+    /**
+     * Adjusts the timeout to the estimated quality of the network link.
+     *
+     * @param timeout
+     *        The timeout (in seconds)
+     *
+     * @return  The adjusted timeout (in seconds)
+     */
+    public static int getTimeout(@IntRange(from = 0) final int timeout) {
+        switch (sQuality) {
+            case POOR:
+                return timeout * 2;
+            case MODERATE:
+                return timeout + timeout / 2;
+            default:
+                return timeout;
+        }
+    }
+
+    /**
+     * Clears the estimations of the network link quality.
+     */
+    @SuppressWarnings("unused")
+    public static void reset() {
+        synchronized (sLock) {
+            sBandwidth = -1;
+            sLatency   = -1;
+
+            updateQuality();
+        }
+    }
+}
@@ -89,6 +89,8 @@ public class BaseCacheAdapter<T, R, E, D> implements ListAdapter, SpinnerAdapter
 
     private final       ArrayConverter<T, R, E, D>          mConverter;
 
+    private             PagingListener<R, E, D>             mPagingListener;
+
     /**
      * The API to convert a {@code BaseResponse} to collection.
      *
@@ -170,6 +172,45 @@ public class BaseCacheAdapter<T, R, E, D> implements ListAdapter, SpinnerAdapter
         BaseCursorAdapter getCursorAdapter();
     }
 
+    /**
+     * The API to track adapter updates and items binding (e.g. for pagination).
+     *
+     * @param <R>
+     *        The type of network response
+     *
+     * @param <E>
+     *        The type of error (if any)
+     *
+     * @param <D>
+     *        The type of data
+     *
+     * @yakhont.see akha.yakhont.loader.Paginator
+     */
+    public interface PagingListener<R, E, D> {
+
+        /**
+         * Called after the adapter was updated with a new data.
+         *
+         * @param data
+         *        The new data
+         *
+         * @param isMerge
+         *        {@code true} if new data were merged with existing ones, {@code false} otherwise
+         */
+        void onUpdate(BaseResponse<R, E, D> data, boolean isMerge);
+
+        /**
+         * Called when the item at the given position is about to be bound to view.
+         *
+         * @param position
+         *        The item's position
+         *
+         * @param count
+         *        The number of items in adapter
+         */
+        void onBind(int position, int count);
+    }
+
     /**
      * The API related to data merging.
      */
@@ -327,6 +368,28 @@ public class BaseCacheAdapter<T, R, E, D> implements ListAdapter, SpinnerAdapter
                 CoreLogger.logError("unknown source " + source);
                 break;
         }
+
+        if (mPagingListener != null) mPagingListener.onUpdate(data, isMerge);
+    }
+
+    /**
+     * Registers the {@code PagingListener} to use.
+     *
+     * @param pagingListener
+     *        The PagingListener (or null)
+     */
+    public void setPagingListener(final PagingListener<R, E, D> pagingListener) {
+        mPagingListener = pagingListener;
+    }
+
+    /**
+     * Called when the item at the given position is about to be bound to view.
+     *
+     * @param position
+     *        The item's position
+     */
+    public void onBind(final int position) {
+        if (mPagingListener != null) mPagingListener.onBind(position, getCount());
     }
 
     @SuppressLint("ObsoleteSdkInt")
@@ -352,8 +415,13 @@ public class BaseCacheAdapter<T, R, E, D> implements ListAdapter, SpinnerAdapter
     public void updateArray(final Collection<? extends T> collection, final boolean isMerge) {
         setCurrentAdapter(true);
 
+        // one notification only, so the list is updated in place (without the empty state in between)
+        mArrayAdapter.setNotifyOnChange(false);
+
         if (!isMerge)           mArrayAdapter.clear();
         if (collection != null) addAll(collection);
+
+        mArrayAdapter.notifyDataSetChanged();
     }
 
     /**
@@ -533,6 +601,7 @@ public class BaseCacheAdapter<T, R, E, D> implements ListAdapter, SpinnerAdapter
      */
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
+        onBind(position);
         return mBaseAdapter.getView(position, convertView, parent);
     }
 
@@ -145,6 +145,7 @@ public class BaseRecyclerViewAdapter<T, R, E, D, VH extends ViewHolder> extends
      */
     @Override
     public void onBindViewHolder(VH holder, int position) {
+        mBaseCacheAdapter.onBind(position);
         mDataBinder.bind(position, mBaseCacheAdapter.getItem(position), holder.itemView);
     }
 
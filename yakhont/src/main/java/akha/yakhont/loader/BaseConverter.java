@@ -16,6 +16,7 @@
 
 package akha.yakhont.loader;
 
+import akha.yakhont.BaseCacheProvider;
 import akha.yakhont.Core.Utils;
 import akha.yakhont.Core.Utils.TypeHelper;
 import akha.yakhont.CoreLogger;
@@ -176,7 +177,7 @@ public class BaseConverter<D> implements Converter<D> {
         for (;;) {
             final JsonObject jsonObject = new JsonObject();
             for (int i = 0; i < cursor.getColumnCount(); i++) {
-                String value = cursor.getString(i), name = cursor.getColumnName(i);
+                String value = getString(cursor, i), name = cursor.getColumnName(i);
                 if (value != null) {
                     value = value.trim();
                     if (value.startsWith("[") || value.startsWith("{")) {
@@ -199,6 +200,18 @@ public class BaseConverter<D> implements Converter<D> {
         return isArray ? jsonArray: jsonArray.size() > 0 ? jsonArray.get(0): null;
     }
 
+    /** @exclude */
+    @SuppressLint("ObsoleteSdkInt")
+    @SuppressWarnings({"JavaDoc", "WeakerAccess"})
+    protected String getString(@NonNull final Cursor cursor, final int columnIndex) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB &&
+                cursor.getType(columnIndex) == Cursor.FIELD_TYPE_BLOB) {
+            final byte[] data = cursor.getBlob(columnIndex);
+            if (BaseCacheProvider.isCompressed(data)) return BaseCacheProvider.decompress(data);
+        }
+        return cursor.getString(columnIndex);
+    }
+
     /** @exclude */
     @NonNull
     @SuppressWarnings({"JavaDoc", "unchecked", "WeakerAccess"})
@@ -16,6 +16,7 @@
 
 package akha.yakhont.loader;
 
+import akha.yakhont.BaseCacheProvider;
 import akha.yakhont.CoreLogger;
 import akha.yakhont.CoreLogger.Level;
 import akha.yakhont.Core.Utils;
@@ -77,6 +78,10 @@ public class BaseResponse<R, E, D> {
     private final           D                     mData;
     private final           Cursor                mCursor;
     private                 ContentValues[]       mContentValues;
+    private                 CacheValidators       mCacheValidators;
+    private                 long                  mPayloadSize            = -1;
+    private                 long                  mNetworkTime            = -1;
+    private                 boolean               mFromNetwork;
     private final           Source                mSource;
     private final           Throwable             mThrowable;
 
@@ -195,6 +200,64 @@ public class BaseResponse<R, E, D> {
         mContentValues = values;
     }
 
+    /** @exclude */ @SuppressWarnings("JavaDoc")
+    public void setCacheValidators(final CacheValidators validators) {
+        mCacheValidators = validators;
+    }
+
+    /** @exclude */ @SuppressWarnings("JavaDoc")
+    public void setPayloadSize(final long size) {
+        mPayloadSize = size;
+    }
+
+    /** @exclude */ @SuppressWarnings("JavaDoc")
+    public void setNetworkTime(final long millis) {
+        mNetworkTime = millis;
+    }
+
+    /** @exclude */ @SuppressWarnings("JavaDoc")
+    public void setFromNetwork(final boolean fromNetwork) {
+        mFromNetwork = fromNetwork;
+    }
+
+    /**
+     * Checks whether the response was really received from the network (i.e. not from the HTTP cache
+     * and not the 304 Not Modified one).
+     *
+     * @return  {@code true} if the response was received from the network, {@code false} otherwise
+     */
+    public boolean isFromNetwork() {
+        return mFromNetwork;
+    }
+
+    /**
+     * Returns the size of the network response body (if available).
+     *
+     * @return  The size (in bytes), or -1 if not available
+     */
+    public long getPayloadSize() {
+        return mPayloadSize;
+    }
+
+    /**
+     * Returns the time between sending the HTTP request and receiving the response headers
+     * (as reported by the HTTP client, so without queueing, retries and parsing).
+     *
+     * @return  The time (in milliseconds), or -1 if not available
+     */
+    public long getNetworkTime() {
+        return mNetworkTime;
+    }
+
+    /**
+     * Returns the HTTP cache validators (ETag and Last-Modified) of the network response.
+     *
+     * @return  The CacheValidators (or null)
+     */
+    public CacheValidators getCacheValidators() {
+        return mCacheValidators;
+    }
+
     /**
      * Returns the loaded data.
      *
@@ -318,6 +381,7 @@ public class BaseResponse<R, E, D> {
 
     /**
      * Returns the value of the requested column (from the result set returned by a database query) as an Object.
+     * Values compressed by the {@link BaseCacheProvider} are decompressed (and returned as String).
      *
      * @param cursor
      *        The cursor
@@ -337,7 +401,8 @@ public class BaseResponse<R, E, D> {
                     case Cursor.FIELD_TYPE_NULL:
                         return null;
                     case Cursor.FIELD_TYPE_BLOB:
-                        return cursor.getBlob(columnIndex);
+                        final byte[] data = cursor.getBlob(columnIndex);
+                        return BaseCacheProvider.isCompressed(data) ? BaseCacheProvider.decompress(data): data;
                     case Cursor.FIELD_TYPE_INTEGER:
                         return cursor.getLong(columnIndex);
                     case Cursor.FIELD_TYPE_FLOAT:
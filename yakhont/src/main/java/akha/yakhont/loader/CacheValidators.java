@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.loader;
+
+import android.support.annotation.NonNull;
+
+/**
+ * The HTTP cache validators (ETag and Last-Modified) of the data stored in the cache table
+ * (please refer to {@link akha.yakhont.BaseCacheProvider#getValidators BaseCacheProvider.getValidators()}).
+ * The validators are bound to the thread which makes the request, so network components
+ * (e.g. {@link akha.yakhont.technology.retrofit.Retrofit2 Retrofit2}) could send conditional requests
+ * without any changes in the API; if the server responds with "304 Not Modified", the cached data are used.
+ *
+ * @author akha
+ */
+public class CacheValidators {
+
+    /** The "ETag" response header. */
+    public  static final String                         HEADER_ETAG                 = "ETag";
+    /** The "Last-Modified" response header. */
+    public  static final String                         HEADER_LAST_MODIFIED        = "Last-Modified";
+    /** The "If-None-Match" request header. */
+    public  static final String                         HEADER_IF_NONE_MATCH        = "If-None-Match";
+    /** The "If-Modified-Since" request header. */
+    public  static final String                         HEADER_IF_MODIFIED_SINCE    = "If-Modified-Since";
+
+    /** The "Not Modified" HTTP status code (the value is {@value}). */
+    public  static final int                            HTTP_NOT_MODIFIED           = 304;
+
+    private static final ThreadLocal<CacheValidators>   sCurrent                    = new ThreadLocal<>();
+
+    private static volatile boolean                     sEnabled                    = true;
+
+    private        final String                         mETag;
+    private        final String                         mLastModified;
+
+    /**
+     * Initialises a newly created {@code CacheValidators} object.
+     *
+     * @param eTag
+     *        The ETag (or null)
+     *
+     * @param lastModified
+     *        The Last-Modified date (or null)
+     */
+    public CacheValidators(final String eTag, final String lastModified) {
+        mETag           = eTag;
+        mLastModified   = lastModified;
+    }
+
+    /**
+     * Enables or disables conditional requests (enabled by default).
+     *
+     * @param enabled
+     *        {@code true} to send cache validators, {@code false} otherwise
+     */
+    @SuppressWarnings("unused")
+    public static void setEnabled(final boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Checks whether conditional requests are enabled or not.
+     *
+     * @return  {@code true} if conditional requests are enabled, {@code false} otherwise
+     */
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Returns the ETag.
+     *
+     * @return  The ETag (or null)
+     */
+    public String getETag() {
+        return mETag;
+    }
+
+    /**
+     * Returns the Last-Modified date.
+     *
+     * @return  The Last-Modified date (or null)
+     */
+    public String getLastModified() {
+        return mLastModified;
+    }
+
+    /**
+     * Checks whether there are no validators.
+     *
+     * @return  {@code true} if both ETag and Last-Modified are not defined, {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return isEmpty(mETag) && isEmpty(mLastModified);
+    }
+
+    private static boolean isEmpty(final String value) {
+        return value == null || value.trim().length() == 0;
+    }
+
+    /**
+     * Binds the validators to the current thread.
+     */
+    public void bind() {
+        sCurrent.set(this);
+    }
+
+    /**
+     * Unbinds the validators (if any) from the current thread.
+     */
+    public static void unbind() {
+        sCurrent.remove();
+    }
+
+    /**
+     * Returns the validators bound to the current thread.
+     *
+     * @return  The CacheValidators (or null)
+     */
+    public static CacheValidators getCurrent() {
+        return sCurrent.get();
+    }
+
+    /**
+     * Creates the validators from the response headers.
+     *
+     * @param eTag
+     *        The value of the "ETag" response header (or null)
+     *
+     * @param lastModified
+     *        The value of the "Last-Modified" response header (or null)
+     *
+     * @return  The CacheValidators (or null if there are no validators in the response)
+     */
+    public static CacheValidators create(final String eTag, final String lastModified) {
+        final CacheValidators validators = new CacheValidators(eTag, lastModified);
+        return validators.isEmpty() ? null: validators;
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @NonNull
+    @Override
+    public String toString() {
+        return HEADER_ETAG + ": " + mETag + ", " + HEADER_LAST_MODIFIED + ": " + mLastModified;
+    }
+}
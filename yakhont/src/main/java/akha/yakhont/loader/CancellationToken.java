@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.loader;
+
+import akha.yakhont.Core.Utils;
+import akha.yakhont.CoreLogger;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Propagates cancellation from the loader lifecycle into the network calls made on loader's behalf.
+ * The token is bound to the thread which makes the request, so network components
+ * (e.g. {@link akha.yakhont.technology.retrofit.Retrofit2 Retrofit2}) can register their calls
+ * via {@link #register register()} without any changes in the API.
+ *
+ * @author akha
+ */
+public class CancellationToken {
+
+    /**
+     * The API to cancel the network call (or any other work).
+     */
+    public interface Cancelable {
+
+        /**
+         * Cancels the work.
+         */
+        void cancel();
+    }
+
+    private static final ThreadLocal<CancellationToken> sCurrent        = new ThreadLocal<>();
+
+    private        final List<Cancelable>               mCancelables    = Utils.newList();
+    private volatile     boolean                        mCancelled;
+
+    /**
+     * Binds this token to the current thread.
+     */
+    public void bind() {
+        sCurrent.set(this);
+    }
+
+    /**
+     * Unbinds the token (if any) from the current thread.
+     */
+    public static void unbind() {
+        sCurrent.remove();
+    }
+
+    /**
+     * Returns the token bound to the current thread.
+     *
+     * @return  The token (or null)
+     */
+    public static CancellationToken getCurrent() {
+        return sCurrent.get();
+    }
+
+    /**
+     * Registers the {@code Cancelable} with the token bound to the current thread (if any).
+     *
+     * @param cancelable
+     *        The Cancelable
+     *
+     * @return  {@code false} if the token was already cancelled (so the {@code Cancelable} was cancelled too), {@code true} otherwise
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public static boolean register(@NonNull final Cancelable cancelable) {
+        final CancellationToken token = getCurrent();
+        return token == null || token.add(cancelable);
+    }
+
+    /**
+     * Adds the {@code Cancelable} to this token.
+     *
+     * @param cancelable
+     *        The Cancelable
+     *
+     * @return  {@code false} if the token was already cancelled (so the {@code Cancelable} was cancelled too), {@code true} otherwise
+     */
+    public boolean add(@NonNull final Cancelable cancelable) {
+        mCancelables.add(cancelable);
+        if (!mCancelled) return true;
+
+        cancel(cancelable);
+        return false;
+    }
+
+    /**
+     * Removes the {@code Cancelable} from this token (e.g. if the work is already done).
+     *
+     * @param cancelable
+     *        The Cancelable
+     */
+    public void remove(@NonNull final Cancelable cancelable) {
+        mCancelables.remove(cancelable);
+    }
+
+    /**
+     * Checks whether the token was cancelled or not.
+     *
+     * @return  {@code true} if the token was cancelled, {@code false} otherwise
+     */
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Cancels all registered {@code Cancelable} objects.
+     */
+    public void cancel() {
+        if (mCancelled) return;
+        mCancelled = true;
+
+        // the copy: cancel(Cancelable) removes it from the list
+        for (final Cancelable cancelable: new ArrayList<>(mCancelables))
+            cancel(cancelable);
+    }
+
+    private void cancel(@NonNull final Cancelable cancelable) {
+        if (!mCancelables.remove(cancelable)) return;
+        try {
+            CoreLogger.log("about to cancel " + cancelable);
+            cancelable.cancel();
+        }
+        catch (Exception e) {
+            CoreLogger.log("cancel failed " + cancelable, e);
+        }
+    }
+}
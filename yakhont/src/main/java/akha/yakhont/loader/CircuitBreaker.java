@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.loader;
+
+import akha.yakhont.Core.Utils;
+import akha.yakhont.CoreLogger;
+
+import android.os.SystemClock;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The per-endpoint circuit breaker: after several consecutive transient failures the endpoint is considered
+ * as failing ({@link State#OPEN OPEN}), so loaders go straight to cache without network requests.
+ * After the open timeout one probe request is allowed ({@link State#HALF_OPEN HALF_OPEN}); its success closes
+ * the breaker, its failure opens it again.
+ *
+ * @see RetryPolicy
+ *
+ * @author akha
+ */
+public class CircuitBreaker {
+
+    /**
+     * The circuit breaker states.
+     */
+    public enum State {
+        /** The endpoint works normally. */
+        CLOSED,
+        /** The endpoint is failing, requests are not allowed. */
+        OPEN,
+        /** The probe request is in progress. */
+        HALF_OPEN
+    }
+
+    /** The default number of consecutive failures which opens the breaker (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final int                        FAILURES_THRESHOLD_DEFAULT  = 5;
+    /** The default time (in milliseconds) before the probe request (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final long                       OPEN_TIMEOUT_DEFAULT        = 30 * 1000;
+
+    private static final Map<Object, CircuitBreaker>
+                                                    sBreakers                   = Utils.newMap();
+
+    private static volatile int                     sFailuresThreshold          = FAILURES_THRESHOLD_DEFAULT;
+    private static volatile long                    sOpenTimeout                = OPEN_TIMEOUT_DEFAULT;
+
+    private        final Object                     mEndpoint;
+
+    private              State                      mState                      = State.CLOSED;
+    private              int                        mFailures;
+    private              long                       mFailuresTotal;
+    private              long                       mRejectedTotal;
+    private              long                       mStateChanged               = SystemClock.elapsedRealtime();
+
+    private CircuitBreaker(@NonNull final Object endpoint) {
+        mEndpoint = endpoint;
+    }
+
+    /**
+     * Sets the circuit breakers parameters.
+     *
+     * @param failuresThreshold
+     *        The number of consecutive failures which opens the breaker (or 0 to disable breakers)
+     *
+     * @param openTimeout
+     *        The time (in milliseconds) before the probe request
+     */
+    @SuppressWarnings("unused")
+    public static void setParameters(@IntRange(from = 0) final int failuresThreshold,
+                                     @IntRange(from = 0) final long openTimeout) {
+        sFailuresThreshold  = failuresThreshold;
+        sOpenTimeout        = openTimeout;
+    }
+
+    /**
+     * Returns the circuit breaker for the given endpoint.
+     *
+     * @param endpoint
+     *        The endpoint (e.g. server host name)
+     *
+     * @return  The CircuitBreaker (or null if breakers are disabled)
+     */
+    public static CircuitBreaker get(final Object endpoint) {
+        if (endpoint == null || sFailuresThreshold <= 0) return null;
+
+        synchronized (sBreakers) {
+            CircuitBreaker breaker = sBreakers.get(endpoint);
+            if (breaker == null) {
+                breaker = new CircuitBreaker(endpoint);
+                sBreakers.put(endpoint, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    /**
+     * Returns the snapshot of all circuit breakers states (for diagnostics).
+     *
+     * @return  The endpoints and their states
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public static Map<Object, State> getStates() {
+        final Map<Object, State> states = new LinkedHashMap<>();
+        synchronized (sBreakers) {
+            for (final Map.Entry<Object, CircuitBreaker> entry: sBreakers.entrySet())
+                states.put(entry.getKey(), entry.getValue().getState());
+        }
+        return states;
+    }
+
+    /**
+     * Closes all circuit breakers.
+     */
+    @SuppressWarnings("unused")
+    public static void resetAll() {
+        synchronized (sBreakers) {
+            sBreakers.clear();
+        }
+    }
+
+    /**
+     * Checks whether the request to the endpoint is allowed or not.
+     *
+     * @return  {@code true} if the request is allowed, {@code false} otherwise
+     */
+    public synchronized boolean allowRequest() {
+        switch (mState) {
+            case CLOSED:
+                return true;
+
+            case OPEN:
+            case HALF_OPEN:     // if the probe request was lost (e.g. cancelled), allow another one
+                if (SystemClock.elapsedRealtime() - mStateChanged >= sOpenTimeout) {
+                    setState(State.HALF_OPEN);
+                    return true;
+                }
+                mRejectedTotal++;
+                return false;
+
+            default:
+                CoreLogger.logError("unknown state " + mState);
+                return true;
+        }
+    }
+
+    /**
+     * Records the successful request.
+     */
+    public synchronized void onSuccess() {
+        mFailures = 0;
+        if (mState != State.CLOSED) setState(State.CLOSED);
+    }
+
+    /**
+     * Records the failed request (only transient failures should be recorded).
+     */
+    public synchronized void onFailure() {
+        mFailures++;
+        mFailuresTotal++;
+
+        if (mState == State.HALF_OPEN || mState == State.CLOSED && mFailures >= sFailuresThreshold)
+            setState(State.OPEN);
+    }
+
+    /**
+     * Returns the current state.
+     *
+     * @return  The state
+     */
+    @NonNull
+    public synchronized State getState() {
+        return mState;
+    }
+
+    private void setState(@NonNull final State state) {
+        CoreLogger.logWarning("circuit breaker " + mEndpoint + ": " + mState + " -> " + state);
+
+        mState          = state;
+        mStateChanged   = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format(CoreLogger.getLocale(), "%s: %s, failures %d, total failures %d, rejected %d",
+                mEndpoint, mState.name(), mFailures, mFailuresTotal, mRejectedTotal);
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.loader;
+
+import akha.yakhont.CoreLogger;
+import akha.yakhont.CoreLogger.Level;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.SystemClock;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The process-wide executor for the loaders' network requests: the bounded thread pool
+ * with the priority queue (requests with the same priority are executed in FIFO order).
+ * Also provides the shared scheduler for the loaders' timeouts.
+ *
+ * @see Priority
+ *
+ * @author akha
+ */
+public class LoaderExecutor {
+
+    /**
+     * The priorities of the loaders' requests (in descending order).
+     */
+    public enum Priority {
+        /** The request from the visible component (e.g. Fragment). */
+        VISIBLE,
+        /** The ordinary request. */
+        NORMAL,
+        /** The request from the invisible component. */
+        BACKGROUND,
+        /** The prefetch request. */
+        PREFETCH
+    }
+
+    /** The default number of threads in pool (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final int                        THREADS_NUMBER_DEFAULT      = 4;
+
+    private static final int                        KEEP_ALIVE_TIME             = 30;   // seconds
+    private static final int                        PURGE_THRESHOLD             = 64;
+
+    private static final Object                     sLock                       = new Object();
+    private static       LoaderExecutor             sInstance;
+
+    private        final ThreadPoolExecutor         mExecutor;
+    private        final ScheduledThreadPoolExecutor
+                                                    mScheduler;
+    private        final AtomicLong                 mSequence                   = new AtomicLong();
+
+    private        final AtomicLong                 mTasksCounter               = new AtomicLong();
+    private        final AtomicLong                 mWaitTimeTotal              = new AtomicLong();
+    private        final AtomicLong                 mWaitTimeMax                = new AtomicLong();
+
+    @SuppressLint("ObsoleteSdkInt")
+    private LoaderExecutor(@IntRange(from = 1) final int threadsNumber) {
+        final AtomicInteger counter = new AtomicInteger();
+
+        mExecutor = new ThreadPoolExecutor(threadsNumber, threadsNumber, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "yakhont loader " + counter.incrementAndGet());
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+
+        mScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                return new Thread(runnable, "yakhont loader timer");
+            }
+        });
+        mScheduler.setKeepAliveTime(KEEP_ALIVE_TIME, TimeUnit.SECONDS);
+        mScheduler.allowCoreThreadTimeOut(true);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) setRemoveOnCancelPolicy();
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void setRemoveOnCancelPolicy() {
+        mScheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Initializes the executor. Normally called from {@link akha.yakhont.Core#init Core.init()};
+     * please use {@link akha.yakhont.Core#setLoaderThreadsNumber Core.setLoaderThreadsNumber()} to configure.
+     *
+     * @param threadsNumber
+     *        The maximum number of threads in pool (or 0 for default value)
+     */
+    public static void init(@IntRange(from = 0) final int threadsNumber) {
+        synchronized (sLock) {
+            if (sInstance != null) {
+                CoreLogger.logWarning("LoaderExecutor is already initialized");
+                return;
+            }
+            sInstance = new LoaderExecutor(threadsNumber > 0 ? threadsNumber: THREADS_NUMBER_DEFAULT);
+            CoreLogger.log("LoaderExecutor threads number " + sInstance.mExecutor.getMaximumPoolSize());
+        }
+    }
+
+    /**
+     * Returns the {@code LoaderExecutor} instance.
+     *
+     * @return  The {@code LoaderExecutor}
+     */
+    @NonNull
+    public static LoaderExecutor getInstance() {
+        synchronized (sLock) {
+            if (sInstance == null) init(0);
+            return sInstance;
+        }
+    }
+
+    /**
+     * Executes the given task.
+     *
+     * @param priority
+     *        The task priority
+     *
+     * @param runnable
+     *        The task to execute
+     *
+     * @return  The {@code Future} representing the pending task (or null)
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public Future<?> execute(@NonNull final Priority priority, @NonNull final Runnable runnable) {
+        final PriorityTask task = new PriorityTask(priority, mSequence.getAndIncrement(), runnable);
+        try {
+            mExecutor.execute(task);
+            return task;
+        }
+        catch (Exception e) {
+            CoreLogger.log(Level.ERROR, "can not execute task, priority " + priority, e);
+            return null;
+        }
+    }
+
+    /**
+     * Schedules the given task (e.g. timeout handler) using the shared timer thread.
+     * To cancel the task please use {@link #cancel cancel()}.
+     *
+     * @param delay
+     *        The delay (in milliseconds)
+     *
+     * @param runnable
+     *        The task to execute
+     *
+     * @return  The {@code ScheduledFuture} representing the pending task (or null)
+     */
+    public ScheduledFuture<?> schedule(final long delay, @NonNull final Runnable runnable) {
+        try {
+            return mScheduler.schedule(runnable, delay, TimeUnit.MILLISECONDS);
+        }
+        catch (Exception e) {
+            CoreLogger.log(Level.ERROR, "can not schedule task, delay " + delay, e);
+            return null;
+        }
+    }
+
+    /**
+     * Cancels the task scheduled via {@link #schedule schedule()}.
+     *
+     * @param future
+     *        The {@code ScheduledFuture} representing the pending task
+     */
+    @SuppressLint("ObsoleteSdkInt")
+    public void cancel(final ScheduledFuture<?> future) {
+        if (future == null || !future.cancel(false)) return;
+
+        // cancelled tasks stay in queue till their delays elapse (before Lollipop), so cleanup from time to time
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP && mScheduler.getQueue().size() > PURGE_THRESHOLD)
+            mScheduler.purge();
+    }
+
+    /**
+     * Returns the number of tasks waiting for execution.
+     *
+     * @return  The queue depth
+     */
+    @SuppressWarnings("unused")
+    public int getQueueSize() {
+        return mExecutor.getQueue().size();
+    }
+
+    /**
+     * Returns the number of threads that are actively executing tasks.
+     *
+     * @return  The number of active threads
+     */
+    @SuppressWarnings("unused")
+    public int getActiveCount() {
+        return mExecutor.getActiveCount();
+    }
+
+    /**
+     * Returns the average time (in milliseconds) the tasks spent in queue.
+     *
+     * @return  The average wait time
+     */
+    @SuppressWarnings("WeakerAccess")
+    public long getWaitTimeAverage() {
+        final long counter = mTasksCounter.get();
+        return counter == 0 ? 0: mWaitTimeTotal.get() / counter;
+    }
+
+    /**
+     * Returns the maximum time (in milliseconds) the tasks spent in queue.
+     *
+     * @return  The maximum wait time
+     */
+    @SuppressWarnings("WeakerAccess")
+    public long getWaitTimeMax() {
+        return mWaitTimeMax.get();
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    public String toString() {
+        return String.format(CoreLogger.getLocale(), "threads %d, active %d, queue %d, tasks %d, wait average %d ms, max %d ms",
+                mExecutor.getMaximumPoolSize(), getActiveCount(), getQueueSize(),
+                mTasksCounter.get(), getWaitTimeAverage(), getWaitTimeMax());
+    }
+
+    private void onTaskStarted(final long waitTime) {
+        mTasksCounter .incrementAndGet();
+        mWaitTimeTotal.addAndGet(waitTime);
+
+        for (;;) {
+            final long max = mWaitTimeMax.get();
+            if (waitTime <= max || mWaitTimeMax.compareAndSet(max, waitTime)) break;
+        }
+    }
+
+    private class PriorityTask extends FutureTask<Void> implements Comparable<PriorityTask> {
+
+        private final Priority                      mPriority;
+        private final long                          mSequence;
+        private final long                          mQueued             = SystemClock.elapsedRealtime();
+
+        private PriorityTask(@NonNull final Priority priority, final long sequence, @NonNull final Runnable runnable) {
+            super(runnable, null);
+
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            final long waitTime = SystemClock.elapsedRealtime() - mQueued;
+            onTaskStarted(waitTime);
+
+            CoreLogger.log(String.format(CoreLogger.getLocale(), "priority %s, wait time %d ms", mPriority.name(), waitTime));
+            super.run();
+        }
+
+        @Override
+        public int compareTo(@NonNull final PriorityTask task) {
+            final int result = mPriority.compareTo(task.mPriority);
+            return result != 0 ? result: mSequence < task.mSequence ? -1: mSequence == task.mSequence ? 0: 1;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.loader;
+
+import android.support.annotation.NonNull;
+
+/**
+ * The API to collect the data loading pipeline metrics: for every stage of loading (network request,
+ * data conversion, storing in cache, cache query and adapter update) the duration (based on the
+ * monotonic clock), the payload size and the number of rows are reported.
+ * To register the listener please use {@code BaseLoader.setLoaderMetrics()};
+ * for the ready-to-use implementation please refer to {@link LoaderMetricsAggregator}.
+ *
+ * @author akha
+ */
+public interface LoaderMetrics {
+
+    /**
+     * The stages of data loading.
+     */
+    enum Stage {
+        /** The network request (from the request start till the response). */
+        NETWORK,
+        /** The conversion of data (e.g. from the network response to the cache values, or from the cursor). */
+        CONVERSION,
+        /** Storing the data in cache. */
+        STORE,
+        /** Querying the data from cache. */
+        QUERY,
+        /** Updating the adapter with the loaded data. */
+        BIND
+    }
+
+    /**
+     * Called when the stage of data loading is completed. Could be called from any thread.
+     *
+     * @param loaderId
+     *        The loader ID
+     *
+     * @param tableName
+     *        The name of the cache table (or null)
+     *
+     * @param stage
+     *        The stage of data loading
+     *
+     * @param duration
+     *        The stage duration (in nanoseconds)
+     *
+     * @param size
+     *        The payload size (in bytes), or -1 if not available
+     *
+     * @param rows
+     *        The number of rows (data items), or -1 if not available
+     *
+     * @param success
+     *        {@code true} if the stage was completed successfully, {@code false} otherwise
+     */
+    void onStage(int loaderId, String tableName, @NonNull Stage stage,
+                 long duration, long size, int rows, boolean success);
+}
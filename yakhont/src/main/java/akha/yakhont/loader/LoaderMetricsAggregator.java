@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.loader;
+
+import akha.yakhont.Core.Utils;
+import akha.yakhont.CoreLogger;
+
+import android.support.annotation.FloatRange;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link LoaderMetrics} implementation which aggregates the metrics per loader ID and stage:
+ * counters, payload sizes, rows and durations histograms (to calculate percentiles). For example:
+ *
+ * <p><pre style="background-color: silver; border: thin solid black;">
+ * import akha.yakhont.loader.BaseLoader;
+ * import akha.yakhont.loader.LoaderMetrics.Stage;
+ * import akha.yakhont.loader.LoaderMetricsAggregator;
+ *
+ * LoaderMetricsAggregator metrics = new LoaderMetricsAggregator();
+ * BaseLoader.setLoaderMetrics(metrics);
+ * ...
+ *
+ * long networkP90 = metrics.getStats(myLoaderId, Stage.NETWORK).getPercentile(90);
+ * metrics.log();
+ * </pre>
+ *
+ * @author akha
+ */
+public class LoaderMetricsAggregator implements LoaderMetrics {
+
+    private final Map<List<Object>, Stats>          mStats              = Utils.newMap();
+
+    /**
+     * Initialises a newly created {@code LoaderMetricsAggregator} object.
+     */
+    public LoaderMetricsAggregator() {
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    public void onStage(final int loaderId, final String tableName, @NonNull final Stage stage,
+                        final long duration, final long size, final int rows, final boolean success) {
+        final List<Object> key = Arrays.<Object>asList(loaderId, stage);
+
+        Stats stats;
+        synchronized (mStats) {
+            stats = mStats.get(key);
+            if (stats == null) {
+                stats = new Stats(loaderId, tableName, stage);
+                mStats.put(key, stats);
+            }
+        }
+        stats.add(duration, size, rows, success);
+    }
+
+    /**
+     * Returns the metrics of the given loader and stage.
+     *
+     * @param loaderId
+     *        The loader ID
+     *
+     * @param stage
+     *        The stage of data loading
+     *
+     * @return  The Stats (or null if there are no metrics yet)
+     */
+    public Stats getStats(final int loaderId, @NonNull final Stage stage) {
+        synchronized (mStats) {
+            return mStats.get(Arrays.<Object>asList(loaderId, stage));
+        }
+    }
+
+    /**
+     * Returns the metrics of all loaders and stages.
+     *
+     * @return  The list of Stats
+     */
+    @NonNull
+    public List<Stats> getStats() {
+        synchronized (mStats) {
+            return new ArrayList<>(mStats.values());
+        }
+    }
+
+    /**
+     * Clears all collected metrics.
+     */
+    @SuppressWarnings("unused")
+    public void reset() {
+        synchronized (mStats) {
+            mStats.clear();
+        }
+    }
+
+    /**
+     * Logs all collected metrics.
+     */
+    @SuppressWarnings("unused")
+    public void log() {
+        for (final Stats stats: getStats())
+            CoreLogger.log(stats.toString());
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        for (final Stats stats: getStats())
+            builder.append(stats.toString()).append('\n');
+        return builder.toString();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The metrics of the stage of data loading for the given loader.
+     */
+    public static class Stats {
+
+        private final int                           mLoaderId;
+        private final String                        mTableName;
+        private final Stage                         mStage;
+
+        private final Histogram                     mHistogram          = new Histogram();
+
+        private       long                          mFailures;
+        private       long                          mSize;
+        private       long                          mRows;
+
+        private Stats(final int loaderId, final String tableName, @NonNull final Stage stage) {
+            mLoaderId   = loaderId;
+            mTableName  = tableName;
+            mStage      = stage;
+        }
+
+        private synchronized void add(final long duration, final long size, final int rows, final boolean success) {
+            mHistogram.add(TimeUnit.NANOSECONDS.toMicros(duration));
+
+            if (!success) mFailures++;
+            if (size > 0) mSize += size;
+            if (rows > 0) mRows += rows;
+        }
+
+        /**
+         * Returns the loader ID.
+         *
+         * @return  The loader ID
+         */
+        @SuppressWarnings("unused")
+        public int getLoaderId() {
+            return mLoaderId;
+        }
+
+        /**
+         * Returns the cache table name.
+         *
+         * @return  The table name (or null)
+         */
+        @SuppressWarnings("unused")
+        public String getTableName() {
+            return mTableName;
+        }
+
+        /**
+         * Returns the stage of data loading.
+         *
+         * @return  The stage
+         */
+        @NonNull
+        @SuppressWarnings("unused")
+        public Stage getStage() {
+            return mStage;
+        }
+
+        /**
+         * Returns the number of completed stages.
+         *
+         * @return  The count
+         */
+        public synchronized long getCount() {
+            return mHistogram.getCount();
+        }
+
+        /**
+         * Returns the number of failed stages.
+         *
+         * @return  The number of failures
+         */
+        public synchronized long getFailures() {
+            return mFailures;
+        }
+
+        /**
+         * Returns the total payload size.
+         *
+         * @return  The size (in bytes)
+         */
+        public synchronized long getSize() {
+            return mSize;
+        }
+
+        /**
+         * Returns the total number of rows.
+         *
+         * @return  The number of rows
+         */
+        public synchronized long getRows() {
+            return mRows;
+        }
+
+        /**
+         * Returns the average duration.
+         *
+         * @return  The duration (in milliseconds)
+         */
+        public synchronized long getAverage() {
+            return mHistogram.getAverage() / 1000;
+        }
+
+        /**
+         * Returns the maximum duration.
+         *
+         * @return  The duration (in milliseconds)
+         */
+        public synchronized long getMax() {
+            return mHistogram.getMax() / 1000;
+        }
+
+        /**
+         * Returns the approximate duration percentile (the relative error is less than 25%).
+         *
+         * @param percent
+         *        The percentile to return, e.g. 50, 90 or 99
+         *
+         * @return  The duration (in milliseconds)
+         */
+        public synchronized long getPercentile(@FloatRange(from = 0, to = 100) final double percent) {
+            return mHistogram.getPercentile(percent) / 1000;
+        }
+
+        /**
+         * Please refer to the base method description.
+         */
+        @Override
+        public synchronized String toString() {
+            return String.format(CoreLogger.getLocale(), "loader %d (%s), %s: count %d, failures %d, " +
+                    "size %d, rows %d, avg %d ms, p50 %d ms, p90 %d ms, p99 %d ms, max %d ms",
+                    mLoaderId, mTableName, mStage.name(), getCount(), mFailures, mSize, mRows,
+                    getAverage(), getPercentile(50), getPercentile(90), getPercentile(99), getMax());
+        }
+    }
+
+    /**
+     * The simple log-linear histogram: every power of 2 is split into 4 buckets, so the memory footprint
+     * is constant and the relative error of percentiles is bounded.
+     */
+    // package-private for unit tests
+    static class Histogram {
+
+        private static final int                    SUB_BUCKETS_BITS    = 2;
+        private static final int                    SUB_BUCKETS         = 1 << SUB_BUCKETS_BITS;
+        private static final int                    MAX_POWER           = 40;
+
+        private final long[]                        mCounts             = new long[(MAX_POWER + 1) * SUB_BUCKETS];
+        private       long                          mCount;
+        private       long                          mTotal;
+        private       long                          mMax;
+
+        void add(long value) {
+            if (value < 0) value = 0;
+
+            mCounts[getIndex(value)]++;
+            mCount++;
+            mTotal += value;
+            if (value > mMax) mMax = value;
+        }
+
+        static int getIndex(final long value) {
+            if (value < SUB_BUCKETS) return (int) value;
+
+            final int power = 63 - Long.numberOfLeadingZeros(value);
+            if (power > MAX_POWER) return (MAX_POWER + 1) * SUB_BUCKETS - 1;
+
+            final int subBucket = (int) (value >>> (power - SUB_BUCKETS_BITS)) & (SUB_BUCKETS - 1);
+            return (power - SUB_BUCKETS_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        // the upper bound of the bucket
+        static long getValue(final int index) {
+            if (index < SUB_BUCKETS) return index;
+
+            final int power     = index / SUB_BUCKETS + SUB_BUCKETS_BITS - 1;
+            final int subBucket = index % SUB_BUCKETS;
+            return ((long) (SUB_BUCKETS + subBucket + 1) << (power - SUB_BUCKETS_BITS)) - 1;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        long getMax() {
+            return mMax;
+        }
+
+        long getAverage() {
+            return mCount == 0 ? 0: mTotal / mCount;
+        }
+
+        long getPercentile(final double percent) {
+            if (mCount == 0) return 0;
+
+            final long threshold = Math.max(1, (long) Math.ceil(mCount * Math.min(100, Math.max(0, percent)) / 100));
+            long count = 0;
+            for (int i = 0; i < mCounts.length; i++) {
+                count += mCounts[i];
+                if (count >= threshold) return Math.min(getValue(i), mMax);
+            }
+            return mMax;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.loader;
+
+import akha.yakhont.CoreLogger;
+
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * The retry policy for the idempotent network requests: exponential backoff with full jitter
+ * (i.e. the delay before the N-th retry is a random value between 0 and {@code min(maxDelay, baseDelay * 2^N)}).
+ * Only transient failures are retried: I/O errors (e.g. no route to host or connection reset)
+ * and HTTP status codes 408, 429 and 5xx (please refer to {@link HttpStatusException}).
+ *
+ * <p>The retries are opt-in: by default loaders use {@link #NO_RETRY}. To enable retries for all loaders:
+ *
+ * <p><pre style="background-color: silver; border: thin solid black;">
+ * RetryPolicy.setDefault(RetryPolicy.createDefault());
+ * </pre>
+ *
+ * or for the given loader only - please use {@code BaseLoader.setRetryPolicy()}.
+ *
+ * @see CircuitBreaker
+ *
+ * @author akha
+ */
+public class RetryPolicy {
+
+    /** The policy which does no retries. */
+    public  static final RetryPolicy                NO_RETRY                = new RetryPolicy(0, 0, 0);
+
+    /** The default maximum number of retries (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final int                        MAX_RETRIES_DEFAULT     = 2;
+    /** The default base delay (in milliseconds) before retry (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final long                       BASE_DELAY_DEFAULT      = 500;
+    /** The default maximum delay (in milliseconds) before retry (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final long                       MAX_DELAY_DEFAULT       = 5000;
+
+    private static final Random                     sRandom                 = new Random();
+
+    private static volatile RetryPolicy             sDefault                = NO_RETRY;
+
+    private        final int                        mMaxRetries;
+    private        final long                       mBaseDelay;
+    private        final long                       mMaxDelay;
+
+    /**
+     * Initialises a newly created {@code RetryPolicy} object.
+     *
+     * @param maxRetries
+     *        The maximum number of retries
+     *
+     * @param baseDelay
+     *        The base delay (in milliseconds)
+     *
+     * @param maxDelay
+     *        The maximum delay (in milliseconds)
+     */
+    public RetryPolicy(@IntRange(from = 0) final int maxRetries,
+                       @IntRange(from = 0) final long baseDelay, @IntRange(from = 0) final long maxDelay) {
+        mMaxRetries = maxRetries;
+        mBaseDelay  = baseDelay;
+        mMaxDelay   = maxDelay;
+    }
+
+    /**
+     * Creates the policy with the default parameters ({@link #MAX_RETRIES_DEFAULT}, {@link #BASE_DELAY_DEFAULT}
+     * and {@link #MAX_DELAY_DEFAULT}).
+     *
+     * @return  The RetryPolicy
+     */
+    @NonNull
+    @SuppressWarnings("WeakerAccess")
+    public static RetryPolicy createDefault() {
+        return new RetryPolicy(MAX_RETRIES_DEFAULT, BASE_DELAY_DEFAULT, MAX_DELAY_DEFAULT);
+    }
+
+    /**
+     * Returns the policy used by loaders by default ({@link #NO_RETRY} if not set).
+     *
+     * @return  The default RetryPolicy
+     */
+    @NonNull
+    public static RetryPolicy getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * Sets the policy used by loaders by default.
+     *
+     * @param retryPolicy
+     *        The RetryPolicy (or null for no retries)
+     */
+    @SuppressWarnings("unused")
+    public static void setDefault(final RetryPolicy retryPolicy) {
+        sDefault = retryPolicy != null ? retryPolicy: NO_RETRY;
+    }
+
+    /**
+     * Returns the delay before the given retry.
+     *
+     * @param retry
+     *        The retry number (starting from 0)
+     *
+     * @return  The delay (in milliseconds), or -1 if no more retries allowed
+     */
+    public long getDelay(@IntRange(from = 0) final int retry) {
+        if (retry >= mMaxRetries) return -1;
+
+        final long delay = Math.min(mMaxDelay, mBaseDelay << Math.min(retry, 30));
+        return delay <= 0 ? 0: (long) (sRandom.nextDouble() * delay);
+    }
+
+    /**
+     * Checks whether the failed request could be retried or not.
+     *
+     * @param baseResponse
+     *        The results of loading
+     *
+     * @return  {@code true} if the failure is transient, {@code false} otherwise
+     */
+    public boolean isRetryable(@NonNull final BaseResponse<?, ?, ?> baseResponse) {
+        return isTransient(baseResponse.getError()) || isTransient(baseResponse.getThrowable());
+    }
+
+    /**
+     * Checks whether the error is transient (e.g. network failure) or not.
+     *
+     * @param error
+     *        The error
+     *
+     * @return  {@code true} if the error is transient, {@code false} otherwise
+     */
+    public static boolean isTransient(final Object error) {
+        for (Throwable throwable = error instanceof Throwable ? (Throwable) error: null;
+             throwable != null; throwable = throwable.getCause() == throwable ? null: throwable.getCause()) {
+
+            if (throwable instanceof HttpStatusException)
+                return HttpStatusException.isTransient(((HttpStatusException) throwable).getCode());
+            if (throwable instanceof IOException) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    public String toString() {
+        return String.format(CoreLogger.getLocale(), "retries %d, base delay %d ms, max delay %d ms",
+                mMaxRetries, mBaseDelay, mMaxDelay);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The exception which indicates the HTTP error status.
+     */
+    public static class HttpStatusException extends Exception {
+
+        private final int                           mCode;
+
+        /**
+         * Initialises a newly created {@code HttpStatusException} object.
+         *
+         * @param code
+         *        The HTTP status code
+         */
+        public HttpStatusException(final int code) {
+            super("error code " + code);
+            mCode = code;
+        }
+
+        /**
+         * Returns the HTTP status code.
+         *
+         * @return  The HTTP status code
+         */
+        public int getCode() {
+            return mCode;
+        }
+
+        /**
+         * Checks whether the HTTP status code means the transient error or not.
+         *
+         * @param code
+         *        The HTTP status code
+         *
+         * @return  {@code true} for 408, 429 and 5xx status codes, {@code false} otherwise
+         */
+        public static boolean isTransient(final int code) {
+            return code == 408 || code == 429 || code >= 500 && code < 600;
+        }
+    }
+}
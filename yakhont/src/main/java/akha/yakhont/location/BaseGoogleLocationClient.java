@@ -18,11 +18,13 @@ package akha.yakhont.location;
 
 import akha.yakhont.Core.Utils;
 import akha.yakhont.CoreLogger;
+import akha.yakhont.CoreLogger.Level;
 import akha.yakhont.location.LocationCallbacks.LocationClient;
 
 import android.app.Activity;
 import android.location.Location;
 import android.os.Bundle;
+import android.os.Debug;
 import android.support.annotation.CallSuper;
 import android.support.annotation.NonNull;
 
@@ -71,7 +73,7 @@ public abstract class BaseGoogleLocationClient implements LocationClient, Locati
     /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
     protected       Location            mCurrentLocation;
     /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
-    protected       Date                mLastUpdateTime;
+    protected       long                mLastUpdateTime;
     /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
     protected       boolean             mUniqueUpdates                  = true;
 
@@ -96,6 +98,15 @@ public abstract class BaseGoogleLocationClient implements LocationClient, Locati
     /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
     protected       boolean             mRequestingLocationUpdates;
 
+    /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
+    protected       LocationPolicy      mLocationPolicy;
+    /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
+    protected       boolean             mBackgroundUpdates;
+
+    private         boolean             mTrackAllocations;
+    private         int                 mAllocations;
+    private         int                 mAllocationsMax;
+
     /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
     protected final Object              mBuildLock                      = new Object();
 
@@ -118,6 +129,67 @@ public abstract class BaseGoogleLocationClient implements LocationClient, Locati
         mUniqueUpdates = value;
     }
 
+    /**
+     * Sets the adaptive location request policy, which overrides the priority, interval, fastest interval
+     * and maximum wait time set via {@link #setLocationUpdatesParameters setLocationUpdatesParameters()}.
+     * With the policy set, the location updates are not stopped when the application goes to background
+     * (they are re-requested with the background mode parameters instead) till the activity is destroyed.
+     *
+     * @param locationPolicy
+     *        The location policy (or null for the fixed location request parameters)
+     *
+     * @return  This {@code BaseGoogleLocationClient} object, so that setters can be chained
+     */
+    @SuppressWarnings("unused")
+    public BaseGoogleLocationClient setLocationPolicy(final LocationPolicy locationPolicy) {
+        mLocationPolicy = locationPolicy;
+        return this;
+    }
+
+    /**
+     * Switches on / off the counting of allocations in the location fix handling (including the listeners
+     * and Rx subscribers) - to verify that the hot path doesn't allocate. For debugging only.
+     *
+     * @param value
+     *        {@code true} to count allocations, {@code false} otherwise
+     *
+     * @see #getAllocations
+     */
+    @SuppressWarnings({"unused", "deprecation"})
+    public void setAllocationTracking(final boolean value) {
+        if (value == mTrackAllocations) return;
+        mTrackAllocations = value;
+
+        if (value) {
+            mAllocations = mAllocationsMax = 0;
+            Debug.startAllocCounting();
+        }
+        else
+            Debug.stopAllocCounting();
+    }
+
+    /**
+     * Returns the number of allocations made while handling the last location fix
+     * (if {@link #setAllocationTracking allocation tracking} is on).
+     *
+     * @return  The number of allocations
+     */
+    @SuppressWarnings("unused")
+    public int getAllocations() {
+        return mAllocations;
+    }
+
+    /**
+     * Returns the maximum number of allocations made while handling the location fix
+     * (if {@link #setAllocationTracking allocation tracking} is on).
+     *
+     * @return  The maximum number of allocations per location fix
+     */
+    @SuppressWarnings("unused")
+    public int getAllocationsMax() {
+        return mAllocationsMax;
+    }
+
     /**
      * Please refer to the base method description.
      */
@@ -131,7 +203,8 @@ public abstract class BaseGoogleLocationClient implements LocationClient, Locati
      */
     @Override
     public Date getLastUpdateTime() {
-        return mLastUpdateTime;
+        final long lastUpdateTime = mLastUpdateTime;
+        return lastUpdateTime == 0 ? null: new Date(lastUpdateTime);
     }
 
     /**
@@ -167,7 +240,7 @@ public abstract class BaseGoogleLocationClient implements LocationClient, Locati
             savedInstanceState.putFloat   (ARG_REQUEST_SMALLEST_DISPLACEMENT, mSmallestDisplacement);
 
         savedInstanceState.putParcelable  (ARG_LOCATION                     , mCurrentLocation     );
-        savedInstanceState.putSerializable(ARG_TIME                         , mLastUpdateTime      );
+        savedInstanceState.putLong        (ARG_TIME                         , mLastUpdateTime      );
         savedInstanceState.putBoolean     (ARG_UNIQUE_UPDATES               , mUniqueUpdates       );
     }
 
@@ -193,6 +266,9 @@ public abstract class BaseGoogleLocationClient implements LocationClient, Locati
      */
     @Override
     public void onResume(Activity activity) {
+        // the mode re-evaluated here is applied by the new location request
+        setForeground(true);
+
         startLocationUpdates(activity);
     }
 
@@ -201,7 +277,13 @@ public abstract class BaseGoogleLocationClient implements LocationClient, Locati
      */
     @Override
     public void onPause(Activity activity) {
-        stopLocationUpdates(activity);
+        if (!setForeground(false)) {
+            stopLocationUpdates(activity);
+            return;
+        }
+        // the new request (with the background mode parameters, e.g. batched delivery) replaces the previous one
+        startLocationUpdates(activity);
+        mBackgroundUpdates = true;
     }
 
     /**
@@ -216,6 +298,29 @@ public abstract class BaseGoogleLocationClient implements LocationClient, Locati
      */
     @Override
     public void onDestroy(Activity activity) {
+        if (!mBackgroundUpdates) return;
+
+        mBackgroundUpdates = false;
+        stopLocationUpdates(activity);
+    }
+
+    /**
+     * Notifies the {@link LocationPolicy} (if any) that the application went to the foreground or background.
+     *
+     * @param foreground
+     *        {@code true} if the application is in the foreground, {@code false} otherwise
+     *
+     * @return  {@code true} if the location policy was set (so the location updates should be kept
+     *          in background), {@code false} otherwise
+     */
+    @SuppressWarnings({"WeakerAccess", "UnusedReturnValue"})
+    protected boolean setForeground(final boolean foreground) {
+        final LocationPolicy locationPolicy = mLocationPolicy;
+        if (locationPolicy == null) return false;
+
+        locationPolicy.onForegroundChanged(foreground);
+        if (foreground) mBackgroundUpdates = false;
+        return true;
     }
 
     ////////////////////////////////////////////////////////////////////////////////////////////////
@@ -379,7 +484,7 @@ public abstract class BaseGoogleLocationClient implements LocationClient, Locati
         if (savedInstanceState.keySet().contains                       (ARG_LOCATION      ))
             setLocation((Location)   savedInstanceState.getParcelable  (ARG_LOCATION      ));
         if (savedInstanceState.keySet().contains                       (ARG_TIME          ))
-            mLastUpdateTime = (Date) savedInstanceState.getSerializable(ARG_TIME          );
+            mLastUpdateTime =        savedInstanceState.getLong        (ARG_TIME          );
         if (savedInstanceState.keySet().contains                       (ARG_UNIQUE_UPDATES))
             mUniqueUpdates  =        savedInstanceState.getBoolean     (ARG_UNIQUE_UPDATES);
     }
@@ -387,6 +492,7 @@ public abstract class BaseGoogleLocationClient implements LocationClient, Locati
     /**
      * Please refer to the base method description.
      */
+    @SuppressWarnings("deprecation")
     @Override
     public void onLocationChanged(final Location location) {
         if (location == null) {
@@ -394,21 +500,37 @@ public abstract class BaseGoogleLocationClient implements LocationClient, Locati
             return;
         }
 
+        if (!mTrackAllocations) {
+            onLocationChangedHelper(location);
+            return;
+        }
+
+        final int allocations = Debug.getThreadAllocCount();
+        onLocationChangedHelper(location);
+
+        mAllocations = Debug.getThreadAllocCount() - allocations;
+        if (mAllocations > mAllocationsMax) mAllocationsMax = mAllocations;
+    }
+
+    // the hot path: no allocations (including the log messages, if logging is off)
+    private void onLocationChangedHelper(@NonNull final Location location) {
         final boolean changed = mCurrentLocation == null                  ||
                 location.getLatitude()  != mCurrentLocation.getLatitude() ||
                 location.getLongitude() != mCurrentLocation.getLongitude();
-        CoreLogger.log("location changed: " + changed);
+        if (CoreLogger.isLoggable(Level.DEBUG)) CoreLogger.log("location changed: " + changed);
 
         setLocation(location);
-        mLastUpdateTime = lastUpdateTime();
+        mLastUpdateTime = System.currentTimeMillis();
 
-        if (mUniqueUpdates && !changed) return;
+        if (!mUniqueUpdates || changed)
+            mLocationCallbacks.onLocationChanged(location, mLastUpdateTime);
 
-        mLocationCallbacks.onLocationChanged(location, mLastUpdateTime);
-    }
-
-    private Date lastUpdateTime() {
-        return new Date();
+        final LocationPolicy locationPolicy = mLocationPolicy;
+        if (locationPolicy != null && locationPolicy.onLocationChanged(location)) {
+            // the new request replaces the previous one
+            final Activity activity = LocationCallbacks.getActivity();
+            if (activity != null) startLocationUpdates(activity);
+        }
     }
 
     /**
@@ -419,7 +541,7 @@ public abstract class BaseGoogleLocationClient implements LocationClient, Locati
      */
     @SuppressWarnings("WeakerAccess")
     protected void setLocation(final Location location) {
-        CoreLogger.log("new location: " + location);
+        if (CoreLogger.isLoggable(Level.DEBUG)) CoreLogger.log("new location: " + location);
         mCurrentLocation = location;
     }
 
@@ -471,6 +593,9 @@ public abstract class BaseGoogleLocationClient implements LocationClient, Locati
                 locationRequest.setSmallestDisplacement(mSmallestDisplacement);
         }
 
+        final LocationPolicy locationPolicy = mLocationPolicy;
+        if (locationPolicy != null) locationPolicy.apply(locationRequest);
+
         CoreLogger.log("createNewLocationRequest, priority            : " + getPriorityDescription(
                                                                             locationRequest.getPriority            ()));
         CoreLogger.log("createNewLocationRequest, interval            : " + locationRequest.getInterval            () );
@@ -164,7 +164,7 @@ public class GoogleLocationClient extends BaseGoogleLocationClient implements Co
      */
     @Override
     public void onResume(Activity activity) {
-        if (mWasPaused && mClient.isConnected()) startLocationUpdates(activity);
+        if (mWasPaused && mClient.isConnected()) super.onResume(activity);
     }
 
     /**
@@ -174,8 +174,9 @@ public class GoogleLocationClient extends BaseGoogleLocationClient implements Co
     public void onPause(Activity activity) {
         mWasPaused = true;
 
-        // Stop location updates to save battery, but don't disconnect the GoogleApiClient object.
-        if (mClient.isConnected()) stopLocationUpdates(activity);
+        // Stop location updates to save battery (or switch them to the background mode of the location policy),
+        // but don't disconnect the GoogleApiClient object.
+        if (mClient.isConnected()) super.onPause(activity);
     }
 
     /**
@@ -183,7 +184,19 @@ public class GoogleLocationClient extends BaseGoogleLocationClient implements Co
      */
     @Override
     public void onStop(Activity activity) {
-        if (mClient.isConnected()) mClient.disconnect();
+        // the background location updates need the connected client
+        if (!mBackgroundUpdates && mClient.isConnected()) mClient.disconnect();
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    public void onDestroy(Activity activity) {
+        if (!mClient.isConnected()) return;
+
+        super.onDestroy(activity);
+        mClient.disconnect();
     }
 
     /**
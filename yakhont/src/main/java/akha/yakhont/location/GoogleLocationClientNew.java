@@ -46,6 +46,8 @@ import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.Task;
 
+import java.util.List;
+
 /**
  * The client to work with {@link FusedLocationProviderClient}-based Google Play Services Location API.
  *
@@ -149,6 +151,8 @@ public class GoogleLocationClientNew extends BaseGoogleLocationClient {
      */
     @Override
     public void onResume(Activity activity) {
+        setForeground(true);
+
         CoreLogger.log("mRequestLocationUpdates " + mRequestLocationUpdates);
         if (mRequestLocationUpdates) startSettingsUpdates(activity);
     }
@@ -383,7 +387,14 @@ public class GoogleLocationClientNew extends BaseGoogleLocationClient {
             @Override
             public void onLocationResult(LocationResult locationResult) {
                 super.onLocationResult(locationResult);
-                onLocationChanged(locationResult.getLastLocation());
+
+                // with the max wait time set, the locations are delivered in batches
+                final List<Location> locations = locationResult.getLocations();
+                if (locations == null || locations.isEmpty())
+                    onLocationChanged(locationResult.getLastLocation());
+                else
+                    for (int i = 0; i < locations.size(); i++)
+                        onLocationChanged(locations.get(i));
             }
         };
     }
@@ -42,9 +42,12 @@ import android.support.annotation.NonNull;
 
 import dagger.Lazy;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
@@ -126,6 +129,14 @@ public class LocationCallbacks extends BaseActivityCallbacks implements Configur
     /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
     protected static Boolean                                        sAccessToLocation;
 
+    private volatile LocationFilter                                 mLocationFilter;
+    private volatile LocationTrack                                  mLocationTrack;
+
+    // the snapshots of listeners to deliver location fixes without allocations; rebuilt on (un)registration only
+    private volatile WeakReference<Activity>[]                      mListeners;
+    private volatile LocationRx[]                                   mRxSnapshot;
+    private volatile int                                            mListenersProceeded;
+
     /**
      * Activity should implement this interface for receiving notifications when the location has changed.
      */
@@ -138,7 +149,8 @@ public class LocationCallbacks extends BaseActivityCallbacks implements Configur
          *        The updated location
          *
          * @param date
-         *        The last update time
+         *        The last update time (the new {@code Date} object for every location fix, shared by all listeners,
+         *        so please don't modify it)
          */
         void onLocationChanged(Location location, @SuppressWarnings("UnusedParameters") Date date);
     }
@@ -159,7 +171,7 @@ public class LocationCallbacks extends BaseActivityCallbacks implements Configur
         /**
          * Returns the location's last update time.
          *
-         * @return  The last update time
+         * @return  The last update time (the new {@code Date} object on every call), or null if no updates yet
          */
         @SuppressWarnings("unused")
         Date getLastUpdateTime();
@@ -364,6 +376,8 @@ public class LocationCallbacks extends BaseActivityCallbacks implements Configur
      */
     @Override
     public void onActivityCreated(@NonNull final Activity activity, final Bundle savedInstanceState) {
+        invalidateSnapshots();
+
         if (mAlertProvider == null) mAlertProvider = Core.getDagger().getAlertLocation();
         if (mToastProvider == null) mToastProvider = Core.getDagger().getToastLong();
 
@@ -542,6 +556,7 @@ public class LocationCallbacks extends BaseActivityCallbacks implements Configur
     @Override
     public void onActivityDestroyed(@NonNull final Activity activity) {
         sActivity.clear(activity);
+        invalidateSnapshots();
 
         if (isAccessToLocationAllowed() && getProceeded().size() == 0)
 
@@ -566,6 +581,7 @@ public class LocationCallbacks extends BaseActivityCallbacks implements Configur
             locationRx.cleanup();
 
         mRx.remove(activity);
+        invalidateSnapshots();
     }
 
     /** @exclude */ @SuppressWarnings("JavaDoc")
@@ -573,15 +589,127 @@ public class LocationCallbacks extends BaseActivityCallbacks implements Configur
         return sActivity.get();
     }
 
+    /**
+     * Sets the filter of location fixes; the rejected fixes are not delivered to the {@link LocationListener}s
+     * and {@link LocationRx} subscribers (but they still update the {@link #getCurrentLocation current location}).
+     *
+     * @param locationFilter
+     *        The location filter (or null to deliver all fixes)
+     *
+     * @return  This {@code LocationCallbacks} object to allow for chaining of calls to set methods
+     */
+    @SuppressWarnings("unused")
+    public LocationCallbacks setLocationFilter(final LocationFilter locationFilter) {
+        CoreLogger.log("location filter: " + locationFilter);
+        mLocationFilter = locationFilter;
+        return this;
+    }
+
+    /**
+     * Returns the filter of location fixes.
+     *
+     * @return  The location filter (or null)
+     */
+    @SuppressWarnings("unused")
+    public LocationFilter getLocationFilter() {
+        return mLocationFilter;
+    }
+
+    /**
+     * Sets the track recorder; the location fixes accepted by the {@link #setLocationFilter filter} (if any)
+     * are recorded automatically.
+     *
+     * @param locationTrack
+     *        The track recorder (or null to stop recording)
+     *
+     * @return  This {@code LocationCallbacks} object to allow for chaining of calls to set methods
+     */
+    @SuppressWarnings("unused")
+    public LocationCallbacks setLocationTrack(final LocationTrack locationTrack) {
+        mLocationTrack = locationTrack;
+        return this;
+    }
+
+    /**
+     * Returns the track recorder.
+     *
+     * @return  The track recorder (or null)
+     */
+    @SuppressWarnings("unused")
+    public LocationTrack getLocationTrack() {
+        return mLocationTrack;
+    }
+
     /** @exclude */ @SuppressWarnings("JavaDoc")
+    public void onLocationChanged(final Location location, final long time) {
+        //noinspection deprecation
+        onLocationChanged(location, new Date(time));
+    }
+
+    /**
+     * @exclude
+     * @deprecated  please use {@link #onLocationChanged(Location, long)} instead
+     */
+    @Deprecated
+    @SuppressWarnings("JavaDoc")
     public void onLocationChanged(final Location location, final Date date) {
-        for (final Activity activity: getProceeded())
-            if (activity instanceof LocationListener)
-                ((LocationListener) activity).onLocationChanged(location, date);
+        final LocationFilter locationFilter = mLocationFilter;
+        if (locationFilter != null && location != null && !locationFilter.accept(location)) return;
 
-        for (final Set<LocationRx> setLocationRx: mRx.values())
-            for (final LocationRx locationRx: setLocationRx)
-                locationRx.onResult(location);
+        final LocationTrack locationTrack = mLocationTrack;
+        if (locationTrack != null && location != null) locationTrack.record(location);
+
+        final WeakReference<Activity>[] listeners = getListeners();
+        //noinspection ForLoopReplaceableByForEach
+        for (int i = 0; i < listeners.length; i++) {
+            final Activity activity = listeners[i].get();
+            if (activity != null) ((LocationListener) activity).onLocationChanged(location, date);
+        }
+
+        final LocationRx[] rxSnapshot = getRxSnapshot();
+        //noinspection ForLoopReplaceableByForEach
+        for (int i = 0; i < rxSnapshot.length; i++)
+            rxSnapshot[i].onResult(location);
+    }
+
+    @NonNull
+    @SuppressWarnings("unchecked")
+    private WeakReference<Activity>[] getListeners() {
+        final Set<Activity> proceeded = getProceeded();
+        WeakReference<Activity>[] listeners = mListeners;
+        if (listeners != null && mListenersProceeded == proceeded.size()) return listeners;
+
+        final List<WeakReference<Activity>> list = new ArrayList<>();
+        synchronized (proceeded) {
+            for (final Activity activity: proceeded)
+                if (activity instanceof LocationListener) list.add(new WeakReference<>(activity));
+            mListenersProceeded = proceeded.size();
+        }
+        listeners   = list.toArray(new WeakReference[list.size()]);
+        mListeners  = listeners;
+
+        return listeners;
+    }
+
+    @NonNull
+    private LocationRx[] getRxSnapshot() {
+        LocationRx[] rxSnapshot = mRxSnapshot;
+        if (rxSnapshot != null) return rxSnapshot;
+
+        final List<LocationRx> list = new ArrayList<>();
+        synchronized (mRx) {
+            for (final Set<LocationRx> setLocationRx: mRx.values())
+                list.addAll(setLocationRx);
+        }
+        rxSnapshot  = list.toArray(new LocationRx[list.size()]);
+        mRxSnapshot = rxSnapshot;
+
+        return rxSnapshot;
+    }
+
+    private void invalidateSnapshots() {
+        mListeners  = null;
+        mRxSnapshot = null;
     }
 
     /** @exclude */ @SuppressWarnings("JavaDoc")
@@ -613,6 +741,8 @@ public class LocationCallbacks extends BaseActivityCallbacks implements Configur
         if (!mRx.containsKey(activity)) mRx.put(activity, Utils.<LocationRx>newSet());
 
         final boolean result = mRx.get(activity).add(locationRx);
+        invalidateSnapshots();
+
         CoreLogger.log(result ? Level.DEBUG: Level.ERROR, "register Rx: result == " + result);
         return result;
     }
@@ -640,6 +770,8 @@ public class LocationCallbacks extends BaseActivityCallbacks implements Configur
         if (setLocationRx == null) return false;
 
         final boolean result = setLocationRx.remove(locationRx);
+        invalidateSnapshots();
+
         CoreLogger.log(result ? Level.DEBUG: Level.WARNING, "unregister Rx: result == " + result);
         return result;
     }
@@ -682,7 +814,7 @@ public class LocationCallbacks extends BaseActivityCallbacks implements Configur
     /**
      * Returns the location's last update time.
      *
-     * @return  The last update time
+     * @return  The last update time (the new {@code Date} object on every call), or null if no updates yet
      */
     @SuppressWarnings("unused")
     public Date getLastUpdateTime() {
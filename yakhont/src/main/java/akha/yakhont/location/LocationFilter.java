@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.location;
+
+import akha.yakhont.CoreLogger;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.location.Location;
+import android.os.Build;
+import android.support.annotation.NonNull;
+
+/**
+ * Filters the location fixes before they are delivered to the {@link LocationCallbacks.LocationListener listeners}
+ * and {@link akha.yakhont.technology.rx.BaseRx.LocationRx LocationRx} subscribers, so they are notified
+ * about the meaningful movements only (and not about every GPS jitter). For example:
+ *
+ * <p><pre style="background-color: silver; border: thin solid black;">
+ * import akha.yakhont.location.LocationCallbacks;
+ * import akha.yakhont.location.LocationFilter;
+ *
+ * LocationCallbacks.getLocationCallbacks(activity).setLocationFilter(new LocationFilter()
+ *     .setMinDisplacement(10)      // meters
+ *     .setMaxAccuracy(50)          // meters
+ *     .setMinInterval(2000));      // milliseconds
+ * </pre>
+ *
+ * The fix is accepted if it's accurate enough, and it's far enough from the previously accepted one
+ * (the displacement is not less than the minimum one plus the accuracy of the fix, so the jitter inside
+ * the accuracy radius is ignored), and it's not too soon after the previously accepted one (the fix times
+ * are compared, not the arrival ones, so the batched fixes are handled correctly).
+ *
+ * @see LocationCallbacks#setLocationFilter
+ *
+ * @author akha
+ */
+public class LocationFilter {
+
+    private          float                  mMinDisplacement;
+    private          float                  mMaxAccuracy;
+    private          long                   mMinInterval;
+
+    private final    Object                 mLock               = new Object();
+    private final    float[]                mDistance           = new float[1];
+
+    private          boolean                mHasLast;
+    private          double                 mLastLatitude;
+    private          double                 mLastLongitude;
+    private          long                   mLastTime;
+
+    private          long                   mAccepted;
+    private          long                   mRejected;
+
+    /**
+     * Initialises a newly created {@code LocationFilter} object (which accepts all fixes).
+     */
+    public LocationFilter() {
+    }
+
+    /**
+     * Sets the minimum displacement between the accepted location fixes.
+     *
+     * @param meters
+     *        The minimum displacement (in meters), or 0 to not check the displacement
+     *
+     * @return  This {@code LocationFilter} object to allow for chaining of calls to set methods
+     */
+    @SuppressWarnings("unused")
+    public LocationFilter setMinDisplacement(final float meters) {
+        synchronized (mLock) {
+            mMinDisplacement = Math.max(meters, 0);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the worst accuracy of the accepted location fixes (the fixes without accuracy are accepted).
+     *
+     * @param meters
+     *        The maximum accuracy radius (in meters), or 0 to not check the accuracy
+     *
+     * @return  This {@code LocationFilter} object to allow for chaining of calls to set methods
+     */
+    @SuppressWarnings("unused")
+    public LocationFilter setMaxAccuracy(final float meters) {
+        synchronized (mLock) {
+            mMaxAccuracy = Math.max(meters, 0);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the minimum interval between the accepted location fixes (i.e. limits the emission rate).
+     *
+     * @param milliseconds
+     *        The minimum interval (in milliseconds), or 0 to not limit the rate
+     *
+     * @return  This {@code LocationFilter} object to allow for chaining of calls to set methods
+     */
+    @SuppressWarnings("unused")
+    public LocationFilter setMinInterval(final long milliseconds) {
+        synchronized (mLock) {
+            mMinInterval = Math.max(milliseconds, 0);
+        }
+        return this;
+    }
+
+    /**
+     * Checks whether the location fix should be delivered to the listeners.
+     *
+     * @param location
+     *        The location fix
+     *
+     * @return  {@code true} if the location fix was accepted, {@code false} otherwise
+     */
+    public boolean accept(@NonNull final Location location) {
+        synchronized (mLock) {
+            final boolean result = acceptNotSync(location);
+            if (result) mAccepted++; else mRejected++;
+            return result;
+        }
+    }
+
+    private boolean acceptNotSync(@NonNull final Location location) {
+        final float accuracy = location.hasAccuracy() ? location.getAccuracy(): 0;
+        if (mMaxAccuracy > 0 && accuracy > mMaxAccuracy) return false;
+
+        final long time = getFixTime(location);
+        if (mHasLast) {
+            // negative interval means the fixes time bases differ - so the interval is unknown
+            final long interval = time - mLastTime;
+            if (mMinInterval > 0 && interval >= 0 && interval < mMinInterval) return false;
+
+            if (mMinDisplacement > 0) {
+                Location.distanceBetween(mLastLatitude, mLastLongitude,
+                        location.getLatitude(), location.getLongitude(), mDistance);
+                if (mDistance[0] < mMinDisplacement + accuracy) return false;
+            }
+        }
+
+        mHasLast        = true;
+        mLastLatitude   = location.getLatitude();
+        mLastLongitude  = location.getLongitude();
+        mLastTime       = time;
+
+        return true;
+    }
+
+    /**
+     * Returns the time of the location fix: the elapsed real-time (on API 17+, if available)
+     * or the UTC time otherwise.
+     *
+     * @param location
+     *        The location fix
+     *
+     * @return  The fix time (in milliseconds)
+     */
+    @SuppressLint("ObsoleteSdkInt")
+    static long getFixTime(@NonNull final Location location) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            final long time = getElapsedRealtime(location);
+            if (time > 0) return time;
+        }
+        return location.getTime();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private static long getElapsedRealtime(@NonNull final Location location) {
+        return location.getElapsedRealtimeNanos() / 1000000;
+    }
+
+    /**
+     * Forgets the previously accepted location fix (so the next fix which is accurate enough will be accepted).
+     */
+    @SuppressWarnings("WeakerAccess")
+    public void reset() {
+        synchronized (mLock) {
+            mHasLast = false;
+        }
+    }
+
+    /**
+     * Returns the number of the accepted location fixes.
+     *
+     * @return  The number of the accepted fixes
+     */
+    @SuppressWarnings("unused")
+    public long getAccepted() {
+        synchronized (mLock) {
+            return mAccepted;
+        }
+    }
+
+    /**
+     * Returns the number of the rejected location fixes.
+     *
+     * @return  The number of the rejected fixes
+     */
+    @SuppressWarnings("unused")
+    public long getRejected() {
+        synchronized (mLock) {
+            return mRejected;
+        }
+    }
+
+    /** @exclude */ @SuppressWarnings("JavaDoc")
+    @Override
+    public String toString() {
+        synchronized (mLock) {
+            return String.format(CoreLogger.getLocale(), "min displacement %.1f m, max accuracy %.1f m, " +
+                    "min interval %d ms, accepted %d, rejected %d", mMinDisplacement, mMaxAccuracy,
+                    mMinInterval, mAccepted, mRejected);
+        }
+    }
+}
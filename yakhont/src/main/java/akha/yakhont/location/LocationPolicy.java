@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.location;
+
+import akha.yakhont.Core;
+import akha.yakhont.Core.Utils;
+import akha.yakhont.CoreLogger;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.location.Location;
+import android.os.BatteryManager;
+import android.os.SystemClock;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.location.LocationRequest;
+
+/**
+ * The adaptive location request policy: adjusts the interval, priority and batching (i.e. the maximum wait time)
+ * of the location requests to the observed speed, to the foreground / background state of the application
+ * and to the battery level. For example, the stationary user doesn't need the GPS duty cycle of the driving one,
+ * and when the application is not visible the location updates are delivered in batches. For example:
+ *
+ * <p><pre style="background-color: silver; border: thin solid black;">
+ * import akha.yakhont.location.LocationPolicy;
+ *
+ * googleLocationClient.setLocationPolicy(new LocationPolicy()
+ *     .setMode(LocationPolicy.Mode.DRIVING, LocationRequest.PRIORITY_HIGH_ACCURACY, 1000, 0));
+ * </pre>
+ *
+ * The mode is re-evaluated on every location fix; when it changes, the location updates are re-requested
+ * (but not more often than once per {@link #setMinSwitchInterval min switch interval}). The mode is also
+ * re-evaluated when the application goes to foreground or background (see {@link #onForegroundChanged}).
+ *
+ * @see BaseGoogleLocationClient#setLocationPolicy
+ *
+ * @author akha
+ */
+public class LocationPolicy {
+
+    /**
+     * The location request modes.
+     */
+    public enum Mode {
+        /** The speed is less than 0.5 m/s. */
+        STATIONARY,
+        /** The speed is 0.5 - 5 m/s. */
+        WALKING,
+        /** The speed is more than 5 m/s. */
+        DRIVING,
+        /** The application is not in foreground. */
+        BACKGROUND,
+        /** The battery level is low and the device is not charging. */
+        LOW_BATTERY
+    }
+
+    private static final float                          SPEED_WALKING               = 0.5f;     // m/s
+    private static final float                          SPEED_DRIVING               = 5;
+    private static final double                         SMOOTHING                   = 0.3;
+
+    /** The default battery level (in percents) which is treated as the low one (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final int                            LOW_BATTERY_DEFAULT         = 15;
+
+    /** The default minimum interval between the mode switches (in milliseconds), the value is {@value}. */
+    @SuppressWarnings("WeakerAccess")
+    public  static final int                            MIN_SWITCH_INTERVAL_DEFAULT = 30 * 1000;
+
+    private static final int                            BATTERY_CHECK_INTERVAL      = 60 * 1000;
+
+    private final        int    []                      mPriorities                 = new int   [Mode.values().length];
+    private final        long   []                      mIntervals                  = new long  [Mode.values().length];
+    private final        long   []                      mMaxWaitTimes               = new long  [Mode.values().length];
+
+    private final        Object                         mLock                       = new Object();
+    private final        float  []                      mDistance                   = new float [1];
+
+    private              int                            mLowBattery                 = LOW_BATTERY_DEFAULT;
+    private              long                           mMinSwitchInterval          = MIN_SWITCH_INTERVAL_DEFAULT;
+
+    private              Mode                           mMode;
+    private              long                           mModeTime;
+    private              Boolean                        mForeground;
+
+    private              double                         mSpeed                      = -1;
+    private              boolean                        mHasLast;
+    private              double                         mLastLatitude;
+    private              double                         mLastLongitude;
+    private              long                           mLastTime;
+
+    private              boolean                        mBatteryLow;
+    private              long                           mBatteryTime;
+
+    /**
+     * Initialises a newly created {@code LocationPolicy} object with the default parameters.
+     */
+    public LocationPolicy() {
+        setModeNotSync(Mode.STATIONARY , LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY,      30 * 1000,              0);
+        setModeNotSync(Mode.WALKING    , LocationRequest.PRIORITY_HIGH_ACCURACY          ,       5 * 1000,              0);
+        setModeNotSync(Mode.DRIVING    , LocationRequest.PRIORITY_HIGH_ACCURACY          ,       2 * 1000,              0);
+        setModeNotSync(Mode.BACKGROUND , LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY,      60 * 1000,  5 * 60 * 1000);
+        setModeNotSync(Mode.LOW_BATTERY, LocationRequest.PRIORITY_LOW_POWER              , 2 * 60 * 1000, 10 * 60 * 1000);
+    }
+
+    /**
+     * Sets the location request parameters for the given mode.
+     *
+     * @param mode
+     *        The mode
+     *
+     * @param priority
+     *        The priority of the request, e.g. {@link LocationRequest#PRIORITY_HIGH_ACCURACY}
+     *
+     * @param interval
+     *        The desired interval for location updates (in milliseconds); the fastest interval is the half of it
+     *
+     * @param maxWaitTime
+     *        The maximum wait time for location updates (in milliseconds), or 0 for no batching
+     *
+     * @return  This {@code LocationPolicy} object to allow for chaining of calls to set methods
+     */
+    @SuppressWarnings({"unused", "SameParameterValue"})
+    public LocationPolicy setMode(@NonNull final Mode mode, final int priority,
+                                  @IntRange(from = 0) final long interval,
+                                  @IntRange(from = 0) final long maxWaitTime) {
+        synchronized (mLock) {
+            setModeNotSync(mode, priority, interval, maxWaitTime);
+        }
+        return this;
+    }
+
+    private void setModeNotSync(@NonNull final Mode mode, final int priority,
+                                final long interval, final long maxWaitTime) {
+        mPriorities  [mode.ordinal()] = priority;
+        mIntervals   [mode.ordinal()] = interval;
+        mMaxWaitTimes[mode.ordinal()] = maxWaitTime;
+    }
+
+    /**
+     * Sets the battery level which is treated as the low one.
+     *
+     * @param percents
+     *        The battery level (in percents), e.g. {@link #LOW_BATTERY_DEFAULT}, or 0 to not check the battery
+     *
+     * @return  This {@code LocationPolicy} object to allow for chaining of calls to set methods
+     */
+    @SuppressWarnings("unused")
+    public LocationPolicy setLowBattery(@IntRange(from = 0, to = 100) final int percents) {
+        synchronized (mLock) {
+            mLowBattery  = percents;
+            mBatteryTime = 0;
+        }
+        return this;
+    }
+
+    /**
+     * Sets the minimum interval between the mode switches (to avoid the frequent re-requesting of location updates).
+     *
+     * @param milliseconds
+     *        The minimum interval (in milliseconds), e.g. {@link #MIN_SWITCH_INTERVAL_DEFAULT}
+     *
+     * @return  This {@code LocationPolicy} object to allow for chaining of calls to set methods
+     */
+    @SuppressWarnings("unused")
+    public LocationPolicy setMinSwitchInterval(@IntRange(from = 0) final long milliseconds) {
+        synchronized (mLock) {
+            mMinSwitchInterval = milliseconds;
+        }
+        return this;
+    }
+
+    /**
+     * Returns the current mode.
+     *
+     * @return  The mode (or null if no location request was made yet)
+     */
+    @SuppressWarnings("unused")
+    public Mode getMode() {
+        synchronized (mLock) {
+            return mMode;
+        }
+    }
+
+    /**
+     * Returns the estimated speed.
+     *
+     * @return  The speed (in meters per second), or -1 if not estimated yet
+     */
+    @SuppressWarnings("unused")
+    public float getSpeed() {
+        synchronized (mLock) {
+            return (float) mSpeed;
+        }
+    }
+
+    /**
+     * Applies the parameters of the current mode to the location request.
+     *
+     * @param locationRequest
+     *        The location request
+     */
+    public void apply(@NonNull final LocationRequest locationRequest) {
+        synchronized (mLock) {
+            final Mode mode = evaluate(SystemClock.elapsedRealtime());
+            if (mode != mMode) {
+                mMode     = mode;
+                mModeTime = SystemClock.elapsedRealtime();
+            }
+
+            final int index = mode.ordinal();
+            locationRequest.setPriority       (mPriorities  [index]);
+            locationRequest.setInterval       (mIntervals   [index]);
+            locationRequest.setFastestInterval(mIntervals   [index] / 2);
+            locationRequest.setMaxWaitTime    (mMaxWaitTimes[index]);
+        }
+    }
+
+    /**
+     * Updates the speed estimation and checks whether the mode should be switched.
+     *
+     * @param location
+     *        The new location fix
+     *
+     * @return  {@code true} if the mode was changed (so the location updates should be re-requested),
+     * {@code false} otherwise
+     */
+    public boolean onLocationChanged(@NonNull final Location location) {
+        synchronized (mLock) {
+            final long now = SystemClock.elapsedRealtime();
+            updateSpeed(location);
+
+            if (mMode == null || now - mModeTime < mMinSwitchInterval) return false;
+
+            final Mode mode = evaluate(now);
+            if (mode == mMode) return false;
+
+            CoreLogger.log("location policy mode " + mMode + " -> " + mode);
+            return true;
+        }
+    }
+
+    /**
+     * Re-evaluates the mode when the application goes to foreground or background
+     * (regardless of the {@link #setMinSwitchInterval min switch interval}).
+     *
+     * @param foreground
+     *        {@code true} if the application is in foreground now, {@code false} otherwise
+     *
+     * @return  {@code true} if the mode was changed (so the location updates should be re-requested),
+     * {@code false} otherwise
+     */
+    public boolean onForegroundChanged(final boolean foreground) {
+        synchronized (mLock) {
+            mForeground = foreground;
+            if (mMode == null) return false;
+
+            final Mode mode = evaluate(SystemClock.elapsedRealtime());
+            if (mode == mMode) return false;
+
+            CoreLogger.log("location policy mode " + mMode + " -> " + mode + ", foreground " + foreground);
+            return true;
+        }
+    }
+
+    // the fix times are used (not the arrival ones), so the batched fixes don't distort the speed
+    private void updateSpeed(@NonNull final Location location) {
+        final long time = LocationFilter.getFixTime(location);
+
+        double speed = -1;
+        if (location.hasSpeed())
+            speed = location.getSpeed();
+        else if (mHasLast && time > mLastTime) {
+            Location.distanceBetween(mLastLatitude, mLastLongitude,
+                    location.getLatitude(), location.getLongitude(), mDistance);
+            speed = mDistance[0] * 1000d / (time - mLastTime);
+        }
+
+        if (speed >= 0) mSpeed = mSpeed < 0 ? speed: mSpeed + SMOOTHING * (speed - mSpeed);
+
+        mHasLast        = true;
+        mLastLatitude   = location.getLatitude();
+        mLastLongitude  = location.getLongitude();
+        mLastTime       = time;
+    }
+
+    @NonNull
+    private Mode evaluate(final long now) {
+        if (isBatteryLow(now))      return Mode.LOW_BATTERY;
+        if (!(mForeground != null ? mForeground: Core.isInForeground())) return Mode.BACKGROUND;
+
+        return mSpeed < SPEED_WALKING ? Mode.STATIONARY: mSpeed < SPEED_DRIVING ? Mode.WALKING: Mode.DRIVING;
+    }
+
+    private boolean isBatteryLow(final long now) {
+        if (mLowBattery <= 0) return false;
+        if (mBatteryTime != 0 && now - mBatteryTime < BATTERY_CHECK_INTERVAL) return mBatteryLow;
+
+        mBatteryTime = now;
+        try {
+            // the broadcast is sticky, so there's no need to register the receiver
+            final Context context = Utils.getApplication();
+            final Intent intent = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+            if (intent == null) return mBatteryLow = false;
+
+            final int level  = intent.getIntExtra(BatteryManager.EXTRA_LEVEL , -1);
+            final int scale  = intent.getIntExtra(BatteryManager.EXTRA_SCALE , -1);
+            final int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+
+            final boolean charging = status == BatteryManager.BATTERY_STATUS_CHARGING ||
+                                     status == BatteryManager.BATTERY_STATUS_FULL;
+
+            mBatteryLow = !charging && level >= 0 && scale > 0 && level * 100 / scale <= mLowBattery;
+        }
+        catch (Exception exception) {
+            CoreLogger.log("battery check failed", exception);
+            mBatteryLow = false;
+        }
+        return mBatteryLow;
+    }
+}
@@ -0,0 +1,532 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.location;
+
+import akha.yakhont.Core.Utils;
+import akha.yakhont.CoreLogger;
+import akha.yakhont.technology.rx.FlowableRows;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.location.Location;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.Flowable;
+import io.reactivex.functions.Function;
+
+/**
+ * Records the location track: the fixes are kept in the preallocated in-memory ring buffer (so the recording
+ * doesn't allocate and doesn't depend on the track length) and periodically flushed in batches
+ * (one transaction per batch) to the {@link akha.yakhont.BaseCacheProvider BaseCacheProvider} table.
+ * The recorded track could be queried by the time window, optionally decimated (e.g. for the playback
+ * or for drawing the long track). For example:
+ *
+ * <p><pre style="background-color: silver; border: thin solid black;">
+ * import akha.yakhont.location.LocationCallbacks;
+ * import akha.yakhont.location.LocationTrack;
+ *
+ * LocationTrack track = new LocationTrack(getApplicationContext());
+ * LocationCallbacks.getLocationCallbacks(activity).setLocationTrack(track);
+ * ...
+ *
+ * // in background thread: the last hour of the track, not more than one fix per 10 seconds
+ * List&lt;Location&gt; locations = track.query(now - 60 * 60 * 1000, now, 10 * 1000);
+ * </pre>
+ *
+ * If the buffer overflows (i.e. the fixes are recorded faster than flushed) the oldest fixes are dropped.
+ *
+ * @see LocationCallbacks#setLocationTrack
+ *
+ * @author akha
+ */
+public class LocationTrack {
+
+    /** The default name of the track table. */
+    @SuppressWarnings("WeakerAccess")
+    public  static final String                         TABLE_NAME_DEFAULT          = "yakhont_track";
+
+    /** The default capacity of the in-memory buffer (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final int                            CAPACITY_DEFAULT            = 256;
+
+    /** The default flush interval (in milliseconds), the value is {@value}. */
+    @SuppressWarnings("WeakerAccess")
+    public  static final int                            FLUSH_INTERVAL_DEFAULT      = 30 * 1000;
+
+    private static final String                         PROVIDER                    = "track";
+    private static final long                           FLUSH_TIMEOUT               = 10 * 1000;
+
+    private static final String                         COLUMN_TIME                 = "fix_time";
+    private static final String                         COLUMN_LATITUDE             = "latitude";
+    private static final String                         COLUMN_LONGITUDE            = "longitude";
+    private static final String                         COLUMN_ACCURACY             = "accuracy";
+    private static final String                         COLUMN_ALTITUDE             = "altitude";
+    private static final String                         COLUMN_SPEED                = "speed";
+    private static final String                         COLUMN_BEARING              = "bearing";
+
+    private static final String[]                       PROJECTION                  = new String[] {
+            COLUMN_TIME, COLUMN_LATITUDE, COLUMN_LONGITUDE,
+            COLUMN_ACCURACY, COLUMN_ALTITUDE, COLUMN_SPEED, COLUMN_BEARING};
+
+    // the columns are created on demand (with TEXT affinity), so the numeric comparison is forced
+    private static final String                         TIME                        =
+            "CAST(" + COLUMN_TIME + " AS INTEGER)";
+    private static final String                         SELECTION_WINDOW            = TIME + " BETWEEN ? AND ?";
+    private static final String                         SELECTION_BEFORE            = TIME + " < ?";
+    private static final String                         SELECTION_DECIMATED         = BaseColumns._ID +
+            " IN (SELECT MIN(" + BaseColumns._ID + ") FROM %s WHERE " + SELECTION_WINDOW + " GROUP BY " + TIME + " / %d)";
+    private static final String                         SORT_ORDER                  = TIME + ", " + BaseColumns._ID;
+
+    // bit flags of the optional values
+    private static final int                            HAS_ACCURACY                = 1;
+    private static final int                            HAS_ALTITUDE                = 2;
+    private static final int                            HAS_SPEED                   = 4;
+    private static final int                            HAS_BEARING                 = 8;
+
+    private        final ContentResolver                mContentResolver;
+    private        final Uri                            mUri;
+    private        final String                         mTableName;
+
+    private        final ScheduledExecutorService       mExecutor                   =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "yakhont-track");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private        final AtomicBoolean                  mClosed                     = new AtomicBoolean();
+
+    private        final Runnable                       mFlush                      = new Runnable() {
+        @Override
+        public void run() {
+            flushNotSafe();
+        }
+    };
+
+    // the ring buffer
+    private        final Object                         mLock                       = new Object();
+    private        final int                            mCapacity;
+    private        final long       []                  mTimes;
+    private        final double     []                  mLatitudes;
+    private        final double     []                  mLongitudes;
+    private        final float      []                  mAccuracies;
+    private        final double     []                  mAltitudes;
+    private        final float      []                  mSpeeds;
+    private        final float      []                  mBearings;
+    private        final int        []                  mFlags;
+    private        final RingBuffer                     mBuffer;
+
+    /**
+     * Initialises a newly created {@code LocationTrack} object with the default parameters.
+     *
+     * @param context
+     *        The context
+     */
+    @SuppressWarnings("unused")
+    public LocationTrack(@NonNull final Context context) {
+        this(context, TABLE_NAME_DEFAULT, CAPACITY_DEFAULT, FLUSH_INTERVAL_DEFAULT);
+    }
+
+    /**
+     * Initialises a newly created {@code LocationTrack} object.
+     *
+     * @param context
+     *        The context
+     *
+     * @param tableName
+     *        The name of the track table, e.g. {@link #TABLE_NAME_DEFAULT}
+     *
+     * @param capacity
+     *        The capacity of the in-memory buffer, e.g. {@link #CAPACITY_DEFAULT}
+     *
+     * @param flushInterval
+     *        The flush interval (in milliseconds), e.g. {@link #FLUSH_INTERVAL_DEFAULT}
+     */
+    @SuppressWarnings("WeakerAccess")
+    public LocationTrack(@NonNull final Context context, @NonNull final String tableName,
+                         @IntRange(from = 1) final int capacity, @IntRange(from = 1) final long flushInterval) {
+        mContentResolver    = context.getApplicationContext().getContentResolver();
+        mTableName          = tableName;
+        mUri                = Utils.getUri(tableName);
+
+        mCapacity           = Math.max(capacity, 1);
+        mTimes              = new long  [mCapacity];
+        mLatitudes          = new double[mCapacity];
+        mLongitudes         = new double[mCapacity];
+        mAccuracies         = new float [mCapacity];
+        mAltitudes          = new double[mCapacity];
+        mSpeeds             = new float [mCapacity];
+        mBearings           = new float [mCapacity];
+        mFlags              = new int   [mCapacity];
+        mBuffer             = new RingBuffer(mCapacity);
+
+        mExecutor.scheduleWithFixedDelay(mFlush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records the location fix (doesn't allocate and doesn't block on the database).
+     *
+     * @param location
+     *        The location fix
+     */
+    public void record(@NonNull final Location location) {
+        if (mClosed.get()) {
+            CoreLogger.log("track is closed, location skipped");
+            return;
+        }
+        final boolean flush;
+        synchronized (mLock) {
+            final int index = mBuffer.add();
+
+            mTimes     [index] = location.getTime() > 0 ? location.getTime(): System.currentTimeMillis();
+            mLatitudes [index] = location.getLatitude();
+            mLongitudes[index] = location.getLongitude();
+            mAccuracies[index] = location.getAccuracy();
+            mAltitudes [index] = location.getAltitude();
+            mSpeeds    [index] = location.getSpeed();
+            mBearings  [index] = location.getBearing();
+            mFlags     [index] = (location.hasAccuracy() ? HAS_ACCURACY: 0) | (location.hasAltitude() ? HAS_ALTITUDE: 0) |
+                                 (location.hasSpeed()    ? HAS_SPEED   : 0) | (location.hasBearing()  ? HAS_BEARING : 0);
+
+            flush = mBuffer.isFlushNeeded();
+        }
+        if (flush) flushAsync();
+    }
+
+    /**
+     * Flushes the recorded fixes to the database (asynchronously).
+     */
+    @SuppressWarnings("unused")
+    public void flush() {
+        flushAsync();
+    }
+
+    private void flushAsync() {
+        try {
+            if (!mExecutor.isShutdown()) mExecutor.execute(mFlush);
+        }
+        catch (RejectedExecutionException exception) {      // closed concurrently
+            CoreLogger.log("track is closed, flush skipped", exception);
+        }
+    }
+
+    private void flushNotSafe() {
+        final ContentValues[] bulkValues;
+        synchronized (mLock) {
+            final int size = mBuffer.startCopy();
+            if (size == 0) return;
+
+            bulkValues = new ContentValues[size];
+            for (int i = 0, index = mBuffer.getFirst(); i < bulkValues.length; i++, index = mBuffer.getNext(index))
+                bulkValues[i] = toContentValues(index);
+        }
+
+        int inserted = 0;
+        try {
+            // BaseCacheProvider inserts all rows in one transaction
+            inserted = mContentResolver.bulkInsert(mUri, bulkValues);
+        }
+        catch (Exception exception) {
+            CoreLogger.log("track flush failed", exception);
+        }
+        if (inserted != bulkValues.length) {
+            CoreLogger.logError(String.format(CoreLogger.getLocale(), "track flush: %d fixes, %d inserted",
+                    bulkValues.length, inserted));
+            return;                         // will be retried with the next flush
+        }
+
+        synchronized (mLock) {
+            mBuffer.onFlushed();
+        }
+    }
+
+    @NonNull
+    private ContentValues toContentValues(final int index) {
+        final ContentValues values = new ContentValues();
+        final int flags = mFlags[index];
+
+        values.put(COLUMN_TIME     , mTimes     [index]);
+        values.put(COLUMN_LATITUDE , mLatitudes [index]);
+        values.put(COLUMN_LONGITUDE, mLongitudes[index]);
+
+        if ((flags & HAS_ACCURACY) != 0) values.put(COLUMN_ACCURACY, mAccuracies[index]); else values.putNull(COLUMN_ACCURACY);
+        if ((flags & HAS_ALTITUDE) != 0) values.put(COLUMN_ALTITUDE, mAltitudes [index]); else values.putNull(COLUMN_ALTITUDE);
+        if ((flags & HAS_SPEED   ) != 0) values.put(COLUMN_SPEED   , mSpeeds    [index]); else values.putNull(COLUMN_SPEED   );
+        if ((flags & HAS_BEARING ) != 0) values.put(COLUMN_BEARING , mBearings  [index]); else values.putNull(COLUMN_BEARING );
+
+        return values;
+    }
+
+    /**
+     * Returns the number of fixes which were dropped because of the buffer overflow.
+     *
+     * @return  The number of dropped fixes
+     */
+    @SuppressWarnings("unused")
+    public long getDropped() {
+        synchronized (mLock) {
+            return mBuffer.getDropped();
+        }
+    }
+
+    /**
+     * Returns the track for the given time window (the not flushed fixes are flushed first).
+     *
+     * @param from
+     *        The start of the time window (in milliseconds since January 1, 1970 UTC)
+     *
+     * @param to
+     *        The end of the time window (in milliseconds since January 1, 1970 UTC)
+     *
+     * @return  The location fixes, ordered by time
+     */
+    @NonNull
+    @WorkerThread
+    @SuppressWarnings("unused")
+    public List<Location> query(final long from, final long to) {
+        return query(from, to, 0);
+    }
+
+    /**
+     * Returns the decimated track for the given time window: not more than one fix (the first one)
+     * per the given interval. The decimation is done by the database, so the size of the result doesn't depend
+     * on the track length. The not flushed fixes are flushed first.
+     *
+     * @param from
+     *        The start of the time window (in milliseconds since January 1, 1970 UTC)
+     *
+     * @param to
+     *        The end of the time window (in milliseconds since January 1, 1970 UTC)
+     *
+     * @param interval
+     *        The decimation interval (in milliseconds), or 0 for no decimation
+     *
+     * @return  The location fixes, ordered by time
+     */
+    @NonNull
+    @WorkerThread
+    @SuppressWarnings("WeakerAccess")
+    public List<Location> query(final long from, final long to, @IntRange(from = 0) final long interval) {
+        final List<Location> locations = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = queryCursor(from, to, interval);
+            while (cursor != null && cursor.moveToNext())
+                locations.add(toLocation(cursor));
+        }
+        catch (Exception exception) {
+            CoreLogger.log("track query failed", exception);
+        }
+        finally {
+            if (cursor != null) cursor.close();
+        }
+        return locations;
+    }
+
+    /**
+     * Creates the {@link Flowable} which emits the decimated track for the given time window (please refer to
+     * {@link #query(long, long, long)}); the fixes are read from the database as they are requested, so
+     * the long tracks could be played back in constant memory.
+     *
+     * @param from
+     *        The start of the time window (in milliseconds since January 1, 1970 UTC)
+     *
+     * @param to
+     *        The end of the time window (in milliseconds since January 1, 1970 UTC)
+     *
+     * @param interval
+     *        The decimation interval (in milliseconds), or 0 for no decimation
+     *
+     * @return  The {@link Flowable} (which should be subscribed on the background thread)
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Flowable<Location> playback(final long from, final long to, @IntRange(from = 0) final long interval) {
+        return FlowableRows.fromCursor(new Callable<Cursor>() {
+            @Override
+            public Cursor call() throws Exception {
+                return queryCursor(from, to, interval);
+            }
+        }, new Function<Cursor, Location>() {
+            @Override
+            public Location apply(@io.reactivex.annotations.NonNull final Cursor cursor) throws Exception {
+                return toLocation(cursor);
+            }
+        });
+    }
+
+    private Cursor queryCursor(final long from, final long to, final long interval) throws InterruptedException {
+        flushSync();
+
+        final String[] args = new String[] {String.valueOf(from), String.valueOf(to)};
+        return mContentResolver.query(mUri, PROJECTION, interval <= 0 ? SELECTION_WINDOW:
+                String.format(CoreLogger.getLocale(), SELECTION_DECIMATED, mTableName, interval), args, SORT_ORDER);
+    }
+
+    private void flushSync() throws InterruptedException {
+        // closed: the last flush was already queued, so just wait for it
+        if (mExecutor.isShutdown()) {
+            mExecutor.awaitTermination(FLUSH_TIMEOUT, TimeUnit.MILLISECONDS);
+            return;
+        }
+        try {
+            mExecutor.submit(mFlush).get();
+        }
+        catch (ExecutionException | RejectedExecutionException exception) {
+            CoreLogger.log("track flush failed", exception);
+        }
+    }
+
+    @NonNull
+    private static Location toLocation(@NonNull final Cursor cursor) {
+        final Location location = new Location(PROVIDER);
+
+        location.setTime     (cursor.getLong  (0));
+        location.setLatitude (cursor.getDouble(1));
+        location.setLongitude(cursor.getDouble(2));
+
+        if (!cursor.isNull(3)) location.setAccuracy(cursor.getFloat (3));
+        if (!cursor.isNull(4)) location.setAltitude(cursor.getDouble(4));
+        if (!cursor.isNull(5)) location.setSpeed   (cursor.getFloat (5));
+        if (!cursor.isNull(6)) location.setBearing (cursor.getFloat (6));
+
+        return location;
+    }
+
+    /**
+     * Deletes the recorded fixes which are older than the given time.
+     *
+     * @param time
+     *        The time (in milliseconds since January 1, 1970 UTC)
+     *
+     * @return  The number of deleted fixes
+     */
+    @WorkerThread
+    @SuppressWarnings("unused")
+    public int deleteBefore(final long time) {
+        try {
+            flushSync();
+            return mContentResolver.delete(mUri, SELECTION_BEFORE, new String[] {String.valueOf(time)});
+        }
+        catch (Exception exception) {
+            CoreLogger.log("track delete failed", exception);
+            return 0;
+        }
+    }
+
+    /**
+     * Flushes the recorded fixes and stops the periodic flushing. The fixes recorded after closing are ignored.
+     */
+    @SuppressWarnings("unused")
+    public void close() {
+        if (!mClosed.compareAndSet(false, true)) return;
+
+        flushAsync();
+        mExecutor.shutdown();
+    }
+
+    /**
+     * The ring buffer positions bookkeeping (the fixes themselves are kept in the {@code LocationTrack} arrays).
+     * Not thread-safe: all calls should be guarded by the {@code LocationTrack} lock.
+     */
+    // package-private for unit tests
+    static class RingBuffer {
+
+        private final int                           mCapacity;
+
+        private       int                           mHead;              // the next write position
+        private       int                           mSize;              // the number of not flushed fixes
+        private       int                           mRecordedSinceCopy;
+        private       boolean                       mFlushRequested;
+        private       long                          mDropped;
+
+        RingBuffer(final int capacity) {
+            mCapacity = capacity;
+        }
+
+        // returns the position to write the fix to
+        int add() {
+            final int index = mHead;
+
+            mHead = getNext(index);
+            mRecordedSinceCopy++;
+
+            if (mSize < mCapacity)
+                mSize++;
+            else
+                mDropped++;                     // the oldest fix was overwritten
+
+            return index;
+        }
+
+        // flush in advance, before the buffer overflows
+        boolean isFlushNeeded() {
+            if (mFlushRequested || mSize < mCapacity - mCapacity / 4) return false;
+
+            mFlushRequested = true;
+            return true;
+        }
+
+        // returns the number of fixes to copy (starting from the first one)
+        int startCopy() {
+            mFlushRequested = false;
+            if (mSize > 0) mRecordedSinceCopy = 0;
+            return mSize;
+        }
+
+        void onFlushed() {
+            // the fixes recorded during the flush are kept (if the buffer was wrapped, the flushed ones are lost anyway)
+            mSize = Math.min(mSize, mRecordedSinceCopy);
+        }
+
+        int getFirst() {
+            return (mHead - mSize + mCapacity) % mCapacity;
+        }
+
+        int getNext(final int index) {
+            return (index + 1) % mCapacity;
+        }
+
+        int getSize() {
+            return mSize;
+        }
+
+        long getDropped() {
+            return mDropped;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.technology.retrofit;
+
+import akha.yakhont.Core.Utils;
+import akha.yakhont.CoreLogger;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Connection;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * The OkHttp network interceptor which collects per-host connection reuse metrics: the number of requests,
+ * the number of new connections (and TLS handshakes) and the number of requests which reused
+ * already established connections. Registered automatically by
+ * {@link Retrofit2#getDefaultOkHttpClientBuilder(int, int, Map, Map) Retrofit2.getDefaultOkHttpClientBuilder()}.
+ *
+ * @see Retrofit2#getConnectionMetrics
+ *
+ * @author akha
+ */
+public class ConnectionMetrics implements Interceptor {
+
+    private final Map<String, HostStats>            mHosts              = Utils.newMap();
+    private final Map<Connection, Boolean>          mConnections        = Utils.newWeakMap();
+
+    /**
+     * Initialises a newly created {@code ConnectionMetrics} object.
+     */
+    public ConnectionMetrics() {
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    public Response intercept(@NonNull final Chain chain) throws IOException {
+        final Connection connection = chain.connection();
+        if (connection != null) {
+            final boolean isNew = mConnections.put(connection, Boolean.TRUE) == null;
+            getHostStats(chain.request().url().host()).add(isNew, isNew && connection.handshake() != null);
+        }
+        return chain.proceed(chain.request());
+    }
+
+    @NonNull
+    private HostStats getHostStats(@NonNull final String host) {
+        synchronized (mHosts) {
+            HostStats stats = mHosts.get(host);
+            if (stats == null) {
+                stats = new HostStats(host);
+                mHosts.put(host, stats);
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * Returns the metrics of the given host.
+     *
+     * @param host
+     *        The host name
+     *
+     * @return  The HostStats (or null if there were no requests to the host)
+     */
+    @SuppressWarnings("unused")
+    public HostStats getStats(@NonNull final String host) {
+        synchronized (mHosts) {
+            return mHosts.get(host);
+        }
+    }
+
+    /**
+     * Returns the metrics of all hosts.
+     *
+     * @return  The list of HostStats
+     */
+    @NonNull
+    public List<HostStats> getStats() {
+        synchronized (mHosts) {
+            return new ArrayList<>(mHosts.values());
+        }
+    }
+
+    /**
+     * Clears all collected metrics.
+     */
+    @SuppressWarnings("unused")
+    public void reset() {
+        synchronized (mHosts) {
+            mHosts.clear();
+        }
+    }
+
+    /**
+     * Logs all collected metrics.
+     */
+    @SuppressWarnings("unused")
+    public void log() {
+        for (final HostStats stats: getStats())
+            CoreLogger.log(stats.toString());
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The connection reuse metrics of the host.
+     */
+    public static class HostStats {
+
+        private final String                        mHost;
+
+        private       long                          mRequests;
+        private       long                          mConnections;
+        private       long                          mHandshakes;
+
+        private HostStats(@NonNull final String host) {
+            mHost = host;
+        }
+
+        private synchronized void add(final boolean isNew, final boolean isHandshake) {
+            mRequests++;
+            if (isNew)       mConnections++;
+            if (isHandshake) mHandshakes++;
+        }
+
+        /**
+         * Returns the host name.
+         *
+         * @return  The host name
+         */
+        @NonNull
+        @SuppressWarnings("unused")
+        public String getHost() {
+            return mHost;
+        }
+
+        /**
+         * Returns the number of network requests.
+         *
+         * @return  The number of requests
+         */
+        public synchronized long getRequests() {
+            return mRequests;
+        }
+
+        /**
+         * Returns the number of new connections.
+         *
+         * @return  The number of connections
+         */
+        public synchronized long getConnections() {
+            return mConnections;
+        }
+
+        /**
+         * Returns the number of TLS handshakes.
+         *
+         * @return  The number of handshakes
+         */
+        public synchronized long getHandshakes() {
+            return mHandshakes;
+        }
+
+        /**
+         * Returns the number of requests which reused already established connections.
+         *
+         * @return  The number of reused connections
+         */
+        public synchronized long getReused() {
+            return mRequests - mConnections;
+        }
+
+        /**
+         * Please refer to the base method description.
+         */
+        @Override
+        public synchronized String toString() {
+            return String.format(CoreLogger.getLocale(), "host %s: requests %d, connections %d, " +
+                    "handshakes %d, reused %d", mHost, mRequests, mConnections, mHandshakes, getReused());
+        }
+    }
+}
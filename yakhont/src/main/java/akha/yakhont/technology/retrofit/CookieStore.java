@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.technology.retrofit;
+
+import akha.yakhont.Core.Utils;
+import akha.yakhont.CoreLogger;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import okhttp3.Cookie;
+import okhttp3.CookieJar;
+import okhttp3.HttpUrl;
+
+/**
+ * The {@link CookieJar} which keeps cookies indexed by domain (so the lookup doesn't depend on the number
+ * of distinct URLs), evicts expired cookies and the least recently used ones (if the size limit is exceeded).
+ * Optionally, persistent cookies are stored in {@link SharedPreferences}, so sessions survive application restarts.
+ * For example:
+ *
+ * <p><pre style="background-color: silver; border: thin solid black;">
+ * import akha.yakhont.technology.retrofit.CookieStore;
+ * import akha.yakhont.technology.retrofit.Retrofit2;
+ *
+ * Retrofit2&lt;MyRetrofitApi&gt; retrofit = new Retrofit2&lt;&gt;();
+ * retrofit.setCookieStore(new CookieStore(getApplicationContext(), CookieStore.MAX_SIZE_DEFAULT));
+ * retrofit.init(MyRetrofitApi.class, "http://.../");
+ * </pre>
+ *
+ * @author akha
+ */
+public class CookieStore implements CookieJar {
+
+    /** The default maximum number of cookies in store (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final int                            MAX_SIZE_DEFAULT        = 300;
+
+    private static final String                         PREFERENCES_NAME        = "yakhont_cookies";
+    private static final int                            STATIC_COOKIES_HOSTS    = 16;
+
+    private        final int                            mMaxSize;
+    private        final SharedPreferences              mPreferences;
+
+    // access-ordered, for LRU eviction
+    private        final LinkedHashMap<String, Cookie>  mCookies                 = new LinkedHashMap<>(16, 0.75f, true);
+    private        final Map<String, Set<String>>       mDomains                 = new LinkedHashMap<>();
+
+    private        final Map<String, String>            mStaticCookies           = Utils.newMap();
+    private        final LinkedHashMap<String, List<Cookie>>
+                                                        mStaticCookiesCache      = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Initialises a newly created in-memory {@code CookieStore} object.
+     *
+     * @param maxSize
+     *        The maximum number of cookies, e.g. {@link #MAX_SIZE_DEFAULT}
+     */
+    public CookieStore(@IntRange(from = 1) final int maxSize) {
+        this(null, maxSize);
+    }
+
+    /**
+     * Initialises a newly created {@code CookieStore} object.
+     *
+     * @param context
+     *        The context to persist cookies (or null for in-memory store)
+     *
+     * @param maxSize
+     *        The maximum number of cookies, e.g. {@link #MAX_SIZE_DEFAULT}
+     */
+    public CookieStore(final Context context, @IntRange(from = 1) final int maxSize) {
+        mMaxSize        = maxSize;
+        mPreferences    = context == null ? null:
+                context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+
+        if (mPreferences != null) restore();
+    }
+
+    /**
+     * Sets the cookies to send with every request (they replace the stored cookies with the same names).
+     *
+     * @param cookies
+     *        The cookies names and values (or null)
+     */
+    @SuppressWarnings("WeakerAccess")
+    public void setStaticCookies(final Map<String, String> cookies) {
+        synchronized (mStaticCookiesCache) {
+            mStaticCookies.clear();
+            if (cookies != null) mStaticCookies.putAll(cookies);
+
+            mStaticCookiesCache.clear();
+        }
+    }
+
+    /**
+     * Creates the static cookie (please refer to {@link #setStaticCookies}).
+     *
+     * @param name
+     *        The name
+     *
+     * @param value
+     *        The value
+     *
+     * @param url
+     *        The url
+     *
+     * @return  The cookie
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected Cookie createCookie(final String name, final String value, final HttpUrl url) {
+        return new Cookie.Builder()
+                .domain(url.host())
+                .name(name)
+                .value(value)
+                .build();
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    public void saveFromResponse(final HttpUrl url, final List<Cookie> cookies) {
+        if (cookies == null || cookies.isEmpty()) return;
+
+        final long now = System.currentTimeMillis();
+        final SharedPreferences.Editor editor = mPreferences == null ? null: mPreferences.edit();
+
+        synchronized (mCookies) {
+            for (final Cookie cookie: cookies) {
+                final String key = getKey(cookie);
+                remove(key, editor);
+
+                if (cookie.expiresAt() <= now) continue;        // that's how servers delete cookies
+
+                mCookies.put(key, cookie);
+                getDomainKeys(cookie.domain()).add(key);
+
+                if (editor != null && cookie.persistent()) editor.putString(key, cookie.toString());
+            }
+
+            final Iterator<String> iterator = mCookies.keySet().iterator();
+            for (int i = mCookies.size() - mMaxSize; i > 0 && iterator.hasNext(); i--) {
+                final String key = iterator.next();
+                CoreLogger.log("cookie evicted: " + key);
+
+                iterator.remove();
+                removeFromDomain(key);
+                if (editor != null) editor.remove(key);
+            }
+        }
+
+        if (editor != null) editor.apply();
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    public List<Cookie> loadForRequest(final HttpUrl url) {
+        final List<Cookie> staticCookies = getStaticCookies(url);
+        final List<Cookie> list = new ArrayList<>(staticCookies);
+
+        final long now = System.currentTimeMillis();
+        SharedPreferences.Editor editor = null;
+
+        synchronized (mCookies) {
+            // the host itself and all its parent domains
+            for (String domain = url.host(); domain != null; domain = getParentDomain(domain)) {
+                final Set<String> keys = mDomains.get(domain);
+                if (keys == null) continue;
+
+                for (final String key: new ArrayList<>(keys)) {
+                    final Cookie cookie = mCookies.get(key);
+                    if (cookie == null) continue;
+
+                    if (cookie.expiresAt() <= now) {
+                        if (editor == null && mPreferences != null) editor = mPreferences.edit();
+                        remove(key, editor);
+                        continue;
+                    }
+                    if (cookie.matches(url) && !contains(staticCookies, cookie.name())) list.add(cookie);
+                }
+            }
+        }
+
+        if (editor != null) editor.apply();
+        return list;
+    }
+
+    /**
+     * Removes all cookies (including the persisted ones).
+     */
+    @SuppressWarnings("unused")
+    public void clear() {
+        synchronized (mCookies) {
+            mCookies.clear();
+            mDomains.clear();
+        }
+        if (mPreferences != null) mPreferences.edit().clear().apply();
+    }
+
+    /**
+     * Returns the number of stored cookies.
+     *
+     * @return  The number of cookies
+     */
+    @SuppressWarnings("unused")
+    public int size() {
+        synchronized (mCookies) {
+            return mCookies.size();
+        }
+    }
+
+    @NonNull
+    private List<Cookie> getStaticCookies(@NonNull final HttpUrl url) {
+        synchronized (mStaticCookiesCache) {
+            if (mStaticCookies.isEmpty()) return Collections.emptyList();
+
+            final String host = url.host();
+            List<Cookie> cookies = mStaticCookiesCache.get(host);
+            if (cookies != null) return cookies;
+
+            cookies = new ArrayList<>();
+            for (final Map.Entry<String, String> entry: mStaticCookies.entrySet())
+                try {
+                    cookies.add(createCookie(entry.getKey(), entry.getValue(), url));
+                }
+                catch (Exception exception) {
+                    CoreLogger.log("createCookie failed", exception);
+                }
+
+            mStaticCookiesCache.put(host, cookies);
+
+            final Iterator<String> iterator = mStaticCookiesCache.keySet().iterator();
+            for (int i = mStaticCookiesCache.size() - STATIC_COOKIES_HOSTS; i > 0 && iterator.hasNext(); i--) {
+                iterator.next();
+                iterator.remove();
+            }
+            return cookies;
+        }
+    }
+
+    private static boolean contains(@NonNull final List<Cookie> cookies, @NonNull final String name) {
+        for (final Cookie cookie: cookies)
+            if (cookie.name().equalsIgnoreCase(name)) return true;
+        return false;
+    }
+
+    private static String getParentDomain(@NonNull final String domain) {
+        final int index = domain.indexOf('.');
+        return index < 0 || index == domain.length() - 1 ? null: domain.substring(index + 1);
+    }
+
+    @NonNull
+    private static String getKey(@NonNull final Cookie cookie) {
+        return cookie.domain() + ";" + cookie.path() + ";" + cookie.name();
+    }
+
+    @NonNull
+    private Set<String> getDomainKeys(@NonNull final String domain) {
+        Set<String> keys = mDomains.get(domain);
+        if (keys == null) {
+            keys = Utils.newSet();
+            mDomains.put(domain, keys);
+        }
+        return keys;
+    }
+
+    private void remove(@NonNull final String key, final SharedPreferences.Editor editor) {
+        if (mCookies.remove(key) == null) return;
+
+        removeFromDomain(key);
+        if (editor != null) editor.remove(key);
+    }
+
+    private void removeFromDomain(@NonNull final String key) {
+        final String domain = key.substring(0, key.indexOf(';'));
+
+        final Set<String> keys = mDomains.get(domain);
+        if (keys == null) return;
+
+        keys.remove(key);
+        if (keys.isEmpty()) mDomains.remove(domain);
+    }
+
+    private void restore() {
+        final long now = System.currentTimeMillis();
+        final SharedPreferences.Editor editor = mPreferences.edit();
+
+        synchronized (mCookies) {
+            for (final Map.Entry<String, ?> entry: mPreferences.getAll().entrySet()) {
+                final String key = entry.getKey();
+                final Cookie cookie = parse(key, entry.getValue());
+
+                if (cookie == null || cookie.expiresAt() <= now) {
+                    editor.remove(key);
+                    continue;
+                }
+                mCookies.put(key, cookie);
+                getDomainKeys(cookie.domain()).add(key);
+            }
+        }
+        editor.apply();
+
+        CoreLogger.log("cookies restored: " + mCookies.size());
+    }
+
+    private static Cookie parse(@NonNull final String key, final Object value) {
+        final String[] parts = key.split(";", 3);
+        if (parts.length != 3 || !(value instanceof String)) return null;
+
+        try {
+            final HttpUrl url = new HttpUrl.Builder().scheme("https").host(parts[0]).encodedPath(parts[1]).build();
+            return Cookie.parse(url, (String) value);
+        }
+        catch (Exception exception) {
+            CoreLogger.log("can not restore cookie " + key, exception);
+            return null;
+        }
+    }
+}
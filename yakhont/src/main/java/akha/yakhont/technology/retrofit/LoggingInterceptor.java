@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.technology.retrofit;
+
+import akha.yakhont.Core.Utils;
+import akha.yakhont.CoreLogger;
+
+import android.support.annotation.FloatRange;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import okio.Buffer;
+
+/**
+ * The OkHttp interceptor which logs HTTP requests and responses. In contrast to the
+ * {@code HttpLoggingInterceptor}, the logged bodies are capped (so the large responses are never
+ * buffered entirely), the requests could be sampled, the logging level could be set per endpoint,
+ * and the log is written asynchronously (in the low priority background thread), so instrumented builds
+ * stay representative of the production performance. For example:
+ *
+ * <p><pre style="background-color: silver; border: thin solid black;">
+ * import akha.yakhont.technology.retrofit.LoggingInterceptor;
+ * import akha.yakhont.technology.retrofit.LoggingInterceptor.Level;
+ * import akha.yakhont.technology.retrofit.Retrofit2;
+ *
+ * LoggingInterceptor logger = new LoggingInterceptor(Level.BODY)
+ *     .setMaxBodySize(2048)
+ *     .setSamplingRate(0.1)
+ *     .setLevel("http://.../images/", Level.HEADERS);
+ *
+ * Retrofit2&lt;MyRetrofitApi&gt; retrofit = new Retrofit2&lt;&gt;();
+ * retrofit.setLoggingInterceptor(logger);
+ * retrofit.init(MyRetrofitApi.class, "http://.../");
+ * </pre>
+ *
+ * @see Retrofit2#setLoggingInterceptor
+ *
+ * @author akha
+ */
+public class LoggingInterceptor implements Interceptor {
+
+    /**
+     * The logging levels.
+     */
+    public enum Level {
+        /** No logging. */
+        NONE,
+        /** The request and response lines only. */
+        BASIC,
+        /** The request and response lines and headers. */
+        HEADERS,
+        /** The request and response lines, headers and (capped) bodies. */
+        BODY
+    }
+
+    /** The default maximum number of body bytes to log (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final long                           MAX_BODY_SIZE_DEFAULT       = 4096;
+
+    private static final int                            QUEUE_SIZE                  = 256;
+    private static final Charset                        UTF8                        = Charset.forName("UTF-8");
+
+    private static final Random                         sRandom                     = new Random();
+    private static final AtomicLong                     sDropped                    = new AtomicLong();
+
+    private static final ThreadPoolExecutor             sExecutor                   = new ThreadPoolExecutor(
+            1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(QUEUE_SIZE),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "yakhont-http-log");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            },
+            new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(final Runnable runnable, final ThreadPoolExecutor executor) {
+                    sDropped.incrementAndGet();         // never block the network thread
+                }
+            });
+
+    private        final Map<String, Level>             mEndpoints                  = Utils.newMap();
+
+    private volatile     Level                          mLevel;
+    private volatile     long                           mMaxBodySize                = MAX_BODY_SIZE_DEFAULT;
+    private volatile     double                         mSamplingRate               = 1;
+
+    /**
+     * Initialises a newly created {@code LoggingInterceptor} object.
+     *
+     * @param level
+     *        The default logging level
+     */
+    public LoggingInterceptor(@NonNull final Level level) {
+        mLevel = level;
+    }
+
+    /**
+     * Sets the default logging level.
+     *
+     * @param level
+     *        The logging level
+     *
+     * @return  This {@code LoggingInterceptor} object to allow for chaining of calls to set methods
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public LoggingInterceptor setLevel(@NonNull final Level level) {
+        mLevel = level;
+        return this;
+    }
+
+    /**
+     * Returns the default logging level.
+     *
+     * @return  The logging level
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Level getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * Sets the logging level for the given endpoint (if several endpoints match, the longest one is used).
+     *
+     * @param urlPrefix
+     *        The endpoint URL (or its prefix)
+     *
+     * @param level
+     *        The logging level (or null to remove the endpoint-specific level)
+     *
+     * @return  This {@code LoggingInterceptor} object to allow for chaining of calls to set methods
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public LoggingInterceptor setLevel(@NonNull final String urlPrefix, final Level level) {
+        if (level == null)
+            mEndpoints.remove(urlPrefix);
+        else
+            mEndpoints.put(urlPrefix, level);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of body bytes to log (the rest of the body is neither buffered nor logged).
+     *
+     * @param maxBodySize
+     *        The maximum body size (in bytes), e.g. {@link #MAX_BODY_SIZE_DEFAULT}
+     *
+     * @return  This {@code LoggingInterceptor} object to allow for chaining of calls to set methods
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public LoggingInterceptor setMaxBodySize(@IntRange(from = 0) final long maxBodySize) {
+        mMaxBodySize = maxBodySize;
+        return this;
+    }
+
+    /**
+     * Sets the share of requests to log (default is 1, i.e. all requests are logged).
+     *
+     * @param samplingRate
+     *        The sampling rate
+     *
+     * @return  This {@code LoggingInterceptor} object to allow for chaining of calls to set methods
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public LoggingInterceptor setSamplingRate(@FloatRange(from = 0, to = 1) final double samplingRate) {
+        mSamplingRate = samplingRate;
+        return this;
+    }
+
+    /**
+     * Returns the number of log records which were dropped because the logging thread couldn't keep up.
+     *
+     * @return  The number of dropped records
+     */
+    @SuppressWarnings("unused")
+    public static long getDropped() {
+        return sDropped.get();
+    }
+
+    /**
+     * Please refer to the base method description.
+     */
+    @Override
+    public Response intercept(@NonNull final Chain chain) throws IOException {
+        final Request request = chain.request();
+
+        final Level level = getLevel(request.url());
+        if (level == Level.NONE || !isSampled()) return chain.proceed(request);
+
+        final StringBuilder builder = new StringBuilder("--> ")
+                .append(request.method()).append(' ').append(request.url());
+
+        if (level != Level.BASIC) {
+            appendHeaders(builder, request.headers());
+            if (level == Level.BODY) appendBody(builder, request.body());
+        }
+
+        final long started = System.nanoTime();
+        final Response response;
+        try {
+            response = chain.proceed(request);
+        }
+        catch (IOException exception) {
+            builder.append("\n<-- HTTP FAILED: ").append(exception);
+            log(builder.toString());
+            throw exception;
+        }
+
+        builder.append("\n<-- ").append(response.code()).append(' ').append(response.message())
+                .append(' ').append(response.request().url()).append(" (")
+                .append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)).append(" ms)");
+
+        if (level != Level.BASIC) {
+            appendHeaders(builder, response.headers());
+            if (level == Level.BODY) appendBody(builder, response);
+        }
+
+        log(builder.toString());
+        return response;
+    }
+
+    private Level getLevel(@NonNull final HttpUrl url) {
+        if (mEndpoints.isEmpty()) return mLevel;
+
+        final String urlString = url.toString();
+        String prefix = null;
+        Level level = mLevel;
+
+        synchronized (mEndpoints) {
+            for (final Map.Entry<String, Level> entry: mEndpoints.entrySet()) {
+                final String key = entry.getKey();
+                if (!urlString.startsWith(key) || prefix != null && prefix.length() >= key.length()) continue;
+
+                prefix = key;
+                level  = entry.getValue();
+            }
+        }
+        return level;
+    }
+
+    private boolean isSampled() {
+        final double samplingRate = mSamplingRate;
+        return samplingRate >= 1 || samplingRate > 0 && sRandom.nextDouble() < samplingRate;
+    }
+
+    private static void appendHeaders(@NonNull final StringBuilder builder, @NonNull final Headers headers) {
+        for (int i = 0; i < headers.size(); i++)
+            builder.append('\n').append(headers.name(i)).append(": ").append(headers.value(i));
+    }
+
+    private void appendBody(@NonNull final StringBuilder builder, final RequestBody body) throws IOException {
+        if (body == null) return;
+
+        final long length = body.contentLength();
+        if (!isText(body.contentType()))
+            builder.append("\n(binary body omitted, ").append(length).append(" bytes)");
+        else if (length < 0 || length > mMaxBodySize)
+            builder.append("\n(body omitted, ").append(length).append(" bytes)");
+        else {
+            final Buffer buffer = new Buffer();
+            body.writeTo(buffer);
+            builder.append('\n').append(buffer.readString(getCharset(body.contentType())));
+        }
+    }
+
+    private void appendBody(@NonNull final StringBuilder builder, @NonNull final Response response)
+            throws IOException {
+        final ResponseBody body = response.body();
+        if (body == null) return;
+
+        final String encoding = response.header("Content-Encoding");
+        if (encoding != null && !encoding.equalsIgnoreCase("identity"))
+            builder.append("\n(encoded body omitted)");
+        else if (!isText(body.contentType()))
+            builder.append("\n(binary body omitted, ").append(body.contentLength()).append(" bytes)");
+        else {
+            final long maxBodySize = mMaxBodySize;
+            // buffers no more than maxBodySize bytes and doesn't consume the original body
+            final ResponseBody peek = response.peekBody(maxBodySize);
+            final long length = peek.contentLength();
+
+            builder.append('\n').append(peek.string());
+            if (length >= maxBodySize && body.contentLength() != length) builder.append("...(truncated)");
+        }
+    }
+
+    private static boolean isText(final MediaType mediaType) {
+        if (mediaType == null) return false;
+
+        final String subtype = mediaType.subtype().toLowerCase(CoreLogger.getLocale());
+        return mediaType.type().equalsIgnoreCase("text") || subtype.contains("json") ||
+                subtype.contains("xml") || subtype.contains("html") || subtype.contains("form-urlencoded");
+    }
+
+    private static Charset getCharset(final MediaType mediaType) {
+        return mediaType == null ? UTF8: mediaType.charset(UTF8);
+    }
+
+    private static void log(@NonNull final String message) {
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                CoreLogger.log(message);
+            }
+        });
+    }
+}
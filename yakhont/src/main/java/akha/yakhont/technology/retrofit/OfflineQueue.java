@@ -0,0 +1,481 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.technology.retrofit;
+
+import akha.yakhont.BaseCacheProvider;
+import akha.yakhont.Core;
+import akha.yakhont.Core.NetworkStatusListener;
+import akha.yakhont.Core.Utils;
+import akha.yakhont.CoreLogger;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import okio.Buffer;
+
+/**
+ * The persistent queue of outbound requests (e.g. writes made offline), stored in the
+ * {@link akha.yakhont.BaseCacheProvider BaseCacheProvider} database. The queued requests with the same key
+ * are coalesced (last write wins); the queue is replayed (in batches, in order) when the network becomes
+ * available. Every request is sent with the idempotency key (which is the same for all attempts),
+ * so the server could ignore duplicates; failed attempts are retried with the exponential backoff.
+ * For example:
+ *
+ * <p><pre style="background-color: silver; border: thin solid black;">
+ * import akha.yakhont.technology.retrofit.OfflineQueue;
+ *
+ * OfflineQueue queue = new OfflineQueue(getApplicationContext(), getRetrofit().getCallFactory());
+ * ...
+ *
+ * queue.enqueue("profile", getRetrofit().getApi().updateProfile(profile));
+ * </pre>
+ *
+ * Requests are removed from the queue when delivered (2xx) or rejected by the server
+ * (1xx, 3xx and 4xx, except 408 and 429).
+ *
+ * @author akha
+ */
+public class OfflineQueue {
+
+    /** The name of the queue table (it's never compressed, see {@link BaseCacheProvider#INTERNAL_TABLE_PREFIX}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final String                         TABLE_NAME                  = "yakhont_outbox";
+
+    /** The default idempotency key request header. */
+    @SuppressWarnings("WeakerAccess")
+    public  static final String                         IDEMPOTENCY_HEADER_DEFAULT  = "Idempotency-Key";
+
+    /** The default number of requests read from the queue at once (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final int                            BATCH_SIZE_DEFAULT          = 20;
+
+    private static final long                           BACKOFF_MIN                 = 1000;                 // ms
+    private static final long                           BACKOFF_MAX                 = 5 * 60 * 1000;
+
+    private static final String                         COLUMN_KEY                  = "request_key";
+    private static final String                         COLUMN_IDEMPOTENCY_KEY      = "idempotency_key";
+    private static final String                         COLUMN_METHOD               = "method";
+    private static final String                         COLUMN_URL                  = "url";
+    private static final String                         COLUMN_HEADERS              = "headers";
+    private static final String                         COLUMN_CONTENT_TYPE         = "content_type";
+    private static final String                         COLUMN_BODY                 = "body";
+    private static final String                         COLUMN_HAS_BODY             = "has_body";
+    private static final String                         COLUMN_ATTEMPTS             = "attempts";
+
+    private static final String[]                       PROJECTION                  = new String[] {
+            BaseColumns._ID, COLUMN_KEY, COLUMN_IDEMPOTENCY_KEY, COLUMN_METHOD, COLUMN_URL,
+            COLUMN_HEADERS, COLUMN_CONTENT_TYPE, COLUMN_BODY, COLUMN_HAS_BODY, COLUMN_ATTEMPTS};
+
+    private static final String                         SELECTION_KEY               = COLUMN_KEY + "=?";
+    private static final String                         SELECTION_ID                = BaseColumns._ID + "=?";
+
+    private        final ContentResolver                mContentResolver;
+    private        final Uri                            mUri;
+    private        final Call.Factory                   mCallFactory;
+
+    // all the queue operations are serialized
+    private        final ScheduledExecutorService       mExecutor                   =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "yakhont-offline-queue");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private        final NetworkStatusListener          mNetworkStatusListener      = new NetworkStatusListener() {
+        @Override
+        public void onNetworkStatusChanged(final boolean isConnected) {
+            if (!isConnected) return;
+
+            CoreLogger.log("network is available, about to replay offline queue");
+            flush();
+        }
+    };
+
+    private volatile     String                         mIdempotencyHeader          = IDEMPOTENCY_HEADER_DEFAULT;
+    private volatile     int                            mBatchSize                  = BATCH_SIZE_DEFAULT;
+    private volatile     Listener                       mListener;
+
+    private              long                           mBackoff;
+    private              ScheduledFuture<?>             mRetryTask;
+
+    /**
+     * The API to get notified about the requests delivery (called from the background thread).
+     */
+    public interface Listener {
+
+        /**
+         * Called when the queued request is removed from the queue.
+         *
+         * @param key
+         *        The request key (or null)
+         *
+         * @param request
+         *        The request
+         *
+         * @param code
+         *        The HTTP status code
+         *
+         * @param delivered
+         *        {@code true} if the request was delivered, {@code false} if it was rejected by the server
+         */
+        void onCompleted(String key, @NonNull Request request, int code, boolean delivered);
+    }
+
+    /**
+     * Initialises a newly created {@code OfflineQueue} object and replays the queue (if the network is available).
+     *
+     * @param context
+     *        The context
+     *
+     * @param callFactory
+     *        The HTTP call factory to send requests, e.g. {@link Retrofit2#getCallFactory}
+     */
+    public OfflineQueue(@NonNull final Context context, @NonNull final Call.Factory callFactory) {
+        mContentResolver    = context.getApplicationContext().getContentResolver();
+        mUri                = Utils.getUri(TABLE_NAME);
+        mCallFactory        = callFactory;
+
+        Core.register(mNetworkStatusListener);
+        flush();
+    }
+
+    /**
+     * Stops replaying of the queue (the queued requests are kept in the database).
+     */
+    @SuppressWarnings("unused")
+    public void close() {
+        Core.unregister(mNetworkStatusListener);
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Sets the listener to get notified about the requests delivery.
+     *
+     * @param listener
+     *        The listener (or null)
+     *
+     * @return  This {@code OfflineQueue} object to allow for chaining of calls to set methods
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public OfflineQueue setListener(final Listener listener) {
+        mListener = listener;
+        return this;
+    }
+
+    /**
+     * Sets the idempotency key request header, e.g. {@link #IDEMPOTENCY_HEADER_DEFAULT}.
+     *
+     * @param idempotencyHeader
+     *        The header name (or null to not send idempotency keys)
+     *
+     * @return  This {@code OfflineQueue} object to allow for chaining of calls to set methods
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public OfflineQueue setIdempotencyHeader(final String idempotencyHeader) {
+        mIdempotencyHeader = idempotencyHeader;
+        return this;
+    }
+
+    /**
+     * Sets the number of requests read from the queue at once.
+     *
+     * @param batchSize
+     *        The batch size, e.g. {@link #BATCH_SIZE_DEFAULT}
+     *
+     * @return  This {@code OfflineQueue} object to allow for chaining of calls to set methods
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public OfflineQueue setBatchSize(@IntRange(from = 1) final int batchSize) {
+        mBatchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Adds the Retrofit call to the queue (the call itself is not executed).
+     *
+     * @param key
+     *        The request key: the queued request with the same key (if any) is replaced;
+     *        null means no coalescing
+     *
+     * @param call
+     *        The call
+     */
+    @SuppressWarnings("unused")
+    public void enqueue(final String key, @NonNull final retrofit2.Call<?> call) {
+        enqueue(key, call.request());
+    }
+
+    /**
+     * Adds the request to the queue.
+     *
+     * @param key
+     *        The request key: the queued request with the same key (if any) is replaced;
+     *        null means no coalescing
+     *
+     * @param request
+     *        The request
+     */
+    @SuppressWarnings("WeakerAccess")
+    public void enqueue(final String key, @NonNull final Request request) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    store(key, request);
+                }
+                catch (Exception exception) {
+                    CoreLogger.log("failed to queue request " + request.url(), exception);
+                    return;
+                }
+                if (mRetryTask == null) send();
+            }
+        });
+    }
+
+    /**
+     * Replays the queue (if the network is available) without waiting for the backoff delay.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public void flush() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                cancelRetry();
+                mBackoff = 0;
+                send();
+            }
+        });
+    }
+
+    /**
+     * Returns the number of queued requests.
+     *
+     * @return  The queue size
+     */
+    @WorkerThread
+    @SuppressWarnings("unused")
+    public int size() {
+        Cursor cursor = null;
+        try {
+            cursor = mContentResolver.query(mUri, new String[] {BaseColumns._ID}, null, null, null);
+            return cursor == null ? 0: cursor.getCount();
+        }
+        finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private void store(final String key, @NonNull final Request request) throws Exception {
+        final RequestBody body = request.body();
+        byte[] data = new byte[0];
+        if (body != null) {
+            final Buffer buffer = new Buffer();
+            body.writeTo(buffer);
+            data = buffer.readByteArray();
+        }
+        final MediaType contentType = body == null ? null: body.contentType();
+
+        final ContentValues values = new ContentValues();
+        values.put(COLUMN_KEY,              key == null ? UUID.randomUUID().toString(): key);
+        values.put(COLUMN_IDEMPOTENCY_KEY,  UUID.randomUUID().toString());
+        values.put(COLUMN_METHOD,           request.method());
+        values.put(COLUMN_URL,              request.url().toString());
+        values.put(COLUMN_HEADERS,          request.headers().toString());
+        values.put(COLUMN_CONTENT_TYPE,     contentType == null ? "": contentType.toString());
+        values.put(COLUMN_BODY,             data);
+        values.put(COLUMN_HAS_BODY,         body == null ? 0: 1);
+        values.put(COLUMN_ATTEMPTS,         0);
+
+        // last write wins (delete and insert in one transaction)
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        if (key != null)
+            operations.add(ContentProviderOperation.newDelete(mUri)
+                    .withSelection(SELECTION_KEY, new String[] {key}).build());
+        operations.add(ContentProviderOperation.newInsert(mUri).withValues(values).build());
+
+        final ContentProviderResult[] results = mContentResolver.applyBatch(mUri.getAuthority(), operations);
+        if (key != null && results[0].count != null && results[0].count > 0)
+            CoreLogger.log("queued request replaced, key " + key);
+
+        CoreLogger.log("request queued: " + request.method() + " " + request.url());
+    }
+
+    private void send() {
+        if (!Utils.isConnected()) {
+            CoreLogger.log("offline queue: network is not available");
+            return;
+        }
+        for (;;) {
+            Cursor cursor = null;
+            try {
+                cursor = mContentResolver.query(mUri.buildUpon().appendQueryParameter(
+                        BaseCacheProvider.QUERY_PARAMETER_LIMIT, String.valueOf(mBatchSize)).build(),
+                        PROJECTION, null, null, BaseColumns._ID);
+                if (cursor == null || !cursor.moveToFirst()) {
+                    mBackoff = 0;
+                    return;
+                }
+                do {
+                    // in order: the next requests wait for the failed one
+                    if (!send(cursor)) {
+                        scheduleRetry();
+                        return;
+                    }
+                }
+                while (cursor.moveToNext());
+            }
+            catch (Exception exception) {
+                CoreLogger.log("offline queue replay failed", exception);
+                scheduleRetry();
+                return;
+            }
+            finally {
+                if (cursor != null) cursor.close();
+            }
+        }
+    }
+
+    private boolean send(@NonNull final Cursor cursor) {
+        final String id       = cursor.getString(0);
+        final String key      = cursor.getString(1);
+        final Request request = getRequest(cursor);
+        final int attempts    = cursor.getInt(9) + 1;
+
+        int code = -1;
+        Response response = null;
+        try {
+            response = mCallFactory.newCall(request).execute();
+            code = response.code();
+        }
+        catch (IOException exception) {
+            CoreLogger.log("queued request failed, attempt " + attempts + ": " + request.url(), exception);
+        }
+        finally {
+            if (response != null) response.close();
+        }
+
+        // 1xx, 3xx and 4xx (except 408 and 429) are not retryable, otherwise they would block the queue
+        final boolean delivered = code >= 200 && code < 300;
+        final boolean retry     = !delivered && (code < 0 || code == 408 || code == 429 || code >= 500);
+
+        if (retry) {
+            CoreLogger.log("queued request will be retried, code " + code + ": " + request.url());
+
+            final ContentValues values = new ContentValues();
+            values.put(COLUMN_ATTEMPTS, attempts);
+            mContentResolver.update(mUri, values, SELECTION_ID, new String[] {id});
+            return false;
+        }
+
+        if (delivered)
+            CoreLogger.log("queued request delivered: " + request.url());
+        else
+            CoreLogger.logError("queued request rejected, code " + code + ": " + request.url());
+
+        // stops the replay, otherwise the same request would be sent again and again
+        if (mContentResolver.delete(mUri, SELECTION_ID, new String[] {id}) == 0) {
+            CoreLogger.logError("can't remove queued request, id " + id);
+            return false;
+        }
+        mBackoff = 0;
+
+        final Listener listener = mListener;
+        if (listener != null)
+            try {
+                listener.onCompleted(key, request, code, delivered);
+            }
+            catch (Exception exception) {
+                CoreLogger.log("offline queue listener failed", exception);
+            }
+        return true;
+    }
+
+    @NonNull
+    private Request getRequest(@NonNull final Cursor cursor) {
+        final Headers.Builder headers = new Headers.Builder();
+        final String headersString = cursor.getString(5);
+        if (headersString != null)
+            for (final String line: headersString.split("\n"))
+                if (line.indexOf(':') > 0) headers.add(line);
+
+        final String idempotencyHeader = mIdempotencyHeader;
+        if (idempotencyHeader != null) headers.set(idempotencyHeader, cursor.getString(2));
+
+        final String contentType = cursor.getString(6);
+        final RequestBody body = cursor.getInt(8) == 0 ? null: RequestBody.create(
+                contentType == null || contentType.length() == 0 ? null: MediaType.parse(contentType),
+                cursor.getBlob(7));
+
+        return new Request.Builder()
+                .url(cursor.getString(4))
+                .headers(headers.build())
+                .method(cursor.getString(3), body)
+                .build();
+    }
+
+    private void scheduleRetry() {
+        mBackoff = mBackoff == 0 ? BACKOFF_MIN: Math.min(mBackoff * 2, BACKOFF_MAX);
+        CoreLogger.log("offline queue replay will be retried in " + mBackoff + " ms");
+
+        cancelRetry();
+        mRetryTask = mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                mRetryTask = null;
+                send();
+            }
+        }, mBackoff, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelRetry() {
+        if (mRetryTask == null) return;
+
+        mRetryTask.cancel(false);
+        mRetryTask = null;
+    }
+}
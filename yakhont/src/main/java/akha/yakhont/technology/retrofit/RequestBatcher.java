@@ -0,0 +1,509 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.technology.retrofit;
+
+import akha.yakhont.Core.Utils;
+import akha.yakhont.CoreLogger;
+import akha.yakhont.loader.CancellationToken;
+import akha.yakhont.loader.CancellationToken.Cancelable;
+import akha.yakhont.loader.LoaderExecutor;
+
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Converter;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+
+/**
+ * Collects the requests issued within a small time window to the same base URL (e.g. by several loaders
+ * of the same screen) and sends them as one batched HTTP call; the results are fanned out to the callbacks
+ * of the original requests. The batch format is defined by the {@link BatchCodec}. For example:
+ *
+ * <p><pre style="background-color: silver; border: thin solid black;">
+ * import akha.yakhont.technology.retrofit.RequestBatcher;
+ * import akha.yakhont.technology.retrofit.Retrofit2;
+ *
+ * Retrofit2&lt;MyRetrofitApi&gt; retrofit = new Retrofit2&lt;&gt;();
+ * retrofit.setRequestBatcher(new RequestBatcher(new MyBatchCodec()));
+ * retrofit.init(MyRetrofitApi.class, "http://.../");
+ * </pre>
+ *
+ * Batching is opt-in: without the {@code RequestBatcher} every request is sent as is. The request is not delayed
+ * if there are no other loaders running (or queued) at the moment. The batch is cancelled when all the loaders
+ * it was made for are cancelled.
+ *
+ * @see Retrofit2#setRequestBatcher
+ *
+ * @author akha
+ */
+public class RequestBatcher {
+
+    /** The default time window to collect requests (in milliseconds), the value is {@value}. */
+    @SuppressWarnings("WeakerAccess")
+    public  static final int                            WINDOW_DEFAULT              = 50;
+
+    /** The default maximum number of requests in batch (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final int                            MAX_BATCH_SIZE_DEFAULT      = 10;
+
+    private static final ScheduledExecutorService       sExecutor                   =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "yakhont-batcher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private        final BatchCodec                     mCodec;
+    private        final int                            mWindow;
+    private        final int                            mMaxBatchSize;
+
+    private        final Map<String, List<Entry<?>>>    mPending                    = Utils.newMap();
+
+    /**
+     * The API to encode the batch of requests into the one HTTP request and to decode the batched response.
+     */
+    public interface BatchCodec {
+
+        /**
+         * Checks whether the given request could be batched.
+         *
+         * @param request
+         *        The request
+         *
+         * @return  {@code true} if the request could be batched, {@code false} otherwise
+         */
+        boolean isBatchable(@NonNull Request request);
+
+        /**
+         * Encodes the batch of requests.
+         *
+         * @param baseUrl
+         *        The base URL of the requests
+         *
+         * @param requests
+         *        The requests to batch
+         *
+         * @return  The batched request
+         *
+         * @throws  IOException
+         *          please refer to the exception description
+         */
+        @NonNull
+        Request encode(@NonNull HttpUrl baseUrl, @NonNull List<Request> requests) throws IOException;
+
+        /**
+         * Decodes the batched response. The returned responses should be in the same order as requests,
+         * should refer to the corresponding requests and should have bodies which don't depend
+         * on the batched response (it's closed after decoding).
+         *
+         * @param requests
+         *        The batched requests
+         *
+         * @param response
+         *        The batched response
+         *
+         * @return  The responses
+         *
+         * @throws  IOException
+         *          please refer to the exception description
+         */
+        @NonNull
+        List<okhttp3.Response> decode(@NonNull List<Request> requests, @NonNull okhttp3.Response response)
+                throws IOException;
+    }
+
+    /**
+     * Initialises a newly created {@code RequestBatcher} object.
+     *
+     * @param codec
+     *        The batch codec
+     */
+    @SuppressWarnings("unused")
+    public RequestBatcher(@NonNull final BatchCodec codec) {
+        this(codec, WINDOW_DEFAULT, MAX_BATCH_SIZE_DEFAULT);
+    }
+
+    /**
+     * Initialises a newly created {@code RequestBatcher} object.
+     *
+     * @param codec
+     *        The batch codec
+     *
+     * @param window
+     *        The time window to collect requests (in milliseconds), e.g. {@link #WINDOW_DEFAULT}
+     *
+     * @param maxBatchSize
+     *        The maximum number of requests in batch, e.g. {@link #MAX_BATCH_SIZE_DEFAULT}
+     */
+    @SuppressWarnings("WeakerAccess")
+    public RequestBatcher(@NonNull final BatchCodec codec, @IntRange(from = 0) final int window,
+                          @IntRange(from = 2) final int maxBatchSize) {
+        mCodec          = codec;
+        mWindow         = window;
+        mMaxBatchSize   = maxBatchSize;
+    }
+
+    /**
+     * Adds the call to the batch.
+     *
+     * @param retrofit
+     *        The Retrofit which created the call
+     *
+     * @param call
+     *        The call
+     *
+     * @param type
+     *        The type of data
+     *
+     * @param annotations
+     *        The annotations of the Retrofit API method (to find the response converter)
+     *
+     * @param callback
+     *        The callback
+     *
+     * @param <D>
+     *        The type of data
+     *
+     * @return  {@code true} if the call was added to the batch, {@code false} otherwise
+     * (so it should be enqueued as usual)
+     */
+    public <D> boolean add(@NonNull final Retrofit retrofit, @NonNull final Call<D> call,
+                           @NonNull final Type type, final Annotation[] annotations,
+                           @NonNull final Callback<D> callback) {
+        final Request request;
+        try {
+            request = call.request();       // in the loader's thread, so the validators are added
+            if (!mCodec.isBatchable(request)) return false;
+        }
+        catch (Exception exception) {
+            CoreLogger.log("batching failed", exception);
+            return false;
+        }
+
+        final String key = retrofit.baseUrl().toString();
+        final Entry<D> entry = new Entry<>(retrofit, call, request, type,
+                annotations == null ? new Annotation[0]: annotations, callback, CancellationToken.getCurrent());
+
+        final List<Entry<?>> entries;
+        final boolean isNew, isFull;
+        synchronized (mPending) {
+            List<Entry<?>> list = mPending.get(key);
+            isNew = list == null;
+            if (isNew) {
+                list = new ArrayList<>();
+                mPending.put(key, list);
+            }
+            list.add(entry);
+
+            isFull = list.size() >= mMaxBatchSize;
+            if (isFull) mPending.remove(key);
+            entries = list;
+        }
+
+        if (isFull || (isNew && isAlone()))
+            sExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!isFull)
+                        synchronized (mPending) {
+                            if (mPending.get(key) != entries) return;       // already sent
+                            mPending.remove(key);
+                        }
+                    send(entries);
+                }
+            });
+        else if (isNew)
+            sExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (mPending) {
+                        if (mPending.get(key) != entries) return;       // already sent
+                        mPending.remove(key);
+                    }
+                    send(entries);
+                }
+            }, mWindow, TimeUnit.MILLISECONDS);
+
+        return true;
+    }
+
+    // no other loaders to batch with, so there's no point to wait
+    private static boolean isAlone() {
+        final LoaderExecutor executor = LoaderExecutor.getInstance();
+        return executor.getActiveCount() <= 1 && executor.getQueueSize() == 0;
+    }
+
+    private void send(@NonNull final List<Entry<?>> entries) {
+        final List<Entry<?>> active = new ArrayList<>();
+        for (final Entry<?> entry: entries)
+            if (entry.mCall.isCanceled())
+                entry.onCanceled();
+            else
+                active.add(entry);
+
+        if (active.isEmpty()) return;
+        if (active.size() == 1) {
+            active.get(0).enqueue();
+            return;
+        }
+
+        final Retrofit retrofit = active.get(0).mRetrofit;
+        final List<Request> requests = new ArrayList<>(active.size());
+        for (final Entry<?> entry: active)
+            requests.add(entry.mRequest);
+
+        final Request batch;
+        try {
+            batch = mCodec.encode(retrofit.baseUrl(), requests);
+        }
+        catch (Exception exception) {
+            CoreLogger.log("batch encoding failed, requests will be sent separately", exception);
+            for (final Entry<?> entry: active)
+                entry.enqueue();
+            return;
+        }
+
+        CoreLogger.log("batch of " + requests.size() + " requests: " + batch.url());
+
+        // the call is registered with the batch token by the Retrofit2 LoaderCallFactory
+        final CancellationToken token = new CancellationToken();
+        final okhttp3.Call batchCall;
+        token.bind();
+        try {
+            batchCall = retrofit.callFactory().newCall(batch);
+        }
+        finally {
+            CancellationToken.unbind();
+        }
+        final List<Cancelable> cancelables = register(active, token);
+
+        batchCall.enqueue(new okhttp3.Callback() {
+            @Override
+            public void onFailure(final okhttp3.Call call, final IOException exception) {
+                unregister(active, cancelables);
+
+                CoreLogger.log("batch failed", exception);
+                for (final Entry<?> entry: active)
+                    entry.onFailure(exception);
+            }
+
+            @Override
+            public void onResponse(final okhttp3.Call call, final okhttp3.Response response) {
+                unregister(active, cancelables);
+
+                final List<okhttp3.Response> responses;
+                try {
+                    responses = mCodec.decode(requests, response);
+                    if (responses.size() != active.size()) throw new IOException(String.format(
+                            CoreLogger.getLocale(), "batch responses: expected %d, decoded %d",
+                            active.size(), responses.size()));
+                }
+                catch (Exception exception) {
+                    CoreLogger.log("batch decoding failed", exception);
+                    for (final Entry<?> entry: active)
+                        entry.onFailure(exception);
+                    return;
+                }
+                finally {
+                    response.close();
+                }
+
+                for (int i = 0; i < active.size(); i++)
+                    active.get(i).onResponse(setNetworkInfo(responses.get(i), response));
+            }
+        });
+    }
+
+    // cancels the batch when all the loaders it was made for are cancelled
+    private static List<Cancelable> register(@NonNull final List<Entry<?>> entries,
+                                             @NonNull final CancellationToken batchToken) {
+        final AtomicInteger counter = new AtomicInteger(entries.size());
+        final List<Cancelable> cancelables = new ArrayList<>(entries.size());
+
+        for (final Entry<?> entry: entries) {
+            final Cancelable cancelable = new Cancelable() {
+                @Override
+                public void cancel() {
+                    if (counter.decrementAndGet() == 0) batchToken.cancel();
+                }
+
+                @Override
+                public String toString() {
+                    return "batched request " + entry.mRequest.url();
+                }
+            };
+            cancelables.add(cancelable);
+
+            // the request without loader could not be cancelled, so the batch is not cancelled too
+            if (entry.mToken != null) entry.mToken.add(cancelable);
+        }
+        return cancelables;
+    }
+
+    private static void unregister(@NonNull final List<Entry<?>> entries, @NonNull final List<Cancelable> cancelables) {
+        for (int i = 0; i < entries.size(); i++) {
+            final CancellationToken token = entries.get(i).mToken;
+            if (token != null) token.remove(cancelables.get(i));
+        }
+    }
+
+    // the decoded responses don't know whether the batch came from the network (or from the HTTP cache)
+    private static okhttp3.Response setNetworkInfo(@NonNull final okhttp3.Response response,
+                                                   @NonNull final okhttp3.Response batchResponse) {
+        if (response.networkResponse() != null || response.cacheResponse() != null) return response;
+
+        final okhttp3.Response networkResponse = batchResponse.networkResponse();
+        final okhttp3.Response cacheResponse   = batchResponse.cacheResponse();
+
+        return response.newBuilder()
+                .sentRequestAtMillis(batchResponse.sentRequestAtMillis())
+                .receivedResponseAtMillis(batchResponse.receivedResponseAtMillis())
+                .networkResponse(networkResponse == null ? null: stripBody(networkResponse, response))
+                .cacheResponse(cacheResponse == null ? null: stripBody(cacheResponse, response))
+                .build();
+    }
+
+    private static okhttp3.Response stripBody(@NonNull final okhttp3.Response source,
+                                              @NonNull final okhttp3.Response response) {
+        return source.newBuilder()
+                .request(response.request())
+                .code(response.code())
+                .message(response.message())
+                .headers(response.headers())
+                .body(null)
+                .priorResponse(null)
+                .build();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static class Entry<D> {
+
+        private final Retrofit                          mRetrofit;
+        private final Call<D>                           mCall;
+        private final Request                           mRequest;
+        private final Type                              mType;
+        private final Annotation[]                      mAnnotations;
+        private final Callback<D>                       mCallback;
+        private final CancellationToken                 mToken;
+
+        private Entry(@NonNull final Retrofit retrofit, @NonNull final Call<D> call,
+                      @NonNull final Request request, @NonNull final Type type,
+                      @NonNull final Annotation[] annotations, @NonNull final Callback<D> callback,
+                      final CancellationToken token) {
+            mRetrofit       = retrofit;
+            mCall           = call;
+            mRequest        = request;
+            mType           = type;
+            mAnnotations    = annotations;
+            mCallback       = callback;
+            mToken          = token;
+        }
+
+        private void enqueue() {
+            mCall.enqueue(mCallback);
+        }
+
+        private void onCanceled() {
+            onFailure(new IOException("Canceled"));
+        }
+
+        private void onFailure(@NonNull final Throwable throwable) {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    mCallback.onFailure(mCall, throwable);
+                }
+            });
+        }
+
+        private void onResponse(@NonNull final okhttp3.Response rawResponse) {
+            final Response<D> response;
+            try {
+                response = parse(rawResponse);
+            }
+            catch (Exception exception) {
+                CoreLogger.log("batched response conversion failed: " + mRequest.url(), exception);
+                onFailure(exception);
+                return;
+            }
+
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mCall.isCanceled())
+                        mCallback.onFailure(mCall, new IOException("Canceled"));
+                    else
+                        mCallback.onResponse(mCall, response);
+                }
+            });
+        }
+
+        // same as Retrofit does it
+        private Response<D> parse(@NonNull final okhttp3.Response rawResponse) throws IOException {
+            final ResponseBody body = rawResponse.body();
+            final int code = rawResponse.code();
+
+            if (code < 200 || code >= 300)
+                return Response.error(body != null ? body: ResponseBody.create(null, new byte[0]), rawResponse);
+
+            if (code == 204 || code == 205 || body == null) {
+                if (body != null) body.close();
+                return Response.success(null, rawResponse);
+            }
+
+            final Converter<ResponseBody, D> converter = mRetrofit.responseBodyConverter(mType, mAnnotations);
+            try {
+                return Response.success(converter.convert(body), rawResponse);
+            }
+            finally {
+                body.close();
+            }
+        }
+
+        private void post(@NonNull final Runnable runnable) {
+            final Executor executor = mRetrofit.callbackExecutor();
+            if (executor == null)
+                runnable.run();
+            else
+                executor.execute(runnable);
+        }
+    }
+}
@@ -20,19 +20,31 @@ import akha.yakhont.CoreLogger;
 import akha.yakhont.adapter.BaseCacheAdapter.BaseCacheAdapterFactory;
 import akha.yakhont.adapter.ValuesCacheAdapterWrapper;
 import akha.yakhont.loader.BaseResponse;
+import akha.yakhont.loader.CacheValidators;
+import akha.yakhont.loader.CancellationToken;
+import akha.yakhont.loader.CancellationToken.Cancelable;
 import akha.yakhont.technology.rx.BaseRx.LoaderRx;
 
 import android.app.Activity;
 import android.content.ContentValues;
+import android.os.Process;
 import android.support.annotation.IntRange;
 import android.support.annotation.LayoutRes;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.Size;
 
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.Interceptor;
 import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
 
+import java.io.IOException;
+import java.net.Socket;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import retrofit.RequestInterceptor;
@@ -40,6 +52,7 @@ import retrofit.RestAdapter.Builder;
 import retrofit.RestAdapter.LogLevel;
 import retrofit.YakhontRestAdapter;
 import retrofit.android.AndroidLog;
+import retrofit.android.MainThreadExecutor;
 import retrofit.client.OkClient;
 import retrofit.client.Response;
 
@@ -87,6 +100,44 @@ public class Retrofit<T> extends BaseRetrofit<T, Builder> {
         okHttpClient.setConnectTimeout(connectTimeout, TimeUnit.SECONDS);
         okHttpClient.setReadTimeout   (readTimeout,    TimeUnit.SECONDS);
 
+        // makes the request conditional if the loader's cache has validators
+        okHttpClient.interceptors().add(new Interceptor() {
+            @Override
+            public com.squareup.okhttp.Response intercept(final Chain chain) throws IOException {
+                return chain.proceed(addValidators(chain.request()));
+            }
+        });
+
+        // closes the connection of the request being cancelled
+        okHttpClient.networkInterceptors().add(new Interceptor() {
+            @Override
+            public com.squareup.okhttp.Response intercept(final Chain chain) throws IOException {
+                final Connection        connection = chain.connection();
+                final CancellationToken token      = CancellationToken.getCurrent();
+                if (connection == null || token == null) return chain.proceed(chain.request());
+
+                final Cancelable cancelable = new Cancelable() {
+                    @Override
+                    public void cancel() {
+                        closeSocket(connection.getSocket());
+                    }
+
+                    @Override
+                    public String toString() {
+                        return "HTTP connection " + connection;
+                    }
+                };
+                token.add(cancelable);
+                try {
+                    return chain.proceed(chain.request());
+                }
+                finally {
+                    // the pooled connection could be reused by another request, so it should not be closed later
+                    token.remove(cancelable);
+                }
+            }
+        });
+
         init(service, getDefaultBuilder(retrofitBase, headers).setClient(new OkClient(okHttpClient)),
                 connectTimeout, readTimeout);
     }
@@ -130,6 +181,8 @@ public class Retrofit<T> extends BaseRetrofit<T, Builder> {
         final Builder builder = new Builder()
                 .setLog(new AndroidLog(CoreLogger.getTag() + LOG_RETROFIT_SUFFIX))
                 .setLogLevel(CoreLogger.isFullInfo() ? LogLevel.FULL: LogLevel.NONE)
+                .setExecutors(new CancelableExecutor(getHttpExecutor(), true),
+                              new CancelableExecutor(new MainThreadExecutor(), false))
                 .setEndpoint(retrofitBase);
 
         if (headers != null && !headers.isEmpty())
@@ -144,6 +197,93 @@ public class Retrofit<T> extends BaseRetrofit<T, Builder> {
         return builder;
     }
 
+    private static Executor getHttpExecutor() {
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "yakhont retrofit");
+            }
+        });
+    }
+
+    private static Request addValidators(@NonNull final Request request) {
+        final CacheValidators validators = CacheValidators.getCurrent();
+        if (validators == null || !"GET".equals(request.method())) return request;
+
+        final Request.Builder builder = request.newBuilder();
+        if (validators.getETag() != null && request.header(CacheValidators.HEADER_IF_NONE_MATCH) == null)
+            builder.header(CacheValidators.HEADER_IF_NONE_MATCH, validators.getETag());
+        if (validators.getLastModified() != null && request.header(CacheValidators.HEADER_IF_MODIFIED_SINCE) == null)
+            builder.header(CacheValidators.HEADER_IF_MODIFIED_SINCE, validators.getLastModified());
+
+        return builder.build();
+    }
+
+    private static void closeSocket(final Socket socket) {
+        if (socket == null) return;
+        try {
+            socket.close();
+        }
+        catch (IOException exception) {
+            CoreLogger.log("can not close socket", exception);
+        }
+    }
+
+    /**
+     * Propagates the loader's {@link CancellationToken} to the Retrofit threads: the HTTP requests of the cancelled
+     * loaders are not started, and the callbacks of the cancelled requests are not called.
+     * The loader's {@link CacheValidators} (if any) are propagated to the HTTP threads too.
+     */
+    private static class CancelableExecutor implements Executor {
+
+        private final Executor              mExecutor;
+        private final boolean               mBind;
+
+        private CancelableExecutor(@NonNull final Executor executor, final boolean bind) {
+            mExecutor   = executor;
+            mBind       = bind;
+        }
+
+        @Override
+        public void execute(@NonNull final Runnable runnable) {
+            final CancellationToken token      = CancellationToken.getCurrent();
+            final CacheValidators   validators = mBind ? CacheValidators.getCurrent(): null;
+            if (token == null && validators == null) {
+                mExecutor.execute(runnable);
+                return;
+            }
+
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (token != null && token.isCancelled()) {
+                        CoreLogger.log("request was cancelled, " + (mBind ? "HTTP call": "callback") + " skipped");
+                        return;
+                    }
+                    if (!mBind) {
+                        runnable.run();
+                        return;
+                    }
+                    if (token      != null) token.bind();
+                    if (validators != null) validators.bind();
+                    try {
+                        runnable.run();
+                    }
+                    finally {
+                        CacheValidators.unbind();
+                        CancellationToken.unbind();
+                    }
+                }
+            });
+        }
+    }
+
     ////////////////////////////////////////////////////////////////////////////////////////////////
 
     /**
@@ -18,36 +18,47 @@ package akha.yakhont.technology.retrofit;
 
 import akha.yakhont.Core;
 import akha.yakhont.Core.Utils;
+import akha.yakhont.Core.Utils.TypeHelper;
 import akha.yakhont.CoreLogger;
 import akha.yakhont.CoreLogger.Level;
 import akha.yakhont.adapter.BaseCacheAdapter.BaseCacheAdapterFactory;
 import akha.yakhont.adapter.ValuesCacheAdapterWrapper;
 import akha.yakhont.loader.BaseResponse;
+import akha.yakhont.loader.CacheValidators;
+import akha.yakhont.loader.CancellationToken;
+import akha.yakhont.loader.CancellationToken.Cancelable;
 import akha.yakhont.technology.rx.BaseRx.LoaderRx;
 
 import android.app.Activity;
 import android.content.ContentValues;
+import android.content.Context;
 import android.support.annotation.IntRange;
 import android.support.annotation.LayoutRes;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.Size;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
 import okhttp3.Cookie;
-import okhttp3.CookieJar;
+import okhttp3.Dispatcher;
 import okhttp3.HttpUrl;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
-import okhttp3.logging.HttpLoggingInterceptor;
 
 import retrofit2.CallAdapter.Factory;
+import retrofit2.Callback;
 import retrofit2.Response;
 import retrofit2.Retrofit;
 import retrofit2.Retrofit.Builder;
@@ -68,8 +79,46 @@ import retrofit2.converter.gson.GsonConverterFactory;
  */
 public class Retrofit2<T> extends BaseRetrofit<T, Builder> {
 
+    /** The recommended maximum size (in bytes) of the HTTP disk cache (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final long               HTTP_CACHE_SIZE_DEFAULT         = 10 * 1024 * 1024;
+    /** The default maximum number of idle connections in the pool (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final int                MAX_IDLE_CONNECTIONS_DEFAULT    = 5;
+    /** The default keep-alive duration (in seconds) of the idle connections (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final int                KEEP_ALIVE_DEFAULT              = 5 * 60;
+    /** The default maximum number of concurrent requests (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final int                MAX_REQUESTS_DEFAULT            = 64;
+    /** The default maximum number of concurrent requests per host (the value is {@value}). */
+    @SuppressWarnings("WeakerAccess")
+    public  static final int                MAX_REQUESTS_PER_HOST_DEFAULT   = 5;
+
+    private static final String             HTTP_CACHE_DIR                  = "yakhont_http_cache";
+
+    // the same cache directory should not be used by the different Cache instances
+    private static final Map<File, Cache>   sHttpCaches                     = Utils.newMap();
+
     private Class<T>                        mService;
 
+    private File                            mHttpCacheDir;
+    private long                            mHttpCacheSize;
+    private int                             mMaxIdleConnections             = MAX_IDLE_CONNECTIONS_DEFAULT;
+    private int                             mKeepAlive                      = KEEP_ALIVE_DEFAULT;
+    private int                             mMaxRequests                    = MAX_REQUESTS_DEFAULT;
+    private int                             mMaxRequestsPerHost             = MAX_REQUESTS_PER_HOST_DEFAULT;
+    private boolean                         mHttp2                          = true;
+
+    private ConnectionPool                  mConnectionPool;
+    private Dispatcher                      mDispatcher;
+    private final ConnectionMetrics         mConnectionMetrics              = new ConnectionMetrics();
+    private CookieStore                     mCookieStore;
+    private LoggingInterceptor              mLoggingInterceptor;
+    private RequestBatcher                  mRequestBatcher;
+    private Retrofit                        mRetrofit;
+    private Retrofit                        mLoaderRetrofit;
+
     /**
      * Initialises a newly created {@code Retrofit2} object.
      */
@@ -86,6 +135,156 @@ public class Retrofit2<T> extends BaseRetrofit<T, Builder> {
         return mService;
     }
 
+    /**
+     * Sets the HTTP disk cache parameters (should be called before {@link #init init()}).
+     * By default the HTTP disk cache is disabled (the loaders keep their data in the database anyway). For example:
+     *
+     * <p><pre style="background-color: silver; border: thin solid black;">
+     * retrofit2.setHttpCache(null, Retrofit2.HTTP_CACHE_SIZE_DEFAULT);
+     * </pre>
+     *
+     * @param directory
+     *        The cache directory (or null for default one, which is located in the application's cache directory)
+     *
+     * @param maxSize
+     *        The maximum size (in bytes) of the cache (or 0 to disable caching)
+     *
+     * @return  This {@code Retrofit2} object to allow for chaining of calls to set methods
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Retrofit2<T> setHttpCache(final File directory, @IntRange(from = 0) final long maxSize) {
+        mHttpCacheDir   = directory;
+        mHttpCacheSize  = maxSize;
+        return this;
+    }
+
+    /**
+     * Sets the connection pool parameters (should be called before {@link #init init()}).
+     *
+     * @param maxIdleConnections
+     *        The maximum number of idle connections, e.g. {@link #MAX_IDLE_CONNECTIONS_DEFAULT}
+     *
+     * @param keepAlive
+     *        The keep-alive duration (in seconds) of the idle connections, e.g. {@link #KEEP_ALIVE_DEFAULT}
+     *
+     * @return  This {@code Retrofit2} object to allow for chaining of calls to set methods
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Retrofit2<T> setConnectionPool(@IntRange(from = 0) final int maxIdleConnections,
+                                          @IntRange(from = 1) final int keepAlive) {
+        mMaxIdleConnections = maxIdleConnections;
+        mKeepAlive          = keepAlive;
+        return this;
+    }
+
+    /**
+     * Sets the concurrency limits (should be called before {@link #init init()}).
+     *
+     * @param maxRequests
+     *        The maximum number of concurrent requests, e.g. {@link #MAX_REQUESTS_DEFAULT}
+     *
+     * @param maxRequestsPerHost
+     *        The maximum number of concurrent requests per host, e.g. {@link #MAX_REQUESTS_PER_HOST_DEFAULT}
+     *
+     * @return  This {@code Retrofit2} object to allow for chaining of calls to set methods
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Retrofit2<T> setMaxRequests(@IntRange(from = 1) final int maxRequests,
+                                       @IntRange(from = 1) final int maxRequestsPerHost) {
+        mMaxRequests        = maxRequests;
+        mMaxRequestsPerHost = maxRequestsPerHost;
+        return this;
+    }
+
+    /**
+     * Sets the HTTP/2 preference (should be called before {@link #init init()}). The default value is {@code true}.
+     *
+     * @param http2
+     *        {@code true} to prefer HTTP/2 (if supported by server), {@code false} to use HTTP/1.1 only
+     *
+     * @return  This {@code Retrofit2} object to allow for chaining of calls to set methods
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Retrofit2<T> setHttp2(final boolean http2) {
+        mHttp2 = http2;
+        return this;
+    }
+
+    /**
+     * Returns the HTTP disk cache (e.g. to get hits statistics).
+     *
+     * @return  The HTTP cache (or null if caching is disabled)
+     */
+    @SuppressWarnings("WeakerAccess")
+    public Cache getHttpCache() {
+        if (mHttpCacheSize <= 0) return null;
+
+        File directory = mHttpCacheDir;
+        if (directory == null) {
+            final Context context = Utils.getApplication();
+            if (context == null) {
+                CoreLogger.logWarning("no application context, HTTP cache disabled");
+                return null;
+            }
+            directory = new File(context.getCacheDir(), HTTP_CACHE_DIR);
+        }
+
+        synchronized (sHttpCaches) {
+            Cache cache = sHttpCaches.get(directory);
+            if (cache == null) {
+                cache = new Cache(directory, mHttpCacheSize);
+                sHttpCaches.put(directory, cache);
+            }
+            else if (cache.maxSize() != mHttpCacheSize)
+                CoreLogger.logWarning("HTTP cache " + directory + " already created with size " + cache.maxSize());
+            return cache;
+        }
+    }
+
+    /**
+     * Returns the connection pool (e.g. to get the number of idle connections).
+     *
+     * @return  The connection pool
+     */
+    @NonNull
+    @SuppressWarnings("WeakerAccess")
+    public synchronized ConnectionPool getConnectionPool() {
+        if (mConnectionPool == null)
+            mConnectionPool = new ConnectionPool(mMaxIdleConnections, mKeepAlive, TimeUnit.SECONDS);
+        return mConnectionPool;
+    }
+
+    /**
+     * Returns the dispatcher (e.g. to get the number of running calls).
+     *
+     * @return  The dispatcher
+     */
+    @NonNull
+    @SuppressWarnings("WeakerAccess")
+    public synchronized Dispatcher getDispatcher() {
+        if (mDispatcher == null) {
+            mDispatcher = new Dispatcher();
+            mDispatcher.setMaxRequests       (mMaxRequests);
+            mDispatcher.setMaxRequestsPerHost(mMaxRequestsPerHost);
+        }
+        return mDispatcher;
+    }
+
+    /**
+     * Returns the per-host connection reuse metrics.
+     *
+     * @return  The connection metrics
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public ConnectionMetrics getConnectionMetrics() {
+        return mConnectionMetrics;
+    }
+
     /**
      * Please refer to the base method description.
      */
@@ -145,7 +344,103 @@ public class Retrofit2<T> extends BaseRetrofit<T, Builder> {
         mService = service;
 
         final Retrofit retrofit = builder.build();
-        mRetrofitApi = retrofit.create(service);
+        mRetrofit       = retrofit;
+        mLoaderRetrofit = retrofit.newBuilder().callFactory(
+                new LoaderCallFactory(retrofit.callFactory())).build();
+        mRetrofitApi    = mLoaderRetrofit.create(service);
+    }
+
+    /**
+     * Sets the request batcher (batching is disabled by default).
+     *
+     * @param requestBatcher
+     *        The request batcher (or null to disable batching)
+     *
+     * @return  This {@code Retrofit2} object to allow for chaining of calls to set methods
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Retrofit2<T> setRequestBatcher(final RequestBatcher requestBatcher) {
+        mRequestBatcher = requestBatcher;
+        return this;
+    }
+
+    /**
+     * Returns the request batcher.
+     *
+     * @return  The request batcher (or null)
+     */
+    @SuppressWarnings("unused")
+    public RequestBatcher getRequestBatcher() {
+        return mRequestBatcher;
+    }
+
+    /**
+     * Returns the HTTP call factory (should be called after {@link #init init()}), e.g. for {@link OfflineQueue}.
+     *
+     * @return  The call factory (or null)
+     */
+    @SuppressWarnings("unused")
+    public Call.Factory getCallFactory() {
+        final Retrofit retrofit = mRetrofit;
+        return retrofit == null ? null: retrofit.callFactory();
+    }
+
+    /** @exclude */ @SuppressWarnings("JavaDoc")
+    public <D> void enqueue(@NonNull final retrofit2.Call<D> call, final Method method,
+                            @NonNull final Callback<D> callback) {
+        final RequestBatcher requestBatcher = mRequestBatcher;
+        // the batch goes through the LoaderCallFactory too
+        final Retrofit       retrofit       = mLoaderRetrofit;
+
+        if (requestBatcher == null || retrofit == null || method == null || !requestBatcher.add(retrofit,
+                call, TypeHelper.getParameterizedType(method.getGenericReturnType()), method.getAnnotations(), callback))
+            call.enqueue(callback);
+    }
+
+    /**
+     * Registers the HTTP calls with the {@link CancellationToken} of the loader making the request,
+     * so the calls will be cancelled together with the loader. Also adds the {@link CacheValidators}
+     * of the loader's cache (if any), which makes the request conditional.
+     */
+    private static class LoaderCallFactory implements Call.Factory {
+
+        private final Call.Factory          mFactory;
+
+        private LoaderCallFactory(@NonNull final Call.Factory factory) {
+            mFactory = factory;
+        }
+
+        @Override
+        public Call newCall(final Request request) {
+            final Call call = mFactory.newCall(addValidators(request));
+
+            CancellationToken.register(new Cancelable() {
+                @Override
+                public void cancel() {
+                    call.cancel();
+                }
+
+                @Override
+                public String toString() {
+                    return "HTTP call " + request.url();
+                }
+            });
+            return call;
+        }
+
+        private static Request addValidators(@NonNull final Request request) {
+            final CacheValidators validators = CacheValidators.getCurrent();
+            if (validators == null || !"GET".equals(request.method())) return request;
+
+            final Request.Builder builder = request.newBuilder();
+            if (validators.getETag() != null && request.header(CacheValidators.HEADER_IF_NONE_MATCH) == null)
+                builder.header(CacheValidators.HEADER_IF_NONE_MATCH, validators.getETag());
+            if (validators.getLastModified() != null && request.header(CacheValidators.HEADER_IF_MODIFIED_SINCE) == null)
+                builder.header(CacheValidators.HEADER_IF_MODIFIED_SINCE, validators.getLastModified());
+
+            return builder.build();
+        }
     }
 
     /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
@@ -183,7 +478,8 @@ public class Retrofit2<T> extends BaseRetrofit<T, Builder> {
     }
 
     /**
-     * Returns the default {@code OkHttpClient} builder.
+     * Returns the default {@code OkHttpClient} builder
+     * (with the connection pool, dispatcher and HTTP disk cache - if enabled - configured).
      *
      * @return  The {@code OkHttpClient} builder
      */
@@ -219,13 +515,17 @@ public class Retrofit2<T> extends BaseRetrofit<T, Builder> {
 
         final OkHttpClient.Builder builder = new OkHttpClient.Builder()
                 .connectTimeout(connectTimeout, TimeUnit.SECONDS)
-                .readTimeout   (readTimeout,    TimeUnit.SECONDS);
+                .readTimeout   (readTimeout,    TimeUnit.SECONDS)
+                .connectionPool(getConnectionPool())
+                .dispatcher    (getDispatcher())
+                .protocols     (mHttp2 ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1):
+                                         Collections.singletonList(Protocol.HTTP_1_1))
+                .addNetworkInterceptor(mConnectionMetrics);
+
+        final Cache cache = getHttpCache();
+        if (cache != null) builder.cache(cache);
 
-        final HttpLoggingInterceptor logger = new HttpLoggingInterceptor();
-        logger.setLevel(CoreLogger.isFullInfo() ?
-                HttpLoggingInterceptor.Level.BODY:
-                HttpLoggingInterceptor.Level.NONE);
-        builder.addInterceptor(logger);
+        builder.addInterceptor(getLoggingInterceptor());
 
         if (headers != null && !headers.isEmpty())
             builder.addInterceptor(new Interceptor() {
@@ -240,45 +540,71 @@ public class Retrofit2<T> extends BaseRetrofit<T, Builder> {
                 }
             });
 
-        if (cookies != null && !cookies.isEmpty())
-            builder.cookieJar(new CookieJar() {
-
-                private final Map<HttpUrl, List<Cookie>> mCookieStore = Utils.newMap();
-
-                @Override
-                public void saveFromResponse(HttpUrl url, List<Cookie> cookies) {
-                    mCookieStore.put(url, cookies);
-                }
-
-                @Override
-                public List<Cookie> loadForRequest(HttpUrl url) {
-                    List<Cookie> list = mCookieStore.get(url);
-                    list = list != null ? new ArrayList<>(list): new ArrayList<Cookie>();
+        final CookieStore cookieStore = getCookieStore(cookies);
+        if (cookieStore != null) builder.cookieJar(cookieStore);
 
-                    for (final String name: cookies.keySet())
-                        setCookie(name, cookies.get(name), list, url);
+        return builder;
+    }
 
-                    return list;
-                }
-            });
+    /**
+     * Sets the cookie store (should be called before {@link #init init()}). If not set, the in-memory store
+     * is used when the cookies are passed to {@link #init(Class, String, int, int, Map, Map) init()};
+     * otherwise cookies are not supported.
+     *
+     * @param cookieStore
+     *        The cookie store
+     *
+     * @return  This {@code Retrofit2} object to allow for chaining of calls to set methods
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public synchronized Retrofit2<T> setCookieStore(final CookieStore cookieStore) {
+        mCookieStore = cookieStore;
+        return this;
+    }
 
-        return builder;
+    /**
+     * Sets the HTTP logging interceptor (should be called before {@link #init init()}). If not set,
+     * the {@link LoggingInterceptor} with {@link LoggingInterceptor.Level#BODY BODY} level is used
+     * in debug builds (please refer to {@link CoreLogger#isFullInfo}).
+     *
+     * @param loggingInterceptor
+     *        The logging interceptor
+     *
+     * @return  This {@code Retrofit2} object to allow for chaining of calls to set methods
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public synchronized Retrofit2<T> setLoggingInterceptor(@NonNull final LoggingInterceptor loggingInterceptor) {
+        mLoggingInterceptor = loggingInterceptor;
+        return this;
     }
 
-    private void setCookie(final String name, final String value,
-                           final List<Cookie> cookies, final HttpUrl url) {
-        try {
-            final Cookie cookie = createCookie(name, value, url);
+    /**
+     * Returns the HTTP logging interceptor.
+     *
+     * @return  The logging interceptor
+     */
+    @NonNull
+    @SuppressWarnings("WeakerAccess")
+    public synchronized LoggingInterceptor getLoggingInterceptor() {
+        if (mLoggingInterceptor == null)
+            mLoggingInterceptor = new LoggingInterceptor(CoreLogger.isFullInfo() ?
+                    LoggingInterceptor.Level.BODY: LoggingInterceptor.Level.NONE);
+        return mLoggingInterceptor;
+    }
 
-            for (int i = cookies.size() - 1; i >= 0; i--)
-                if (cookies.get(i).name().equalsIgnoreCase(name))
-                    cookies.remove(i);
+    private synchronized CookieStore getCookieStore(final Map<String, String> cookies) {
+        if (mCookieStore == null && cookies != null && !cookies.isEmpty())
+            mCookieStore = new CookieStore(CookieStore.MAX_SIZE_DEFAULT) {
+                @Override
+                protected Cookie createCookie(final String name, final String value, final HttpUrl url) {
+                    return Retrofit2.this.createCookie(name, value, url);
+                }
+            };
 
-            cookies.add(cookie);
-        }
-        catch (Exception exception) {
-            CoreLogger.log("setCookie failed", exception);
-        }
+        if (mCookieStore != null && cookies != null) mCookieStore.setStaticCookies(cookies);
+        return mCookieStore;
     }
 
     /**
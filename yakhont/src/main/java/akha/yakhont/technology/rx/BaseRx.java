@@ -26,9 +26,12 @@ import akha.yakhont.technology.rx.Rx2.Rx2Disposable;
 
 import android.app.Activity;
 import android.location.Location;
+import android.support.annotation.NonNull;
 
 import java.lang.ref.WeakReference;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * The base component to work with {@link <a href="http://reactivex.io/">Rx</a>}.
@@ -54,7 +57,7 @@ public abstract class BaseRx<D> {
     protected final CommonRx<D>                 mCommonRx;
 
     /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
-    protected final Set<CallbackRx<D>>          mCallbacks          = Utils.newSet();
+    protected final CallbacksRegistry<D>        mCallbacks          = new CallbacksRegistry<>();
 
     /**
      * Initialises a newly created {@code BaseRx} object.
@@ -85,11 +88,8 @@ public abstract class BaseRx<D> {
     public void cleanup() {
         unsubscribe();
 
-        final int size = mCallbacks.size();
-        if (size == 0) return;
-
-        CoreLogger.logWarning(getClass().getName() + " Rx cleanup, size " + size);
-        mCallbacks.clear();
+        final int size = mCallbacks.clear();
+        if (size > 0) CoreLogger.logWarning(getClass().getName() + " Rx cleanup, size " + size);
     }
 
     /**
@@ -198,17 +198,19 @@ public abstract class BaseRx<D> {
     }
 
     private void onResult(final D result, final Throwable throwable) {
-        for (final CallbackRx<D> callback: mCallbacks) {
-            if (callback == null) {
-                CoreLogger.logError("callback is null");
-                continue;
-            }
+        // the snapshot: no locks and no allocations, callbacks could be (un)registered concurrently
+        final CallbackRx<D>[] callbacks = mCallbacks.getSnapshot();
+
+        //noinspection ForLoopReplaceableByForEach
+        for (int i = 0; i < callbacks.length; i++) {
+            final CallbackRx<D> callback = callbacks[i];
             if (throwable != null)
                 callback.onError(throwable);
             else
                 callback.onResult(result);
         }
-        if (mIsSingle) mCallbacks.clear();
+        // the callbacks registered during emission are kept
+        if (mIsSingle) mCallbacks.removeAll(callbacks);
     }
 
     /**
@@ -255,6 +257,26 @@ public abstract class BaseRx<D> {
         void onError(Throwable throwable);
     }
 
+    /**
+     * The {@link CallbackRx} which receives the buffered items in batches
+     * (please refer to {@link CommonRx#setBuffer CommonRx.setBuffer()}).
+     * If the callback doesn't implement this interface, the items of the batch are delivered one by one
+     * (but still within the same notification, e.g. the same main thread post).
+     *
+     * @param <D>
+     *        The type of item the {@code BatchCallbackRx} expects to observe
+     */
+    public interface BatchCallbackRx<D> extends CallbackRx<D> {
+
+        /**
+         * Provides the {@code BatchCallbackRx} with the buffered items.
+         *
+         * @param results
+         *        The items emitted by the {@code Observable} (never empty)
+         */
+        void onResults(List<D> results);
+    }
+
     ////////////////////////////////////////////////////////////////////////////////////////////////
 
     /**
@@ -326,6 +348,17 @@ public abstract class BaseRx<D> {
      */
     public static abstract class CommonRx<D> {
 
+        /** The buffering timespan which corresponds to the display frame rate (in milliseconds), the value is {@value}. */
+        @SuppressWarnings("WeakerAccess")
+        public static final int                 BUFFER_FRAME        = 16;
+
+        private static final Executor           sMainThreadExecutor = new Executor() {
+            @Override
+            public void execute(@NonNull final Runnable runnable) {
+                Utils.postToMainLoop(runnable);
+            }
+        };
+
         /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
         protected BaseRx<D>                     mBaseRx;
 
@@ -334,6 +367,11 @@ public abstract class BaseRx<D> {
         /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
         protected final Rx2Disposable           mRx2Disposable      = new Rx2Disposable();
 
+        private volatile Executor               mSubscribeOn;
+        private volatile Executor               mObserveOn;
+        private volatile long                   mBufferTimespan;
+        private volatile int                    mBufferCount;
+
         /**
          * Initialises a newly created {@code CommonRx} object.
          */
@@ -427,6 +465,147 @@ public abstract class BaseRx<D> {
             }
         }
 
+        /**
+         * Removes the {@link CallbackRx callback} that was previously registered with {@link #register register()}.
+         *
+         * @param callback
+         *        The callback to remove
+         */
+        @SuppressWarnings("unused")
+        public void unregister(final CallbackRx<D> callback) {
+            if (callback != null && !mBaseRx.mCallbacks.remove(callback))
+                CoreLogger.logWarning("the callback is not registered: " + callback);
+        }
+
+        /**
+         * Sets the executor to subscribe on (used by {@link Rx#handle Rx.handle()} and {@link Rx2#handle Rx2.handle()}).
+         * By default the source is subscribed on the caller's thread. Not applied to the loaders' network requests
+         * (they are always made on the loader's background thread).
+         *
+         * @param executor
+         *        The executor (or null for the caller's thread)
+         *
+         * @return  This {@code CommonRx} object to allow for chaining of calls to set methods
+         */
+        @SuppressWarnings("unused")
+        public CommonRx<D> setSubscribeOn(final Executor executor) {
+            mSubscribeOn = executor;
+            return this;
+        }
+
+        /**
+         * Sets the executor to observe on (used by {@link Rx#handle Rx.handle()} and {@link Rx2#handle Rx2.handle()}).
+         * By default the items are delivered on the source's thread.
+         *
+         * @param executor
+         *        The executor (or null for the source's thread)
+         *
+         * @return  This {@code CommonRx} object to allow for chaining of calls to set methods
+         */
+        @SuppressWarnings("WeakerAccess")
+        public CommonRx<D> setObserveOn(final Executor executor) {
+            mObserveOn = executor;
+            return this;
+        }
+
+        /**
+         * Sets the main thread to observe on. For example, to update UI at the frame rate
+         * (instead of posting each item to the main thread):
+         *
+         * <p><pre style="background-color: silver; border: thin solid black;">
+         * rx.setObserveOnMainThread().setBuffer(CommonRx.BUFFER_FRAME, 0);
+         * </pre>
+         *
+         * @return  This {@code CommonRx} object to allow for chaining of calls to set methods
+         */
+        @SuppressWarnings("unused")
+        public CommonRx<D> setObserveOnMainThread() {
+            return setObserveOn(sMainThreadExecutor);
+        }
+
+        /**
+         * Sets the buffering mode: the items are collected and delivered in batches
+         * (please refer to {@link BatchCallbackRx}). The batch is emitted when the timespan elapses
+         * or when it reaches the maximum size, whichever comes first; the empty batches are not emitted.
+         * The buffering is applied to the multi-item sources only (i.e. not to the {@code Single} or {@code Maybe}).
+         *
+         * @param timespan
+         *        The time to collect items (in milliseconds, e.g. {@link #BUFFER_FRAME}), or 0 for no time limit
+         *
+         * @param count
+         *        The maximum number of items in batch, or 0 for no size limit
+         *
+         * @return  This {@code CommonRx} object to allow for chaining of calls to set methods
+         */
+        @SuppressWarnings("WeakerAccess")
+        public CommonRx<D> setBuffer(final long timespan, final int count) {
+            if (timespan < 0 || count < 0) {
+                CoreLogger.logError(String.format(CoreLogger.getLocale(),
+                        "wrong buffer parameters: timespan %d, count %d", timespan, count));
+                return this;
+            }
+            mBufferTimespan = timespan;
+            mBufferCount    = count;
+            return this;
+        }
+
+        /**
+         * Switches off the buffering mode.
+         *
+         * @return  This {@code CommonRx} object to allow for chaining of calls to set methods
+         */
+        @SuppressWarnings("unused")
+        public CommonRx<D> setNoBuffer() {
+            return setBuffer(0, 0);
+        }
+
+        /**
+         * Returns the executor which posts to the main thread.
+         *
+         * @return  The main thread executor
+         */
+        @NonNull
+        @SuppressWarnings("WeakerAccess")
+        public static Executor getMainThreadExecutor() {
+            return sMainThreadExecutor;
+        }
+
+        /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
+        public Executor getSubscribeOn() {
+            return mSubscribeOn;
+        }
+
+        /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
+        public Executor getObserveOn() {
+            return mObserveOn;
+        }
+
+        /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
+        public long getBufferTimespan() {
+            return mBufferTimespan;
+        }
+
+        /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
+        public int getBufferCount() {
+            return mBufferCount;
+        }
+
+        /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
+        public boolean isBuffered() {
+            return mBufferTimespan > 0 || mBufferCount > 0;
+        }
+
+        /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
+        protected static <D> void onResults(@NonNull final CallbackRx<D> callback, @NonNull final List<D> results) {
+            if (results.isEmpty()) return;
+
+            if (callback instanceof BatchCallbackRx)
+                ((BatchCallbackRx<D>) callback).onResults(results);
+            else
+                for (int i = 0; i < results.size(); i++)
+                    callback.onResult(results.get(i));
+        }
+
         /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
         protected static void handleUnknownResult(final Object result) {
             CoreLogger.logError("unknown Rx " + (result == null ? null: result.getClass()));
@@ -435,6 +614,94 @@ public abstract class BaseRx<D> {
 
     ////////////////////////////////////////////////////////////////////////////////////////////////
 
+    // the copy-on-write registry of callbacks: registration is rare, so the array is copied on every change,
+    // while emissions just read the current (immutable) snapshot without locks and allocations
+
+    /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
+    protected static class CallbacksRegistry<D> {
+
+        private static final CallbackRx[]       EMPTY               = new CallbackRx[0];
+
+        private final Object                    mLock               = new Object();
+        @SuppressWarnings("unchecked")
+        private volatile CallbackRx<D>[]        mCallbacks          = (CallbackRx<D>[]) EMPTY;
+
+        /**
+         * Returns the registered callbacks; the returned array should not be modified.
+         *
+         * @return  The callbacks snapshot
+         */
+        public CallbackRx<D>[] getSnapshot() {
+            return mCallbacks;
+        }
+
+        public boolean add(final CallbackRx<D> callback) {
+            synchronized (mLock) {
+                final CallbackRx<D>[] callbacks = mCallbacks;
+                if (indexOf(callbacks, callback) >= 0) return false;
+
+                final CallbackRx<D>[] tmp = Arrays.copyOf(callbacks, callbacks.length + 1);
+                tmp[callbacks.length] = callback;
+                mCallbacks = tmp;
+                return true;
+            }
+        }
+
+        public boolean remove(final CallbackRx<D> callback) {
+            synchronized (mLock) {
+                final CallbackRx<D>[] callbacks = mCallbacks;
+                final int index = indexOf(callbacks, callback);
+                if (index < 0) return false;
+
+                @SuppressWarnings("unchecked")
+                final CallbackRx<D>[] tmp = (CallbackRx<D>[]) new CallbackRx[callbacks.length - 1];
+                System.arraycopy(callbacks, 0, tmp, 0, index);
+                System.arraycopy(callbacks, index + 1, tmp, index, callbacks.length - index - 1);
+                mCallbacks = tmp;
+                return true;
+            }
+        }
+
+        public void removeAll(final CallbackRx<D>[] toRemove) {
+            if (toRemove.length == 0) return;
+
+            synchronized (mLock) {
+                final CallbackRx<D>[] callbacks = mCallbacks;
+                if (callbacks == toRemove) {
+                    clear();
+                    return;
+                }
+                for (final CallbackRx<D> callback: toRemove)
+                    remove(callback);
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "UnusedReturnValue"})
+        public int clear() {
+            synchronized (mLock) {
+                final int size = mCallbacks.length;
+                mCallbacks = (CallbackRx<D>[]) EMPTY;
+                return size;
+            }
+        }
+
+        public int size() {
+            return mCallbacks.length;
+        }
+
+        public boolean isEmpty() {
+            return mCallbacks.length == 0;
+        }
+
+        private static int indexOf(final Object[] array, final Object object) {
+            for (int i = 0; i < array.length; i++)
+                if (array[i].equals(object)) return i;
+            return -1;
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+
     /**
      * Extends the {@link BaseRx} class to provide {@link Location} support. For example, in Activity:
      *
@@ -636,6 +903,7 @@ public abstract class BaseRx<D> {
      *
      * @yakhont.see BaseResponseLoaderWrapper.CoreLoad
      * @yakhont.see Retrofit.RetrofitRx
+     * @see FlowableRows
      */
     public static class LoaderRx<R, E, D> extends BaseRx<BaseResponse<R, E, D>> {
 
@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.technology.rx;
+
+import akha.yakhont.CoreLogger;
+import akha.yakhont.loader.BaseResponse;
+import akha.yakhont.loader.RetryPolicy.HttpStatusException;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.util.concurrent.Callable;
+
+import org.reactivestreams.Publisher;
+
+import io.reactivex.Emitter;
+import io.reactivex.Flowable;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.BiFunction;
+import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
+
+import okhttp3.ResponseBody;
+
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * The streaming counterpart of {@link BaseRx.LoaderRx LoaderRx}: instead of the one {@code BaseResponse}
+ * holding the entire result, the rows are emitted one by one as they are read from the cache cursor or parsed
+ * from the network response body. The {@link <a href="https://github.com/ReactiveX/RxJava">RxJava 2</a>}
+ * {@link Flowable}s created here support the real backpressure (the next row is read only when requested),
+ * so large data sets could be processed incrementally in constant memory. For example:
+ *
+ * <p><pre style="background-color: silver; border: thin solid black;">
+ * import akha.yakhont.technology.rx.FlowableRows;
+ *
+ * // in Retrofit API: &#064;Streaming &#064;GET("data") Call&lt;ResponseBody&gt; dataStream();
+ *
+ * FlowableRows.&lt;MyData&gt;fromCall(getApi().dataStream(), new Gson(), MyData.class)
+ *     .subscribeOn(Schedulers.io())
+ *     .buffer(100)                         // process in chunks
+ *     .subscribe(...);
+ * </pre>
+ *
+ * @author akha
+ */
+public class FlowableRows {
+
+    private FlowableRows() {
+    }
+
+    /**
+     * Creates the {@link Flowable} which emits the rows of the cache table.
+     * Values compressed by the {@link akha.yakhont.BaseCacheProvider} are emitted decompressed.
+     *
+     * @param contentResolver
+     *        The ContentResolver
+     *
+     * @param uri
+     *        The cache table URI
+     *
+     * @return  The {@link Flowable}
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public static Flowable<ContentValues> fromCache(@NonNull final ContentResolver contentResolver,
+                                                    @NonNull final Uri uri) {
+        return fromCache(contentResolver, uri, null, null, null, null, new Function<Cursor, ContentValues>() {
+            @Override
+            public ContentValues apply(@io.reactivex.annotations.NonNull final Cursor cursor) throws Exception {
+                return getContentValues(cursor);
+            }
+        });
+    }
+
+    /**
+     * Creates the {@link Flowable} which emits the rows of the cache table. The cursor is queried on subscription
+     * and closed on completion or cancellation.
+     *
+     * @param contentResolver
+     *        The ContentResolver
+     *
+     * @param uri
+     *        The cache table URI
+     *
+     * @param projection
+     *        The columns to return (or null for all columns)
+     *
+     * @param selection
+     *        The filter (or null for all rows)
+     *
+     * @param selectionArgs
+     *        The selection arguments (or null)
+     *
+     * @param sortOrder
+     *        The order of rows (or null)
+     *
+     * @param mapper
+     *        Converts the current cursor row to the item to emit (should not return null)
+     *
+     * @param <T>
+     *        The type of items
+     *
+     * @return  The {@link Flowable}
+     */
+    @NonNull
+    @SuppressWarnings("WeakerAccess")
+    public static <T> Flowable<T> fromCache(@NonNull final ContentResolver contentResolver, @NonNull final Uri uri,
+                                            final String[] projection, final String selection,
+                                            final String[] selectionArgs, final String sortOrder,
+                                            @NonNull final Function<Cursor, T> mapper) {
+        return fromCursor(new Callable<Cursor>() {
+            @Override
+            public Cursor call() throws Exception {
+                return contentResolver.query(uri, projection, selection, selectionArgs, sortOrder);
+            }
+        }, mapper);
+    }
+
+    private static ContentValues getContentValues(@NonNull final Cursor cursor) throws Exception {
+        final ContentValues values = new ContentValues();
+        for (int i = 0; i < cursor.getColumnCount(); i++) {
+            final String column = cursor.getColumnName(i);
+
+            // decompresses the same way as BaseResponse does
+            final Object data = BaseResponse.getData(cursor, i);
+
+            if      (data == null)              values.putNull(column);
+            else if (data instanceof Exception) throw (Exception) data;
+            else if (data instanceof byte[])    values.put(column, (byte[]) data);
+            else if (data instanceof Long)      values.put(column, (Long)   data);
+            else if (data instanceof Double)    values.put(column, (Double) data);
+            else                                values.put(column, String.valueOf(data));
+        }
+        return values;
+    }
+
+    /**
+     * Creates the {@link Flowable} which emits the rows of the cursor. The cursor is closed on completion
+     * or cancellation.
+     *
+     * @param cursorSupplier
+     *        Returns the cursor (called on subscription)
+     *
+     * @param mapper
+     *        Converts the current cursor row to the item to emit (should not return null)
+     *
+     * @param <T>
+     *        The type of items
+     *
+     * @return  The {@link Flowable}
+     */
+    @NonNull
+    @SuppressWarnings("WeakerAccess")
+    public static <T> Flowable<T> fromCursor(@NonNull final Callable<Cursor> cursorSupplier,
+                                             @NonNull final Function<Cursor, T> mapper) {
+        return Flowable.generate(
+                new Callable<Cursor>() {
+                    @Override
+                    public Cursor call() throws Exception {
+                        final Cursor cursor = cursorSupplier.call();
+                        if (cursor == null) throw new Exception("cursor is null");
+                        return cursor;
+                    }
+                },
+                new BiFunction<Cursor, Emitter<T>, Cursor>() {
+                    @Override
+                    public Cursor apply(@io.reactivex.annotations.NonNull final Cursor cursor,
+                                        @io.reactivex.annotations.NonNull final Emitter<T> emitter) throws Exception {
+                        if (cursor.moveToNext())
+                            emitter.onNext(mapper.apply(cursor));
+                        else
+                            emitter.onComplete();
+                        return cursor;
+                    }
+                },
+                new Consumer<Cursor>() {
+                    @Override
+                    public void accept(@io.reactivex.annotations.NonNull final Cursor cursor) throws Exception {
+                        cursor.close();
+                    }
+                });
+    }
+
+    /**
+     * Creates the {@link Flowable} which emits the elements of the JSON array as they are parsed.
+     * The reader is closed on completion or cancellation.
+     *
+     * @param readerSupplier
+     *        Returns the reader (called on subscription)
+     *
+     * @param gson
+     *        The Gson to parse elements
+     *
+     * @param type
+     *        The type of the array element
+     *
+     * @param <T>
+     *        The type of items
+     *
+     * @return  The {@link Flowable}
+     */
+    @NonNull
+    @SuppressWarnings("WeakerAccess")
+    public static <T> Flowable<T> fromJson(@NonNull final Callable<? extends Reader> readerSupplier,
+                                           @NonNull final Gson gson, @NonNull final Type type) {
+        return Flowable.generate(
+                new Callable<JsonReader>() {
+                    @Override
+                    public JsonReader call() throws Exception {
+                        final JsonReader reader = new JsonReader(readerSupplier.call());
+                        try {
+                            reader.beginArray();
+                        }
+                        catch (Exception exception) {
+                            reader.close();
+                            throw exception;
+                        }
+                        return reader;
+                    }
+                },
+                new BiFunction<JsonReader, Emitter<T>, JsonReader>() {
+                    @Override
+                    public JsonReader apply(@io.reactivex.annotations.NonNull final JsonReader reader,
+                                            @io.reactivex.annotations.NonNull final Emitter<T> emitter) throws Exception {
+                        if (reader.hasNext()) {
+                            final T item = gson.fromJson(reader, type);
+                            if (item == null)
+                                emitter.onError(new Exception("null element in JSON array"));
+                            else
+                                emitter.onNext(item);
+                        }
+                        else {
+                            reader.endArray();
+                            emitter.onComplete();
+                        }
+                        return reader;
+                    }
+                },
+                new Consumer<JsonReader>() {
+                    @Override
+                    public void accept(@io.reactivex.annotations.NonNull final JsonReader reader) throws Exception {
+                        reader.close();
+                    }
+                });
+    }
+
+    /**
+     * Creates the {@link Flowable} which executes the Retrofit 2 call (on subscription) and emits the elements
+     * of the JSON array from the response body as they are parsed. To avoid buffering of the whole body
+     * in memory please annotate the Retrofit API method with {@code retrofit2.http.Streaming}.
+     * <br>Every subscription executes the clone of the given call (so the {@link Flowable} could be
+     * resubscribed, e.g. by {@code retry()}); the request is cancelled on the subscription cancellation.
+     *
+     * @param call
+     *        The call
+     *
+     * @param gson
+     *        The Gson to parse elements
+     *
+     * @param type
+     *        The type of the array element
+     *
+     * @param <T>
+     *        The type of items
+     *
+     * @return  The {@link Flowable}
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public static <T> Flowable<T> fromCall(@NonNull final Call<ResponseBody> call,
+                                           @NonNull final Gson gson, @NonNull final Type type) {
+        return Flowable.defer(new Callable<Publisher<T>>() {
+            @Override
+            public Publisher<T> call() throws Exception {
+                final Call<ResponseBody> callClone = call.clone();
+
+                return FlowableRows.<T>fromJson(new Callable<Reader>() {
+                    @Override
+                    public Reader call() throws Exception {
+                        final Response<ResponseBody> response = callClone.execute();
+                        final ResponseBody body = response.body();
+
+                        if (!response.isSuccessful() || body == null) {
+                            final ResponseBody errorBody = response.errorBody();
+                            if (errorBody != null) errorBody.close();
+
+                            CoreLogger.logError("streaming request failed, code " + response.code());
+                            throw new HttpStatusException(response.code());
+                        }
+                        return body.charStream();
+                    }
+                }, gson, type).doOnCancel(new Action() {
+                    @Override
+                    public void run() throws Exception {
+                        callClone.cancel();
+                    }
+                });
+            }
+        });
+    }
+}
@@ -23,15 +23,22 @@ import akha.yakhont.technology.rx.BaseRx.SubscriberRx;
 
 import android.support.annotation.NonNull;
 
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 import rx.Completable;
 import rx.Observable;
 import rx.Producer;
+import rx.Scheduler;
 import rx.Single;
 import rx.Subscriber;
 import rx.Subscription;
 import rx.functions.Action1;
+import rx.functions.Func1;
 import rx.observers.SafeSubscriber;
 import rx.plugins.RxJavaHooks;
+import rx.schedulers.Schedulers;
 import rx.subscriptions.CompositeSubscription;
 
 /**
@@ -51,6 +58,9 @@ public class Rx<D> extends CommonRx<D> {
     /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
     protected final boolean                     mHasProducer;
 
+    private volatile Scheduler                  mSubscribeOnScheduler;
+    private volatile Scheduler                  mObserveOnScheduler;
+
     /**
      * Initialises a newly created {@code Rx} object.
      */
@@ -201,10 +211,52 @@ public class Rx<D> extends CommonRx<D> {
         mRxSubscription.add(subscription);
     }
 
-    /** @exclude */ @SuppressWarnings({"JavaDoc", "unchecked", "WeakerAccess"})
+    /**
+     * Sets the {@link Scheduler} to subscribe on (used by {@link #handle handle()}); overrides the executor
+     * set via {@link #setSubscribeOn(Executor)}.
+     *
+     * @param scheduler
+     *        The scheduler, e.g. {@link Schedulers#io()} (or null)
+     *
+     * @return  This {@code Rx} object to allow for chaining of calls to set methods
+     */
+    @SuppressWarnings("unused")
+    public Rx<D> setSubscribeOnScheduler(final Scheduler scheduler) {
+        mSubscribeOnScheduler = scheduler;
+        return this;
+    }
+
+    /**
+     * Sets the {@link Scheduler} to observe on (used by {@link #handle handle()}); overrides the executor
+     * set via {@link #setObserveOn(Executor)}.
+     *
+     * @param scheduler
+     *        The scheduler (or null)
+     *
+     * @return  This {@code Rx} object to allow for chaining of calls to set methods
+     */
+    @SuppressWarnings("unused")
+    public Rx<D> setObserveOnScheduler(final Scheduler scheduler) {
+        mObserveOnScheduler = scheduler;
+        return this;
+    }
+
+    /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
     public static <D> Subscription handle(final Object result, final CallbackRx<D> callback) {
-        return result instanceof Observable ? handle((Observable<D>) result, callback):
-               result instanceof Single     ? handle((Single<D>    ) result, callback): null;
+        return handle(result, callback, null);
+    }
+
+    /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
+    public static <D> Subscription handle(final Object result, final CallbackRx<D> callback,
+                                          final CommonRx<?> settings) {
+        return handle(result, callback, settings, true);
+    }
+
+    /** @exclude */ @SuppressWarnings({"JavaDoc", "unchecked", "WeakerAccess"})
+    public static <D> Subscription handle(final Object result, final CallbackRx<D> callback,
+                                          final CommonRx<?> settings, final boolean subscribe) {
+        return result instanceof Observable ? handle((Observable<D>) result, callback, settings, subscribe):
+               result instanceof Single     ? handle((Single<D>    ) result, callback, settings, subscribe): null;
     }
 
     /**
@@ -223,10 +275,50 @@ public class Rx<D> extends CommonRx<D> {
      */
     @SuppressWarnings("WeakerAccess")
     public static <D> Subscription handle(final Observable<D> observable, final CallbackRx<D> callback) {
+        return handle(observable, callback, null);
+    }
+
+    /**
+     * Handles the {@link Observable} provided (with the scheduling and buffering settings applied).
+     *
+     * @param observable
+     *        The {@link Observable}
+     *
+     * @param callback
+     *        The {@link CallbackRx}
+     *
+     * @param settings
+     *        The {@link CommonRx} with the scheduling and buffering settings (or null)
+     *
+     * @param <D>
+     *        The type of data
+     *
+     * @return  The {@link Subscription}
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static <D> Subscription handle(final Observable<D> observable, final CallbackRx<D> callback,
+                                          final CommonRx<?> settings) {
+        return handle(observable, callback, settings, true);
+    }
+
+    private static <D> Subscription handle(final Observable<D> observable, final CallbackRx<D> callback,
+                                           final CommonRx<?> settings, final boolean subscribe) {
         if (observable == null) CoreLogger.logError("observable == null");
         if (callback   == null) CoreLogger.logError("callback == null");
+        if (observable == null || callback == null) return null;
+
+        Observable<D> source = observable;
+
+        final Scheduler subscribeOn = subscribe ? getSubscribeOn(settings): null;
+        if (subscribeOn != null) source = source.subscribeOn(subscribeOn);
+
+        if (settings != null && settings.isBuffered()) return handleBuffered(buffer(source, settings),
+                getObserveOn(settings), callback);
+
+        final Scheduler observeOn = getObserveOn(settings);
+        if (observeOn != null) source = source.observeOn(observeOn, true);
 
-        return observable == null || callback == null ? null: observable
+        return source
                 .doOnError(new Action1<Throwable>() {
                     @Override
                     public void call(Throwable throwable) {
@@ -258,10 +350,47 @@ public class Rx<D> extends CommonRx<D> {
      */
     @SuppressWarnings("WeakerAccess")
     public static <D> Subscription handle(final Single<D> single, final CallbackRx<D> callback) {
+        return handle(single, callback, null);
+    }
+
+    /**
+     * Handles the {@link Single} provided (with the scheduling settings applied).
+     *
+     * @param single
+     *        The {@link Single}
+     *
+     * @param callback
+     *        The {@link CallbackRx}
+     *
+     * @param settings
+     *        The {@link CommonRx} with the scheduling settings (or null)
+     *
+     * @param <D>
+     *        The type of data
+     *
+     * @return  The {@link Subscription}
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static <D> Subscription handle(final Single<D> single, final CallbackRx<D> callback,
+                                          final CommonRx<?> settings) {
+        return handle(single, callback, settings, true);
+    }
+
+    private static <D> Subscription handle(final Single<D> single, final CallbackRx<D> callback,
+                                           final CommonRx<?> settings, final boolean subscribe) {
         if (single   == null) CoreLogger.logError("single == null");
         if (callback == null) CoreLogger.logError("callback == null");
+        if (single == null || callback == null) return null;
+
+        Single<D> source = single;
+
+        final Scheduler subscribeOn = subscribe ? getSubscribeOn(settings): null;
+        if (subscribeOn != null) source = source.subscribeOn(subscribeOn);
 
-        return single == null || callback == null ? null: single
+        final Scheduler observeOn = getObserveOn(settings);
+        if (observeOn != null) source = source.observeOn(observeOn);
+
+        return source
                 .doOnError(new Action1<Throwable>() {
                     @Override
                     public void call(Throwable throwable) {
@@ -277,6 +406,63 @@ public class Rx<D> extends CommonRx<D> {
                 .subscribe();
     }
 
+    private static Scheduler getSubscribeOn(final CommonRx<?> settings) {
+        if (settings == null) return null;
+        if (settings instanceof Rx && ((Rx) settings).mSubscribeOnScheduler != null)
+            return ((Rx) settings).mSubscribeOnScheduler;
+
+        final Executor executor = settings.getSubscribeOn();
+        return executor == null ? null: Schedulers.from(executor);
+    }
+
+    private static Scheduler getObserveOn(final CommonRx<?> settings) {
+        if (settings == null) return null;
+        if (settings instanceof Rx && ((Rx) settings).mObserveOnScheduler != null)
+            return ((Rx) settings).mObserveOnScheduler;
+
+        final Executor executor = settings.getObserveOn();
+        return executor == null ? null: Schedulers.from(executor);
+    }
+
+    private static <D> Observable<List<D>> buffer(@NonNull final Observable<D> observable,
+                                                  @NonNull final CommonRx<?> settings) {
+        final long timespan = settings.getBufferTimespan();
+        final int  count    = settings.getBufferCount();
+
+        // the time-based buffer doesn't support backpressure, so the batches are queued
+        return (timespan <= 0 ? observable.buffer(count): count <= 0 ?
+                observable.buffer(timespan, TimeUnit.MILLISECONDS):
+                observable.buffer(timespan, TimeUnit.MILLISECONDS, count))
+                .filter(new Func1<List<D>, Boolean>() {
+                    @Override
+                    public Boolean call(List<D> list) {
+                        return !list.isEmpty();
+                    }
+                })
+                .onBackpressureBuffer();
+    }
+
+    private static <D> Subscription handleBuffered(@NonNull Observable<List<D>> observable,
+                                                   final Scheduler observeOn,
+                                                   @NonNull final CallbackRx<D> callback) {
+        if (observeOn != null) observable = observable.observeOn(observeOn, true);
+
+        return observable
+                .doOnError(new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        callback.onError(throwable);
+                    }
+                })
+                .doOnNext(new Action1<List<D>>() {
+                    @Override
+                    public void call(List<D> data) {
+                        onResults(callback, data);
+                    }
+                })
+                .subscribe();
+    }
+
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     private boolean checkNullSubscriber(final Subscriber<? super D> subscriber) {
         if (subscriber == null) CoreLogger.logError("subscriber is null");
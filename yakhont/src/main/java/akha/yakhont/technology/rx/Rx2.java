@@ -23,21 +23,28 @@ import akha.yakhont.technology.rx.BaseRx.SubscriberRx;
 
 import android.support.annotation.NonNull;
 
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 import io.reactivex.BackpressureStrategy;
 import io.reactivex.Completable;
 import io.reactivex.Flowable;
 import io.reactivex.Maybe;
 import io.reactivex.Observable;
 import io.reactivex.Observer;
+import io.reactivex.Scheduler;
 import io.reactivex.Single;
 import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Predicate;
 import io.reactivex.internal.functions.Functions;
 import io.reactivex.internal.subscriptions.EmptySubscription;
 import io.reactivex.observers.DisposableObserver;
 import io.reactivex.observers.DisposableSingleObserver;
 import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.Schedulers;
 import io.reactivex.subscribers.DisposableSubscriber;
 import io.reactivex.subscribers.SafeSubscriber;
 
@@ -55,6 +62,9 @@ public class Rx2<D> extends CommonRx<D> {
 
     private final Disposable                    mDisposable;
 
+    private volatile Scheduler                  mSubscribeOnScheduler;
+    private volatile Scheduler                  mObserveOnScheduler;
+
     /**
      * Initialises a newly created {@code Rx2} object.
      */
@@ -168,12 +178,54 @@ public class Rx2<D> extends CommonRx<D> {
         mRx2Disposable.add(disposable);
     }
 
-    /** @exclude */ @SuppressWarnings({"JavaDoc", "unchecked", "WeakerAccess"})
+    /**
+     * Sets the {@link Scheduler} to subscribe on (used by {@link #handle handle()}); overrides the executor
+     * set via {@link #setSubscribeOn(Executor)}.
+     *
+     * @param scheduler
+     *        The scheduler, e.g. {@link Schedulers#io()} (or null)
+     *
+     * @return  This {@code Rx2} object to allow for chaining of calls to set methods
+     */
+    @SuppressWarnings("unused")
+    public Rx2<D> setSubscribeOnScheduler(final Scheduler scheduler) {
+        mSubscribeOnScheduler = scheduler;
+        return this;
+    }
+
+    /**
+     * Sets the {@link Scheduler} to observe on (used by {@link #handle handle()}); overrides the executor
+     * set via {@link #setObserveOn(Executor)}.
+     *
+     * @param scheduler
+     *        The scheduler (or null)
+     *
+     * @return  This {@code Rx2} object to allow for chaining of calls to set methods
+     */
+    @SuppressWarnings("unused")
+    public Rx2<D> setObserveOnScheduler(final Scheduler scheduler) {
+        mObserveOnScheduler = scheduler;
+        return this;
+    }
+
+    /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
     public static <D> Disposable handle(final Object result, final CallbackRx<D> callback) {
-        return result instanceof Observable ? handle((Observable<D>) result, callback):
-               result instanceof Flowable   ? handle((Flowable<D> )  result, callback):
-               result instanceof Single     ? handle((Single<D>    ) result, callback):
-               result instanceof Maybe      ? handle((Maybe<D>     ) result, callback): null;
+        return handle(result, callback, null);
+    }
+
+    /** @exclude */ @SuppressWarnings({"JavaDoc", "WeakerAccess"})
+    public static <D> Disposable handle(final Object result, final CallbackRx<D> callback,
+                                        final CommonRx<?> settings) {
+        return handle(result, callback, settings, true);
+    }
+
+    /** @exclude */ @SuppressWarnings({"JavaDoc", "unchecked", "WeakerAccess"})
+    public static <D> Disposable handle(final Object result, final CallbackRx<D> callback,
+                                        final CommonRx<?> settings, final boolean subscribe) {
+        return result instanceof Observable ? handle((Observable<D>) result, callback, settings, subscribe):
+               result instanceof Flowable   ? handle((Flowable<D> )  result, callback, settings, subscribe):
+               result instanceof Single     ? handle((Single<D>    ) result, callback, settings, subscribe):
+               result instanceof Maybe      ? handle((Maybe<D>     ) result, callback, settings, subscribe): null;
     }
 
     /**
@@ -192,10 +244,50 @@ public class Rx2<D> extends CommonRx<D> {
      */
     @SuppressWarnings("WeakerAccess")
     public static <D> Disposable handle(final Flowable<D> flowable, final CallbackRx<D> callback) {
+        return handle(flowable, callback, null);
+    }
+
+    /**
+     * Handles the {@link Flowable} provided (with the scheduling and buffering settings applied).
+     *
+     * @param flowable
+     *        The {@link Flowable}
+     *
+     * @param callback
+     *        The {@link CallbackRx}
+     *
+     * @param settings
+     *        The {@link CommonRx} with the scheduling and buffering settings (or null)
+     *
+     * @param <D>
+     *        The type of data
+     *
+     * @return  The {@link Disposable}
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static <D> Disposable handle(final Flowable<D> flowable, final CallbackRx<D> callback,
+                                        final CommonRx<?> settings) {
+        return handle(flowable, callback, settings, true);
+    }
+
+    private static <D> Disposable handle(final Flowable<D> flowable, final CallbackRx<D> callback,
+                                         final CommonRx<?> settings, final boolean subscribe) {
         if (flowable == null) CoreLogger.logError("flowable == null");
         if (callback == null) CoreLogger.logError("callback == null");
+        if (flowable == null || callback == null) return null;
+
+        Flowable<D> source = flowable;
+
+        final Scheduler subscribeOn = subscribe ? getSubscribeOn(settings): null;
+        if (subscribeOn != null) source = source.subscribeOn(subscribeOn);
+
+        if (settings != null && settings.isBuffered()) return handleBuffered(buffer(source, settings),
+                getObserveOn(settings), callback);
 
-        return flowable == null || callback == null ? null: flowable
+        final Scheduler observeOn = getObserveOn(settings);
+        if (observeOn != null) source = source.observeOn(observeOn, true);
+
+        return source
                 .doOnError(new Consumer<Throwable>() {
                     @Override
                     public void accept(@io.reactivex.annotations.NonNull Throwable throwable) throws Exception {
@@ -227,10 +319,47 @@ public class Rx2<D> extends CommonRx<D> {
      */
     @SuppressWarnings("WeakerAccess")
     public static <D> Disposable handle(final Maybe<D> maybe, final CallbackRx<D> callback) {
+        return handle(maybe, callback, null);
+    }
+
+    /**
+     * Handles the {@link Maybe} provided (with the scheduling settings applied).
+     *
+     * @param maybe
+     *        The {@link Maybe}
+     *
+     * @param callback
+     *        The {@link CallbackRx}
+     *
+     * @param settings
+     *        The {@link CommonRx} with the scheduling settings (or null)
+     *
+     * @param <D>
+     *        The type of data
+     *
+     * @return  The {@link Disposable}
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static <D> Disposable handle(final Maybe<D> maybe, final CallbackRx<D> callback,
+                                        final CommonRx<?> settings) {
+        return handle(maybe, callback, settings, true);
+    }
+
+    private static <D> Disposable handle(final Maybe<D> maybe, final CallbackRx<D> callback,
+                                         final CommonRx<?> settings, final boolean subscribe) {
         if (maybe    == null) CoreLogger.logError("maybe == null");
         if (callback == null) CoreLogger.logError("callback == null");
+        if (maybe == null || callback == null) return null;
+
+        Maybe<D> source = maybe;
+
+        final Scheduler subscribeOn = subscribe ? getSubscribeOn(settings): null;
+        if (subscribeOn != null) source = source.subscribeOn(subscribeOn);
 
-        return maybe == null || callback == null ? null: maybe
+        final Scheduler observeOn = getObserveOn(settings);
+        if (observeOn != null) source = source.observeOn(observeOn);
+
+        return source
                 .doOnError(new Consumer<Throwable>() {
                     @Override
                     public void accept(@io.reactivex.annotations.NonNull Throwable throwable) throws Exception {
@@ -262,10 +391,50 @@ public class Rx2<D> extends CommonRx<D> {
      */
     @SuppressWarnings("WeakerAccess")
     public static <D> Disposable handle(final Observable<D> observable, final CallbackRx<D> callback) {
+        return handle(observable, callback, null);
+    }
+
+    /**
+     * Handles the {@link Observable} provided (with the scheduling and buffering settings applied).
+     *
+     * @param observable
+     *        The {@link Observable}
+     *
+     * @param callback
+     *        The {@link CallbackRx}
+     *
+     * @param settings
+     *        The {@link CommonRx} with the scheduling and buffering settings (or null)
+     *
+     * @param <D>
+     *        The type of data
+     *
+     * @return  The {@link Disposable}
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static <D> Disposable handle(final Observable<D> observable, final CallbackRx<D> callback,
+                                        final CommonRx<?> settings) {
+        return handle(observable, callback, settings, true);
+    }
+
+    private static <D> Disposable handle(final Observable<D> observable, final CallbackRx<D> callback,
+                                         final CommonRx<?> settings, final boolean subscribe) {
         if (observable == null) CoreLogger.logError("observable == null");
         if (callback   == null) CoreLogger.logError("callback == null");
+        if (observable == null || callback == null) return null;
+
+        Observable<D> source = observable;
+
+        final Scheduler subscribeOn = subscribe ? getSubscribeOn(settings): null;
+        if (subscribeOn != null) source = source.subscribeOn(subscribeOn);
 
-        return observable == null || callback == null ? null: observable
+        if (settings != null && settings.isBuffered()) return handleBuffered(buffer(source, settings),
+                getObserveOn(settings), callback);
+
+        final Scheduler observeOn = getObserveOn(settings);
+        if (observeOn != null) source = source.observeOn(observeOn, true);
+
+        return source
                 .doOnError(new Consumer<Throwable>() {
                     @Override
                     public void accept(@io.reactivex.annotations.NonNull Throwable throwable) throws Exception {
@@ -297,10 +466,47 @@ public class Rx2<D> extends CommonRx<D> {
      */
     @SuppressWarnings("WeakerAccess")
     public static <D> Disposable handle(final Single<D> single, final CallbackRx<D> callback) {
+        return handle(single, callback, null);
+    }
+
+    /**
+     * Handles the {@link Single} provided (with the scheduling settings applied).
+     *
+     * @param single
+     *        The {@link Single}
+     *
+     * @param callback
+     *        The {@link CallbackRx}
+     *
+     * @param settings
+     *        The {@link CommonRx} with the scheduling settings (or null)
+     *
+     * @param <D>
+     *        The type of data
+     *
+     * @return  The {@link Disposable}
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static <D> Disposable handle(final Single<D> single, final CallbackRx<D> callback,
+                                        final CommonRx<?> settings) {
+        return handle(single, callback, settings, true);
+    }
+
+    private static <D> Disposable handle(final Single<D> single, final CallbackRx<D> callback,
+                                         final CommonRx<?> settings, final boolean subscribe) {
         if (single   == null) CoreLogger.logError("single == null");
         if (callback == null) CoreLogger.logError("callback == null");
+        if (single == null || callback == null) return null;
+
+        Single<D> source = single;
 
-        return single == null || callback == null ? null: single
+        final Scheduler subscribeOn = subscribe ? getSubscribeOn(settings): null;
+        if (subscribeOn != null) source = source.subscribeOn(subscribeOn);
+
+        final Scheduler observeOn = getObserveOn(settings);
+        if (observeOn != null) source = source.observeOn(observeOn);
+
+        return source
                 .doOnError(new Consumer<Throwable>() {
                     @Override
                     public void accept(@io.reactivex.annotations.NonNull Throwable throwable) throws Exception {
@@ -316,6 +522,71 @@ public class Rx2<D> extends CommonRx<D> {
                 .subscribe();
     }
 
+    private static Scheduler getSubscribeOn(final CommonRx<?> settings) {
+        if (settings == null) return null;
+        if (settings instanceof Rx2 && ((Rx2) settings).mSubscribeOnScheduler != null)
+            return ((Rx2) settings).mSubscribeOnScheduler;
+
+        final Executor executor = settings.getSubscribeOn();
+        return executor == null ? null: Schedulers.from(executor);
+    }
+
+    private static Scheduler getObserveOn(final CommonRx<?> settings) {
+        if (settings == null) return null;
+        if (settings instanceof Rx2 && ((Rx2) settings).mObserveOnScheduler != null)
+            return ((Rx2) settings).mObserveOnScheduler;
+
+        final Executor executor = settings.getObserveOn();
+        return executor == null ? null: Schedulers.from(executor);
+    }
+
+    private static <D> Flowable<List<D>> buffer(@NonNull final Flowable<D> flowable,
+                                                @NonNull final CommonRx<?> settings) {
+        final long timespan = settings.getBufferTimespan();
+        final int  count    = settings.getBufferCount();
+
+        // the time-based buffer doesn't support backpressure, so the batches are queued
+        return (timespan <= 0 ? flowable.buffer(count): count <= 0 ?
+                flowable.buffer(timespan, TimeUnit.MILLISECONDS):
+                flowable.buffer(timespan, TimeUnit.MILLISECONDS, count))
+                .filter(Rx2.<D>getNotEmpty())
+                .onBackpressureBuffer();
+    }
+
+    private static <D> Flowable<List<D>> buffer(@NonNull final Observable<D> observable,
+                                                @NonNull final CommonRx<?> settings) {
+        return buffer(observable.toFlowable(BackpressureStrategy.BUFFER), settings);
+    }
+
+    private static <D> Predicate<List<D>> getNotEmpty() {
+        return new Predicate<List<D>>() {
+            @Override
+            public boolean test(@io.reactivex.annotations.NonNull List<D> list) throws Exception {
+                return !list.isEmpty();
+            }
+        };
+    }
+
+    private static <D> Disposable handleBuffered(@NonNull Flowable<List<D>> flowable, final Scheduler observeOn,
+                                                 @NonNull final CallbackRx<D> callback) {
+        if (observeOn != null) flowable = flowable.observeOn(observeOn, true);
+
+        return flowable
+                .doOnError(new Consumer<Throwable>() {
+                    @Override
+                    public void accept(@io.reactivex.annotations.NonNull Throwable throwable) throws Exception {
+                        callback.onError(throwable);
+                    }
+                })
+                .doOnNext(new Consumer<List<D>>() {
+                    @Override
+                    public void accept(@io.reactivex.annotations.NonNull List<D> data) throws Exception {
+                        onResults(callback, data);
+                    }
+                })
+                .subscribe();
+    }
+
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     private boolean checkNullObserver(final Observer<? super D> observer) {
         if (observer == null) CoreLogger.logError("observer is null");
@@ -69,6 +69,14 @@ public class YakhontRestAdapter<T> {
         return null;
     }
 
+    public boolean isIdempotent(final Method method) {
+        if (method == null) return true;
+
+        final RestMethodInfo methodInfo = RestAdapter.getMethodInfo(mMethodInfoCache, method);
+        methodInfo.init();
+        return !("POST".equalsIgnoreCase(methodInfo.requestMethod) || "PATCH".equalsIgnoreCase(methodInfo.requestMethod));
+    }
+
     public T getHandler() {
         return mHandler;
     }
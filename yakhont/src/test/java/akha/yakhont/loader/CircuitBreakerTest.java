@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.loader;
+
+import akha.yakhont.loader.CircuitBreaker.State;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+// SystemClock.elapsedRealtime() is always 0 on JVM, so the open timeout either always elapsed (0) or never
+public class CircuitBreakerTest {
+
+    private static final long           NEVER       = Long.MAX_VALUE;
+
+    @After
+    public void tearDown() {
+        CircuitBreaker.setParameters(CircuitBreaker.FAILURES_THRESHOLD_DEFAULT, CircuitBreaker.OPEN_TIMEOUT_DEFAULT);
+        CircuitBreaker.resetAll();
+    }
+
+    @Test
+    public void sameBreakerForSameEndpoint() {
+        assertSame(CircuitBreaker.get("host"), CircuitBreaker.get("host"));
+    }
+
+    @Test
+    public void disabled() {
+        assertNull(CircuitBreaker.get(null));
+
+        CircuitBreaker.setParameters(0, NEVER);
+        assertNull(CircuitBreaker.get("host"));
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        CircuitBreaker.setParameters(3, NEVER);
+        final CircuitBreaker breaker = CircuitBreaker.get("host");
+
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+
+        breaker.onFailure();
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void successResetsFailures() {
+        CircuitBreaker.setParameters(2, NEVER);
+        final CircuitBreaker breaker = CircuitBreaker.get("host");
+
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        assertEquals(State.CLOSED, breaker.getState());
+
+        breaker.onFailure();
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void probeSuccessCloses() {
+        CircuitBreaker.setParameters(1, 0);
+        final CircuitBreaker breaker = CircuitBreaker.get("host");
+
+        breaker.onFailure();
+        assertEquals(State.OPEN, breaker.getState());
+
+        assertTrue(breaker.allowRequest());
+        assertEquals(State.HALF_OPEN, breaker.getState());
+
+        breaker.onSuccess();
+        assertEquals(State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void probeFailureOpensAgain() {
+        CircuitBreaker.setParameters(5, 0);
+        final CircuitBreaker breaker = CircuitBreaker.get("host");
+
+        for (int i = 0; i < 5; i++) breaker.onFailure();
+        assertTrue(breaker.allowRequest());
+        assertEquals(State.HALF_OPEN, breaker.getState());
+
+        // just one failure is enough in the half-open state
+        breaker.onFailure();
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenRejectsUntilTimeout() {
+        CircuitBreaker.setParameters(1, 0);
+        final CircuitBreaker breaker = CircuitBreaker.get("host");
+
+        breaker.onFailure();
+        assertTrue(breaker.allowRequest());
+        assertEquals(State.HALF_OPEN, breaker.getState());
+
+        CircuitBreaker.setParameters(1, NEVER);
+        assertFalse(breaker.allowRequest());
+        assertEquals(State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void breakersAreIndependent() {
+        CircuitBreaker.setParameters(1, NEVER);
+        CircuitBreaker.get("failing").onFailure();
+
+        assertEquals(State.OPEN,   CircuitBreaker.get("failing").getState());
+        assertEquals(State.CLOSED, CircuitBreaker.get("working").getState());
+        assertEquals(State.OPEN,   CircuitBreaker.getStates().get("failing"));
+    }
+}
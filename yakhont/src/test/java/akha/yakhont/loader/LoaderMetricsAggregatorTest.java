@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.loader;
+
+import akha.yakhont.loader.LoaderMetricsAggregator.Histogram;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LoaderMetricsAggregatorTest {
+
+    @Test
+    public void smallValuesHaveOwnBuckets() {
+        for (int value = 0; value < 4; value++) {
+            assertEquals(value, Histogram.getIndex(value));
+            assertEquals(value, Histogram.getValue(value));
+        }
+    }
+
+    @Test
+    public void bucketsAreMonotonicAndBoundValues() {
+        int prevIndex = -1;
+        for (long value = 0; value < 1 << 20; value++) {
+            final int index = Histogram.getIndex(value);
+            assertTrue("index decreased at " + value, index >= prevIndex);
+            prevIndex = index;
+
+            final long upper = Histogram.getValue(index);
+            assertTrue("upper bound " + upper + " < " + value, upper >= value);
+            // 4 sub-buckets per power of two: the relative error is less than 25%
+            assertTrue("upper bound " + upper + " too far from " + value, upper - value <= value / 4);
+            if (index > 0)
+                assertTrue("previous bucket covers " + value, Histogram.getValue(index - 1) < value);
+        }
+    }
+
+    @Test
+    public void hugeValuesGoToLastBucket() {
+        final int last = Histogram.getIndex(Long.MAX_VALUE);
+        assertEquals(last, Histogram.getIndex(1L << 41));
+
+        final long max = (1L << 41) - 1;
+        assertTrue(Histogram.getIndex(max) < last);
+        assertEquals(max, Histogram.getValue(Histogram.getIndex(max)));
+    }
+
+    @Test
+    public void emptyHistogram() {
+        final Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getAverage());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void negativeValuesAreZeroes() {
+        final Histogram histogram = new Histogram();
+        histogram.add(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void percentiles() {
+        final Histogram histogram = new Histogram();
+        for (int value = 1; value <= 1000; value++)
+            histogram.add(value);
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500,  histogram.getAverage());
+        assertEquals(1000, histogram.getMax());
+
+        assertPercentile(histogram,   0,    1);
+        assertPercentile(histogram,  50,  500);
+        assertPercentile(histogram,  90,  900);
+        assertPercentile(histogram,  99,  990);
+
+        // never exceeds the max value, even if the bucket does
+        assertEquals(1000, histogram.getPercentile(100));
+        assertEquals(1000, histogram.getPercentile(200));
+        assertEquals(1,    histogram.getPercentile(-1));
+    }
+
+    @Test
+    public void percentileOfSingleValue() {
+        final Histogram histogram = new Histogram();
+        histogram.add(777);
+        for (int percent = 0; percent <= 100; percent += 10)
+            assertEquals(777, histogram.getPercentile(percent));
+    }
+
+    private static void assertPercentile(final Histogram histogram, final double percent, final long expected) {
+        final long value = histogram.getPercentile(percent);
+        assertTrue(percent + "th percentile " + value + " < " + expected, value >= expected);
+        assertTrue(percent + "th percentile " + value + " too far from " + expected, value - expected <= expected / 4);
+    }
+}
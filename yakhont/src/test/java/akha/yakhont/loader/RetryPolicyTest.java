@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.loader;
+
+import akha.yakhont.loader.RetryPolicy.HttpStatusException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    private static final int            SAMPLES     = 1000;
+
+    @After
+    public void tearDown() {
+        RetryPolicy.setDefault(null);
+    }
+
+    @Test
+    public void noRetriesByDefault() {
+        assertSame(RetryPolicy.NO_RETRY, RetryPolicy.getDefault());
+        assertEquals(-1, RetryPolicy.getDefault().getDelay(0));
+
+        RetryPolicy.setDefault(RetryPolicy.createDefault());
+        assertTrue(RetryPolicy.getDefault().getDelay(0) >= 0);
+
+        RetryPolicy.setDefault(null);
+        assertSame(RetryPolicy.NO_RETRY, RetryPolicy.getDefault());
+    }
+
+    @Test
+    public void maxRetries() {
+        final RetryPolicy policy = new RetryPolicy(3, 100, 1000);
+        for (int retry = 0; retry < 3; retry++)
+            assertTrue(policy.getDelay(retry) >= 0);
+        assertEquals(-1, policy.getDelay(3));
+        assertEquals(-1, policy.getDelay(100));
+    }
+
+    @Test
+    public void exponentialBackoffBounds() {
+        final RetryPolicy policy = new RetryPolicy(10, 100, 3000);
+        final long[] bounds = new long[] {100, 200, 400, 800, 1600, 3000, 3000, 3000, 3000, 3000};
+
+        for (int retry = 0; retry < bounds.length; retry++) {
+            long max = 0;
+            for (int i = 0; i < SAMPLES; i++) {
+                final long delay = policy.getDelay(retry);
+                assertTrue("retry " + retry + ", delay " + delay, delay >= 0 && delay <= bounds[retry]);
+                max = Math.max(max, delay);
+            }
+            // full jitter: the delays are spread over the whole range
+            assertTrue("retry " + retry + ", max delay " + max, max > bounds[retry] / 2);
+        }
+    }
+
+    @Test
+    public void noOverflow() {
+        final RetryPolicy policy = new RetryPolicy(Integer.MAX_VALUE, 1000, Long.MAX_VALUE);
+        for (int retry = 30; retry < 100; retry++)
+            assertTrue(policy.getDelay(retry) >= 0);
+    }
+
+    @Test
+    public void zeroDelay() {
+        final RetryPolicy policy = new RetryPolicy(2, 0, 1000);
+        assertEquals(0, policy.getDelay(0));
+        assertEquals(0, policy.getDelay(1));
+    }
+
+    @Test
+    public void transientErrors() {
+        assertTrue (RetryPolicy.isTransient(new IOException()));
+        assertTrue (RetryPolicy.isTransient(new SocketTimeoutException()));
+        assertTrue (RetryPolicy.isTransient(new RuntimeException(new IOException())));
+        assertTrue (RetryPolicy.isTransient(new RuntimeException(new HttpStatusException(503))));
+
+        assertFalse(RetryPolicy.isTransient(null));
+        assertFalse(RetryPolicy.isTransient("error"));
+        assertFalse(RetryPolicy.isTransient(new IllegalStateException()));
+        assertFalse(RetryPolicy.isTransient(new HttpStatusException(404)));
+    }
+
+    @Test
+    public void transientStatusCodes() {
+        assertTrue (HttpStatusException.isTransient(408));
+        assertTrue (HttpStatusException.isTransient(429));
+        assertTrue (HttpStatusException.isTransient(500));
+        assertTrue (HttpStatusException.isTransient(503));
+        assertTrue (HttpStatusException.isTransient(599));
+
+        assertFalse(HttpStatusException.isTransient(200));
+        assertFalse(HttpStatusException.isTransient(304));
+        assertFalse(HttpStatusException.isTransient(400));
+        assertFalse(HttpStatusException.isTransient(404));
+        assertFalse(HttpStatusException.isTransient(600));
+    }
+}
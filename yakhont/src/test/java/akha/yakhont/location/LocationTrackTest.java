@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.location;
+
+import akha.yakhont.location.LocationTrack.RingBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LocationTrackTest {
+
+    private static final int            CAPACITY    = 8;
+
+    private static void add(final RingBuffer buffer, final int count) {
+        for (int i = 0; i < count; i++)
+            buffer.add();
+    }
+
+    @Test
+    public void addReturnsSequentialPositions() {
+        final RingBuffer buffer = new RingBuffer(CAPACITY);
+        for (int i = 0; i < CAPACITY; i++)
+            assertEquals(i, buffer.add());
+
+        assertEquals(CAPACITY, buffer.getSize());
+        assertEquals(0, buffer.getFirst());
+        assertEquals(0, buffer.getDropped());
+    }
+
+    @Test
+    public void wraparound() {
+        final RingBuffer buffer = new RingBuffer(CAPACITY);
+        add(buffer, CAPACITY);
+
+        // the oldest fixes are overwritten
+        assertEquals(0, buffer.add());
+        assertEquals(1, buffer.add());
+
+        assertEquals(CAPACITY, buffer.getSize());
+        assertEquals(2, buffer.getDropped());
+        assertEquals(2, buffer.getFirst());             // the oldest not overwritten one
+        assertEquals(0, buffer.getNext(CAPACITY - 1));
+    }
+
+    @Test
+    public void firstAfterPartialFlushWraps() {
+        final RingBuffer buffer = new RingBuffer(CAPACITY);
+        add(buffer, CAPACITY - 2);
+
+        buffer.startCopy();
+        buffer.onFlushed();
+        assertEquals(0, buffer.getSize());
+
+        add(buffer, 4);                                 // positions 6, 7, 0, 1
+        assertEquals(4, buffer.getSize());
+        assertEquals(CAPACITY - 2, buffer.getFirst());
+        assertEquals(0, buffer.getDropped());
+    }
+
+    @Test
+    public void flushRequestedOnce() {
+        final RingBuffer buffer = new RingBuffer(CAPACITY);
+
+        add(buffer, CAPACITY - CAPACITY / 4 - 1);
+        assertFalse(buffer.isFlushNeeded());
+
+        buffer.add();
+        assertTrue (buffer.isFlushNeeded());
+
+        buffer.add();
+        assertFalse(buffer.isFlushNeeded());            // already requested
+
+        buffer.startCopy();
+        assertTrue (buffer.isFlushNeeded());            // the copy clears the request
+    }
+
+    @Test
+    public void flushKeepsFixesRecordedDuringFlush() {
+        final RingBuffer buffer = new RingBuffer(CAPACITY);
+        add(buffer, 3);
+
+        assertEquals(3, buffer.startCopy());
+        add(buffer, 2);                                 // recorded while the copy is inserted
+        buffer.onFlushed();
+
+        assertEquals(2, buffer.getSize());
+        assertEquals(3, buffer.getFirst());
+    }
+
+    @Test
+    public void failedFlushKeepsFixes() {
+        final RingBuffer buffer = new RingBuffer(CAPACITY);
+        add(buffer, 3);
+
+        assertEquals(3, buffer.startCopy());            // onFlushed() is not called
+        add(buffer, 1);
+
+        assertEquals(4, buffer.getSize());
+        assertEquals(0, buffer.getFirst());
+    }
+
+    @Test
+    public void flushAfterWraparound() {
+        final RingBuffer buffer = new RingBuffer(CAPACITY);
+        add(buffer, 3);
+
+        assertEquals(3, buffer.startCopy());
+        add(buffer, CAPACITY + 1);                      // the buffer wrapped during the flush
+        buffer.onFlushed();
+
+        assertEquals(CAPACITY, buffer.getSize());
+        assertEquals(4, buffer.getDropped());
+        assertEquals(4, buffer.getFirst());
+    }
+
+    @Test
+    public void emptyCopy() {
+        final RingBuffer buffer = new RingBuffer(CAPACITY);
+        assertEquals(0, buffer.startCopy());
+
+        add(buffer, 2);
+        assertEquals(2, buffer.getSize());
+    }
+
+    @Test
+    public void singleCapacity() {
+        final RingBuffer buffer = new RingBuffer(1);
+        assertEquals(0, buffer.add());
+        assertEquals(0, buffer.add());
+
+        assertEquals(1, buffer.getSize());
+        assertEquals(1, buffer.getDropped());
+        assertEquals(0, buffer.getFirst());
+        assertTrue(buffer.isFlushNeeded());
+    }
+}
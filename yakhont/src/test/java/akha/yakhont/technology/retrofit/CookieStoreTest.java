@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015-2017 akha, a.k.a. Alexander Kharitonov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package akha.yakhont.technology.retrofit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import okhttp3.Cookie;
+import okhttp3.HttpUrl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CookieStoreTest {
+
+    private static final HttpUrl        URL         = HttpUrl.parse("http://www.example.com/");
+
+    private static Cookie domainCookie(final String domain, final String name) {
+        return new Cookie.Builder().domain(domain).name(name).value("v").build();
+    }
+
+    private static void save(final CookieStore store, final Cookie cookie) {
+        store.saveFromResponse(URL, Collections.singletonList(cookie));
+    }
+
+    private static List<String> names(final CookieStore store, final String url) {
+        final List<String> names = new ArrayList<>();
+        for (final Cookie cookie: store.loadForRequest(HttpUrl.parse(url)))
+            names.add(cookie.name());
+        Collections.sort(names);
+        return names;
+    }
+
+    @Test
+    public void domainCookieMatchesSubdomains() {
+        final CookieStore store = new CookieStore(10);
+        save(store, domainCookie("example.com", "a"));
+
+        assertEquals(Collections.singletonList("a"), names(store, "http://example.com/"));
+        assertEquals(Collections.singletonList("a"), names(store, "http://www.example.com/"));
+        assertEquals(Collections.singletonList("a"), names(store, "http://api.www.example.com/"));
+    }
+
+    @Test
+    public void domainCookieDoesNotMatchOtherDomains() {
+        final CookieStore store = new CookieStore(10);
+        save(store, domainCookie("example.com", "a"));
+
+        assertTrue(names(store, "http://other.com/"    ).isEmpty());
+        assertTrue(names(store, "http://notexample.com/").isEmpty());
+        assertTrue(names(store, "http://example.org/"  ).isEmpty());
+    }
+
+    @Test
+    public void subdomainCookieDoesNotMatchParent() {
+        final CookieStore store = new CookieStore(10);
+        save(store, domainCookie("www.example.com", "a"));
+        save(store, domainCookie("example.com",     "b"));
+
+        assertEquals(Collections.singletonList("b"), names(store, "http://example.com/"));
+        assertEquals(Arrays.asList("a", "b"), names(store, "http://www.example.com/"));
+    }
+
+    @Test
+    public void hostOnlyCookieDoesNotMatchSubdomains() {
+        final CookieStore store = new CookieStore(10);
+        save(store, new Cookie.Builder().hostOnlyDomain("example.com").name("a").value("v").build());
+
+        assertEquals(Collections.singletonList("a"), names(store, "http://example.com/"));
+        assertTrue(names(store, "http://www.example.com/").isEmpty());
+    }
+
+    @Test
+    public void sameCookieReplaced() {
+        final CookieStore store = new CookieStore(10);
+        save(store, domainCookie("example.com", "a"));
+        save(store, domainCookie("example.com", "a"));
+
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void expiredCookieRemovesStored() {
+        final CookieStore store = new CookieStore(10);
+        save(store, domainCookie("example.com", "a"));
+        save(store, new Cookie.Builder().domain("example.com").name("a").value("")
+                .expiresAt(System.currentTimeMillis() - 1000).build());
+
+        assertEquals(0, store.size());
+        assertTrue(names(store, "http://example.com/").isEmpty());
+    }
+
+    @Test
+    public void leastRecentlyAddedEvicted() {
+        final CookieStore store = new CookieStore(2);
+        save(store, domainCookie("a.com", "a"));
+        save(store, domainCookie("b.com", "b"));
+        save(store, domainCookie("c.com", "c"));
+
+        assertEquals(2, store.size());
+        assertTrue(names(store, "http://a.com/").isEmpty());
+        assertEquals(Collections.singletonList("b"), names(store, "http://b.com/"));
+        assertEquals(Collections.singletonList("c"), names(store, "http://c.com/"));
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() {
+        final CookieStore store = new CookieStore(2);
+        save(store, domainCookie("a.com", "a"));
+        save(store, domainCookie("b.com", "b"));
+
+        names(store, "http://a.com/");                  // touch "a", so "b" becomes the eldest one
+        save(store, domainCookie("c.com", "c"));
+
+        assertEquals(2, store.size());
+        assertEquals(Collections.singletonList("a"), names(store, "http://a.com/"));
+        assertTrue(names(store, "http://b.com/").isEmpty());
+    }
+
+    @Test
+    public void staticCookiesOverrideStored() {
+        final CookieStore store = new CookieStore(10);
+        save(store, domainCookie("example.com", "a"));
+        save(store, domainCookie("example.com", "b"));
+        store.setStaticCookies(Collections.singletonMap("a", "static"));
+
+        final List<Cookie> cookies = store.loadForRequest(URL);
+        assertEquals(2, cookies.size());
+        for (final Cookie cookie: cookies)
+            if (cookie.name().equals("a")) assertEquals("static", cookie.value());
+    }
+}